@@ -46,6 +46,8 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.Deflater;
@@ -279,6 +281,11 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  /**
+   * Bounded pool to generate the certificates of one request concurrently.
+   */
+  private ExecutorService certGenExecutor;
+
   private final Map<String, CmpResponder> cmpResponders = new ConcurrentHashMap<>();
 
   private final Map<String, ScepResponder> scepResponders = new ConcurrentHashMap<>();
@@ -629,6 +636,8 @@ public class CaManagerImpl implements CaManager, Closeable {
       scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(10);
       scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
 
+      certGenExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
       List<String> startedCaNames = new LinkedList<>();
       List<String> failedCaNames = new LinkedList<>();
 
@@ -838,6 +847,10 @@ public class CaManagerImpl implements CaManager, Closeable {
     return scheduledThreadPoolExecutor;
   }
 
+  ExecutorService getCertGenExecutor() {
+    return certGenExecutor;
+  }
+
   @Override
   public Set<String> getCertprofileNames() {
     return certprofileDbEntries.keySet();
@@ -2031,6 +2044,12 @@ public class CaManagerImpl implements CaManager, Closeable {
       }
     }
     scheduledThreadPoolExecutor = null;
+
+    if (certGenExecutor != null) {
+      // the running tasks are awaited by the callers of X509Ca.generateCerts()
+      certGenExecutor.shutdown();
+      certGenExecutor = null;
+    }
   } // method shutdownScheduledThreadPoolExecutor
 
   @Override
@@ -0,0 +1,286 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ca.server;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.server.store.CertStore;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * In-memory index of the subject and public key fingerprints (columns FP_S and FP_K) of the
+ * certificates issued by a CA, backed by Bloom filters. It answers the common case
+ * "definitely not issued" without querying the database, a possible hit must be confirmed
+ * by the database.
+ *
+ * <p>Since a Bloom filter never returns false negatives, removed and expired certificates
+ * do not need to be removed from the index, they only increase the rate of false positives
+ * until the index is loaded again.
+ *
+ * <p>The index contains only the certificates loaded from the database and the certificates
+ * issued by this node. It may be used only if no other node (e.g. a CA in slave mode)
+ * issues certificates of the CA, otherwise its negative answers are not exact. This is
+ * enforced as far as possible: {@link #checkOtherNodes()}, called every minute, disables the
+ * index once it finds a recent certificate inserted by another node (with another shard id).
+ * The certificates inserted by another node before the check or with a clock more than
+ * {@link #CHECK_WINDOW_MS} milliseconds behind may still be missed.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class CertFpIndex {
+
+  /**
+   * Name of the CA extraControl: expected number of certificates of the CA. If positive, the
+   * index will be used.
+   */
+  static final String KEY_CAPACITY = "certFpIndex.capacity";
+
+  private static final Logger LOG = LoggerFactory.getLogger(CertFpIndex.class);
+
+  // rate of false positives < 1% if the capacity is not exceeded
+  private static final int BITS_PER_ENTRY = 10;
+
+  private static final int NUM_HASHES = 7;
+
+  private static final int LOAD_BATCH_SIZE = 1000;
+
+  // covers the transactions committed late and the clock skew between the nodes
+  static final long CHECK_WINDOW_MS = 10L * 60 * 1000;
+
+  private static final class BloomFilter {
+
+    private final long numBits;
+
+    private final AtomicLongArray words;
+
+    BloomFilter(long numBits) {
+      this.words = new AtomicLongArray((int) ((numBits + 63) / 64));
+      this.numBits = 64L * words.length();
+    }
+
+    void put(long fp) {
+      long hash = mix(fp);
+      long hash1 = hash & 0xFFFFFFFFL;
+      long hash2 = hash >>> 32;
+      for (int i = 0; i < NUM_HASHES; i++) {
+        long index = (hash1 + i * hash2) % numBits;
+        int wordIndex = (int) (index >>> 6);
+        long mask = 1L << index;
+        while (true) {
+          long word = words.get(wordIndex);
+          if ((word & mask) != 0 || words.compareAndSet(wordIndex, word, word | mask)) {
+            break;
+          }
+        }
+      }
+    }
+
+    boolean mightContain(long fp) {
+      long hash = mix(fp);
+      long hash1 = hash & 0xFFFFFFFFL;
+      long hash2 = hash >>> 32;
+      for (int i = 0; i < NUM_HASHES; i++) {
+        long index = (hash1 + i * hash2) % numBits;
+        if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    // finalizer of MurmurHash3, spreads the bits of the fingerprint
+    private static long mix(long fp) {
+      long hash = fp;
+      hash ^= hash >>> 33;
+      hash *= 0xff51afd7ed558ccdL;
+      hash ^= hash >>> 33;
+      hash *= 0xc4ceb9fe1a85ec53L;
+      hash ^= hash >>> 33;
+      return hash;
+    }
+
+  } // class BloomFilter
+
+  private static final class Filters {
+
+    private final BloomFilter subjects;
+
+    private final BloomFilter keys;
+
+    private final AtomicLong size = new AtomicLong(0);
+
+    Filters(long numBits) {
+      this.subjects = new BloomFilter(numBits);
+      this.keys = new BloomFilter(numBits);
+    }
+
+    void add(long fpSubject, long fpPublicKey) {
+      subjects.put(fpSubject);
+      keys.put(fpPublicKey);
+      size.incrementAndGet();
+    }
+
+  } // class Filters
+
+  private final CertStore certstore;
+
+  private final NameId ca;
+
+  private final int capacity;
+
+  private volatile boolean disabled;
+
+  private final AtomicBoolean inLoad = new AtomicBoolean(false);
+
+  // null until the first load is finished
+  private volatile Filters current;
+
+  // not null only while loading
+  private volatile Filters loading;
+
+  CertFpIndex(CertStore certstore, NameId ca, int capacity) {
+    this.certstore = Args.notNull(certstore, "certstore");
+    this.ca = Args.notNull(ca, "ca");
+    this.capacity = Args.positive(capacity, "capacity");
+  }
+
+  /**
+   * Loads the fingerprints of all certificates of the CA from the database, and replaces
+   * the current index afterwards. Until the first load is finished, all queries will be
+   * forwarded to the database.
+   */
+  void load() {
+    if (disabled || !inLoad.compareAndSet(false, true)) {
+      return;
+    }
+
+    long start = System.currentTimeMillis();
+    try {
+      Filters filters = new Filters((long) BITS_PER_ENTRY * capacity);
+      // the certificates added from now on will be added to the new filters, even if
+      // they are not visible to the following queries.
+      loading = filters;
+
+      long startId = 1;
+      while (true) {
+        List<long[]> entries = certstore.getCertFps(ca, startId, LOAD_BATCH_SIZE);
+        if (entries.isEmpty()) {
+          break;
+        }
+
+        for (long[] entry : entries) {
+          filters.add(entry[1], entry[2]);
+          startId = entry[0] + 1;
+        }
+      }
+
+      current = filters;
+
+      long size = filters.size.get();
+      LOG.info("loaded fingerprints of {} certificates of CA {}, took {} ms",
+          size, ca.getName(), System.currentTimeMillis() - start);
+      if (size > capacity) {
+        LOG.warn("CA {} has more certificates than the capacity {} of the fingerprint index, "
+            + "please increase the CA extraControl {}", ca.getName(), capacity, KEY_CAPACITY);
+      }
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not load the fingerprints of certificates of CA "
+          + ca.getName());
+    } finally {
+      loading = null;
+      inLoad.set(false);
+    }
+  }
+
+  /**
+   * Checks whether certificates of the CA have been inserted by another node within the last
+   * {@link #CHECK_WINDOW_MS} milliseconds. If yes, the index will be disabled.
+   */
+  void checkOtherNodes() {
+    if (disabled) {
+      return;
+    }
+
+    try {
+      long id = certstore.getCertIdOfOtherShard(ca,
+          System.currentTimeMillis() - CHECK_WINDOW_MS);
+      if (id != 0) {
+        disabled = true;
+        current = null;
+        LOG.warn("certificate {} of CA {} has been inserted by the node with shard id {}, "
+            + "disabled the fingerprint index which requires that only this node issues "
+            + "certificates, please remove the CA extraControl {}",
+            id, ca.getName(), UniqueIdGenerator.getShardId(id), KEY_CAPACITY);
+      }
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not check the certificates of other nodes of CA "
+          + ca.getName());
+    }
+  }
+
+  /**
+   * Adds the fingerprints of a certificate which has been saved in the database.
+   * @param fpSubject
+   *          Fingerprint of the subject.
+   * @param fpPublicKey
+   *          Fingerprint of the public key.
+   */
+  void add(long fpSubject, long fpPublicKey) {
+    // read loading before current, otherwise a concurrent load may miss this certificate.
+    Filters filters1 = loading;
+    if (filters1 != null) {
+      filters1.add(fpSubject, fpPublicKey);
+    }
+
+    Filters filters2 = current;
+    if (filters2 != null && filters2 != filters1) {
+      filters2.add(fpSubject, fpPublicKey);
+    }
+  }
+
+  /**
+   * Whether a certificate with the given subject may have been issued.
+   * @param fpSubject
+   *          Fingerprint of the subject.
+   * @return false if definitely no certificate has been issued, true otherwise.
+   */
+  boolean mightContainSubject(long fpSubject) {
+    Filters filters = current;
+    return disabled || filters == null || filters.subjects.mightContain(fpSubject);
+  }
+
+  /**
+   * Whether a certificate with the given public key may have been issued.
+   * @param fpPublicKey
+   *          Fingerprint of the public key.
+   * @return false if definitely no certificate has been issued, true otherwise.
+   */
+  boolean mightContainPublicKey(long fpPublicKey) {
+    Filters filters = current;
+    return disabled || filters == null || filters.keys.mightContain(fpPublicKey);
+  }
+
+}
@@ -0,0 +1,160 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ca.server;
+
+import java.io.Closeable;
+import java.io.OutputStream;
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Certificate;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.security.SecurityFactory;
+import org.xipki.util.Args;
+import org.xipki.util.concurrent.ConcurrentBag;
+import org.xipki.util.concurrent.ConcurrentBagEntry;
+
+/**
+ * Verifies the signature of the certificates issued by a CA with pooled
+ * {@link ContentVerifier}s, directly from the TBSCertificate and signature of the BC
+ * {@link Certificate}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class CertSignatureVerifier implements Closeable {
+
+  /**
+   * Name of the CA extraControl: only every n-th issued certificate will be verified.
+   * Defaults to 1 (all certificates will be verified).
+   */
+  static final String KEY_SAMPLE_INTERVAL = "certVerification.sampleInterval";
+
+  private static final Logger LOG = LoggerFactory.getLogger(CertSignatureVerifier.class);
+
+  private final ContentVerifierProvider verifierProvider;
+
+  private final int poolSize;
+
+  private final int sampleInterval;
+
+  private final AtomicLong numCerts = new AtomicLong(0);
+
+  private final ConcurrentHashMap<AlgorithmIdentifier,
+      ConcurrentBag<ConcurrentBagEntry<ContentVerifier>>> pools = new ConcurrentHashMap<>();
+
+  CertSignatureVerifier(SecurityFactory securityFactory, PublicKey caPublicKey, int poolSize,
+      int sampleInterval) throws InvalidKeyException {
+    Args.notNull(securityFactory, "securityFactory");
+    Args.notNull(caPublicKey, "caPublicKey");
+    this.verifierProvider = securityFactory.getContentVerifierProvider(caPublicKey);
+    this.poolSize = Args.positive(poolSize, "poolSize");
+    this.sampleInterval = Args.positive(sampleInterval, "sampleInterval");
+  }
+
+  /**
+   * Verifies the signature of the certificate.
+   * @param cert
+   *          The certificate.
+   * @return whether the signature is valid. Returns also <code>true</code> if the certificate
+   *         is not in the sample.
+   */
+  boolean verify(Certificate cert) {
+    Args.notNull(cert, "cert");
+    if (sampleInterval > 1 && numCerts.getAndIncrement() % sampleInterval != 0) {
+      return true;
+    }
+
+    AlgorithmIdentifier sigAlgId = cert.getSignatureAlgorithm();
+    if (!sigAlgId.equals(cert.getTBSCertificate().getSignature())) {
+      LOG.debug("signature algorithm in TBSCertificate does not match the outer one");
+      return false;
+    }
+
+    ConcurrentBag<ConcurrentBagEntry<ContentVerifier>> pool;
+    ConcurrentBagEntry<ContentVerifier> entry;
+    try {
+      pool = getPool(sigAlgId);
+      entry = pool.borrow(0, TimeUnit.MILLISECONDS);
+    } catch (OperatorCreationException | InterruptedException ex) {
+      LOG.debug("{} while verifying signature: {}", ex.getClass().getName(), ex.getMessage());
+      return false;
+    }
+
+    boolean succ = false;
+    try {
+      // all pooled verifiers are in use, use a temporary one.
+      ContentVerifier verifier = (entry == null) ? verifierProvider.get(sigAlgId) : entry.value();
+      OutputStream out = verifier.getOutputStream();
+      out.write(cert.getTBSCertificate().getEncoded(ASN1Encoding.DER));
+      boolean valid = verifier.verify(cert.getSignature().getOctets());
+      succ = true;
+      return valid;
+    } catch (Exception ex) {
+      LOG.debug("{} while verifying signature: {}", ex.getClass().getName(), ex.getMessage());
+      return false;
+    } finally {
+      if (entry != null) {
+        if (succ) {
+          pool.requite(entry);
+        } else {
+          // the state of the verifier is unknown
+          pool.remove(entry);
+        }
+      }
+    }
+  } // method verify
+
+  private ConcurrentBag<ConcurrentBagEntry<ContentVerifier>> getPool(AlgorithmIdentifier sigAlgId)
+      throws OperatorCreationException {
+    ConcurrentBag<ConcurrentBagEntry<ContentVerifier>> pool = pools.get(sigAlgId);
+    if (pool != null) {
+      return pool;
+    }
+
+    synchronized (pools) {
+      pool = pools.get(sigAlgId);
+      if (pool == null) {
+        pool = new ConcurrentBag<>();
+        for (int i = 0; i < poolSize; i++) {
+          pool.add(new ConcurrentBagEntry<>(verifierProvider.get(sigAlgId)));
+        }
+        pools.put(sigAlgId, pool);
+      }
+      return pool;
+    }
+  } // method getPool
+
+  @Override
+  public void close() {
+    for (ConcurrentBag<ConcurrentBagEntry<ContentVerifier>> pool : pools.values()) {
+      pool.close();
+    }
+    pools.clear();
+  }
+
+}
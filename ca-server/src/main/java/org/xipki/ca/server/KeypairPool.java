@@ -0,0 +1,284 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ca.server;
+
+import java.io.Closeable;
+import java.math.BigInteger;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.DSAParameterSpec;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.RSAKeyGenParameterSpec;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.profile.KeypairGenControl;
+import org.xipki.security.util.KeyUtil;
+import org.xipki.util.LogUtil;
+
+/**
+ * Pool of pre-generated keypairs for the CA-generated keys, one pool per
+ * {@link KeypairGenControl} (algorithm, keysize, curve, DSA parameters). Each pool is
+ * refilled up to the high watermark in the background as soon as its size falls to the low
+ * watermark. If a pool is empty, the keypair is generated inline.
+ *
+ * <p>The background generation uses its own {@link KeyPairGenerator} per pool, so that it does
+ * not block the inline generation via {@link KeyUtil}, which serializes on a shared generator.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class KeypairPool implements Closeable {
+
+  /**
+   * Name of the CA extraControl: maximal number of pre-generated keypairs per
+   * KeypairGenControl. Defaults to 0 (keypairs will be generated inline).
+   */
+  static final String KEY_HIGH_WATERMARK = "keypairPool.highWatermark";
+
+  /**
+   * Name of the CA extraControl: the pool will be refilled if it contains not more than
+   * this number of keypairs. Defaults to the half of highWatermark.
+   */
+  static final String KEY_LOW_WATERMARK = "keypairPool.lowWatermark";
+
+  /**
+   * Name of the CA extraControl: number of threads to fill the pools. Defaults to 1.
+   */
+  static final String KEY_THREADS = "keypairPool.threads";
+
+  private static final Logger LOG = LoggerFactory.getLogger(KeypairPool.class);
+
+  private class Pool {
+
+    private final String id;
+
+    private final KeypairGenControl control;
+
+    private final ConcurrentLinkedQueue<KeyPair> keypairs = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    private final AtomicBoolean inFill = new AtomicBoolean(false);
+
+    // accessed only by the single FillService of this pool
+    private KeyPairGenerator kpGen;
+
+    Pool(String id, KeypairGenControl control) {
+      this.id = id;
+      this.control = control;
+    }
+
+    KeyPair generateKeypair() throws NoSuchAlgorithmException, NoSuchProviderException,
+        InvalidAlgorithmParameterException {
+      if (kpGen == null) {
+        String algorithm;
+        AlgorithmParameterSpec spec;
+        if (control instanceof KeypairGenControl.RSAKeypairGenControl) {
+          KeypairGenControl.RSAKeypairGenControl tkg =
+              (KeypairGenControl.RSAKeypairGenControl) control;
+          algorithm = "RSA";
+          BigInteger publicExponent = tkg.getPublicExponent();
+          spec = new RSAKeyGenParameterSpec(tkg.getKeysize(),
+              publicExponent == null ? RSAKeyGenParameterSpec.F4 : publicExponent);
+        } else if (control instanceof KeypairGenControl.ECKeypairGenControl) {
+          algorithm = "EC";
+          spec = new ECGenParameterSpec(
+              ((KeypairGenControl.ECKeypairGenControl) control).getCurveOid().getId());
+        } else {
+          algorithm = "DSA";
+          spec = ((KeypairGenControl.DSAKeypairGenControl) control).getParameterSpec();
+        }
+
+        KeyPairGenerator gen = KeyPairGenerator.getInstance(algorithm, "BC");
+        gen.initialize(spec, random);
+        kpGen = gen;
+      }
+
+      return kpGen.generateKeyPair();
+    }
+
+  } // class Pool
+
+  private class FillService implements Runnable {
+
+    private final Pool pool;
+
+    FillService(Pool pool) {
+      this.pool = pool;
+    }
+
+    @Override
+    public void run() {
+      long start = System.currentTimeMillis();
+      int num = 0;
+      try {
+        while (!closed && pool.size.get() < highWatermark) {
+          pool.keypairs.add(pool.generateKeypair());
+          pool.size.incrementAndGet();
+          num++;
+        }
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not fill the keypair pool " + pool.id);
+      } finally {
+        pool.inFill.set(false);
+      }
+
+      LOG.debug("generated {} keypairs for the pool {}, took {} ms", num, pool.id,
+          System.currentTimeMillis() - start);
+    }
+
+  } // class FillService
+
+  private final int highWatermark;
+
+  private final int lowWatermark;
+
+  private final SecureRandom random = new SecureRandom();
+
+  private final ConcurrentHashMap<String, Pool> pools = new ConcurrentHashMap<>();
+
+  private final ExecutorService fillExecutor;
+
+  private volatile boolean closed;
+
+  /**
+   * Constructor.
+   * @param highWatermark
+   *          Maximal number of keypairs per pool. If not positive, no keypair will be
+   *          pre-generated.
+   * @param lowWatermark
+   *          The pool will be refilled if it contains not more than this number of keypairs.
+   * @param threads
+   *          Number of threads to fill the pools.
+   */
+  KeypairPool(int highWatermark, int lowWatermark, int threads) {
+    this.highWatermark = Math.max(0, highWatermark);
+    this.lowWatermark = Math.max(0, Math.min(lowWatermark, this.highWatermark - 1));
+    this.fillExecutor = (this.highWatermark == 0) ? null
+        : Executors.newFixedThreadPool(Math.max(1, threads));
+  }
+
+  /**
+   * Takes a pre-generated keypair from the pool, or generates it inline if the pool is empty.
+   * @param control
+   *          Control of the keypair generation. Must be one of
+   *          {@link KeypairGenControl.RSAKeypairGenControl},
+   *          {@link KeypairGenControl.ECKeypairGenControl} and
+   *          {@link KeypairGenControl.DSAKeypairGenControl}.
+   * @param inlineRandom
+   *          Random to generate the keypair inline.
+   * @return the keypair.
+   * @throws NoSuchAlgorithmException
+   *           If the algorithm is not supported.
+   * @throws NoSuchProviderException
+   *           If the provider is not available.
+   * @throws InvalidAlgorithmParameterException
+   *           If the parameters are invalid.
+   */
+  KeyPair getKeypair(KeypairGenControl control, SecureRandom inlineRandom)
+      throws NoSuchAlgorithmException, NoSuchProviderException,
+        InvalidAlgorithmParameterException {
+    String poolId = getPoolId(control);
+
+    KeyPair keypair = null;
+    if (fillExecutor != null && !closed) {
+      Pool pool = pools.get(poolId);
+      if (pool == null) {
+        Pool newPool = new Pool(poolId, control);
+        pool = pools.putIfAbsent(poolId, newPool);
+        if (pool == null) {
+          pool = newPool;
+        }
+      }
+
+      keypair = pool.keypairs.poll();
+      if (keypair != null) {
+        pool.size.decrementAndGet();
+      }
+
+      if (pool.size.get() <= lowWatermark && pool.inFill.compareAndSet(false, true)) {
+        try {
+          fillExecutor.execute(new FillService(pool));
+        } catch (RejectedExecutionException ex) {
+          pool.inFill.set(false);
+        }
+      }
+    }
+
+    if (keypair != null) {
+      return keypair;
+    }
+
+    if (control instanceof KeypairGenControl.RSAKeypairGenControl) {
+      KeypairGenControl.RSAKeypairGenControl tkg = (KeypairGenControl.RSAKeypairGenControl) control;
+      return KeyUtil.generateRSAKeypair(tkg.getKeysize(), tkg.getPublicExponent(), inlineRandom);
+    } else if (control instanceof KeypairGenControl.ECKeypairGenControl) {
+      return KeyUtil.generateECKeypair(
+          ((KeypairGenControl.ECKeypairGenControl) control).getCurveOid(), inlineRandom);
+    } else {
+      return KeyUtil.generateDSAKeypair(
+          ((KeypairGenControl.DSAKeypairGenControl) control).getParameterSpec(), inlineRandom);
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    if (fillExecutor != null) {
+      fillExecutor.shutdownNow();
+    }
+
+    // do not keep the private keys in memory longer than needed
+    for (Pool pool : pools.values()) {
+      pool.keypairs.clear();
+      pool.size.set(0);
+    }
+    pools.clear();
+  }
+
+  private static String getPoolId(KeypairGenControl control) {
+    if (control instanceof KeypairGenControl.RSAKeypairGenControl) {
+      KeypairGenControl.RSAKeypairGenControl tkg = (KeypairGenControl.RSAKeypairGenControl) control;
+      BigInteger publicExponent = tkg.getPublicExponent();
+      return "RSA/" + tkg.getKeysize() + "/"
+          + (publicExponent == null ? RSAKeyGenParameterSpec.F4 : publicExponent).toString(16);
+    } else if (control instanceof KeypairGenControl.ECKeypairGenControl) {
+      return "EC/" + ((KeypairGenControl.ECKeypairGenControl) control).getCurveOid().getId();
+    } else if (control instanceof KeypairGenControl.DSAKeypairGenControl) {
+      DSAParameterSpec spec = ((KeypairGenControl.DSAKeypairGenControl) control).getParameterSpec();
+      return "DSA/" + spec.getP().toString(16) + "/" + spec.getQ().toString(16) + "/"
+          + spec.getG().toString(16);
+    } else {
+      throw new IllegalArgumentException("unsupported KeypairGenControl " + control);
+    }
+  }
+
+}
@@ -79,4 +79,28 @@ public class UniqueIdGenerator {
     return ret;
   }
 
+  public int getShardId() {
+    return shardId;
+  }
+
+  /**
+   * Gets the smallest id generated at the given time.
+   * @param time
+   *          Time in milliseconds since January 1, 1970, 00:00:00 GMT.
+   * @return the smallest id.
+   */
+  public long getMinId(long time) {
+    return Math.max(0, time - epoch) << 17;
+  }
+
+  /**
+   * Gets the shard id of the node which has generated the given id.
+   * @param id
+   *          Id generated by a {@link UniqueIdGenerator}.
+   * @return the shard id.
+   */
+  public static int getShardId(long id) {
+    return (int) (id & 0x7F);
+  }
+
 }
@@ -37,9 +37,7 @@ import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
-import java.security.PublicKey;
 import java.security.SecureRandom;
-import java.security.SignatureException;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
@@ -61,7 +59,13 @@ import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -153,6 +157,7 @@ import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
 import org.xipki.util.CollectionUtil;
 import org.xipki.util.CompareUtil;
+import org.xipki.util.ConfPairs;
 import org.xipki.util.DateUtil;
 import org.xipki.util.HealthCheckResult;
 import org.xipki.util.LogUtil;
@@ -230,6 +235,10 @@ public class X509Ca implements Closeable {
       try {
         int num = removeExpirtedCerts(expiredAt, CaAuditConstants.MSGID_ca_routine);
         LOG.info("removed {} certificates expired at {}", num, expiredAt.toString());
+        if (num > 0 && certFpIndex != null) {
+          // drop the fingerprints of the removed certificates
+          certFpIndex.load();
+        }
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "could not remove expired certificates");
       } finally {
@@ -415,10 +424,18 @@ public class X509Ca implements Closeable {
 
   private ScheduledFuture<?> suspendedCertsRevoker;
 
+  private ScheduledFuture<?> certFpIndexChecker;
+
   private final ConcurrentSkipListSet<Long> publicKeyCertsInProcess = new ConcurrentSkipListSet<>();
 
   private final ConcurrentSkipListSet<Long> subjectCertsInProcess = new ConcurrentSkipListSet<>();
 
+  private final CertSignatureVerifier certVerifier;
+
+  private final KeypairPool keypairPool;
+
+  private final CertFpIndex certFpIndex;
+
   public X509Ca(CaManagerImpl caManager, CaInfo caInfo, CertStore certstore)
       throws OperationException {
     this.caManager = Args.notNull(caManager, "caManager");
@@ -429,6 +446,34 @@ public class X509Ca implements Closeable {
     this.caCert = caInfo.getCert();
     this.certstore = Args.notNull(certstore, "certstore");
 
+    ConfPairs extraControl = caInfo.getCaEntry().getExtraControl();
+    int sampleInterval =
+        getIntExtraControl(extraControl, CertSignatureVerifier.KEY_SAMPLE_INTERVAL, 1, 1);
+    int keypairPoolHighWatermark =
+        getIntExtraControl(extraControl, KeypairPool.KEY_HIGH_WATERMARK, 0, 0);
+    // defaults to the half of the high watermark
+    int keypairPoolLowWatermark = getIntExtraControl(extraControl, KeypairPool.KEY_LOW_WATERMARK,
+        keypairPoolHighWatermark / 2, 0);
+    int keypairPoolThreads = getIntExtraControl(extraControl, KeypairPool.KEY_THREADS, 1, 1);
+    int certFpIndexCapacity = getIntExtraControl(extraControl, CertFpIndex.KEY_CAPACITY, 0, 0);
+
+    // the index requires that only this node issues certificates of the CA, see CertFpIndex.
+    // A CA in slave mode never uses it.
+    this.certFpIndex = (masterMode && certFpIndexCapacity > 0)
+        ? new CertFpIndex(certstore, caIdent, certFpIndexCapacity) : null;
+
+    try {
+      this.certVerifier = new CertSignatureVerifier(caManager.getSecurityFactory(),
+          caCert.getCert().getPublicKey(), Runtime.getRuntime().availableProcessors(),
+          sampleInterval);
+    } catch (InvalidKeyException | RuntimeException ex) {
+      LogUtil.error(LOG, ex, "could not create verifier for the certificates of CA " + caIdent);
+      throw new OperationException(SYSTEM_FAILURE, ex);
+    }
+
+    this.keypairPool = new KeypairPool(keypairPoolHighWatermark, keypairPoolLowWatermark,
+        keypairPoolThreads);
+
     SubjectPublicKeyInfo caSpki = this.caCert.getCertHolder().getSubjectPublicKeyInfo();
     ASN1ObjectIdentifier caSpkiAlgId = caSpki.getAlgorithm().getAlgorithm();
     if (caSpkiAlgId.equals(PKCSObjectIdentifiers.rsaEncryption)) {
@@ -498,6 +543,22 @@ public class X509Ca implements Closeable {
 
     this.suspendedCertsRevoker = executor.scheduleAtFixedRate(
         new SuspendedCertsRevoker(), random.nextInt(60), 60, TimeUnit.MINUTES);
+
+    if (certFpIndex != null) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          certFpIndex.load();
+        }
+      });
+
+      this.certFpIndexChecker = executor.scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          certFpIndex.checkOtherNodes();
+        }
+      }, 0, 60, TimeUnit.SECONDS);
+    }
   } // constructor
 
   public CaInfo getCaInfo() {
@@ -1050,6 +1111,11 @@ public class X509Ca implements Closeable {
       return 1;
     }
 
+    if (certFpIndex != null) {
+      certFpIndex.add(X509Util.fpCanonicalizedName(certInfo.getCert().getSubjectAsX500Name()),
+          FpIdCalculator.hash(certInfo.getSubjectPublicKey()));
+    }
+
     for (IdentifiedCertPublisher publisher : publishers()) {
       if (!publisher.isAsyn()) {
         boolean successful;
@@ -1657,40 +1723,85 @@ public class X509Ca implements Closeable {
       }
     }
 
-    List<CertificateInfo> certInfos = new ArrayList<>(n);
+    final CertificateInfo[] certInfos = new CertificateInfo[n];
     OperationExceptionWithIndex exception = null;
 
-    for (int i = 0; i < n; i++) {
-      if (exception != null) {
-        break;
+    ExecutorService executor = caManager.getCertGenExecutor();
+    if (n == 1 || executor == null) {
+      for (int i = 0; i < n; i++) {
+        try {
+          certInfos[i] = generateCert(i, gcts.get(i), requestor, reqType, transactionId, msgId);
+        } catch (OperationExceptionWithIndex ex) {
+          exception = ex;
+          break;
+        }
       }
-      GrantedCertTemplate gct = gcts.get(i);
-      final NameId certprofilIdent = gct.certprofile.getIdent();
-      final String subjectText = gct.grantedSubjectText;
-      LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
-          caIdent.getName(), certprofilIdent.getName(), subjectText);
+    } else {
+      // the templates are independent of each other, generate the certificates concurrently
+      final AtomicBoolean failed = new AtomicBoolean(false);
+      List<Future<CertificateInfo>> futures = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        final int index = i;
+        final GrantedCertTemplate gct = gcts.get(i);
+        Callable<CertificateInfo> task = new Callable<CertificateInfo>() {
+          @Override
+          public CertificateInfo call() throws OperationExceptionWithIndex {
+            if (failed.get()) {
+              // will be reverted anyway
+              return null;
+            }
 
-      boolean successful = false;
-      try {
-        CertificateInfo certInfo = generateCert(gct, requestor, reqType, transactionId, msgId);
-        successful = true;
-        certInfos.add(certInfo);
+            try {
+              return generateCert(index, gct, requestor, reqType, transactionId, msgId);
+            } catch (OperationExceptionWithIndex ex) {
+              failed.set(true);
+              throw ex;
+            }
+          }
+        };
 
-        if (LOG.isInfoEnabled()) {
-          String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
-          CertWithDbId cert = certInfo.getCert();
-          LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
-              prefix, caIdent.getName(), certprofilIdent.getName(), cert.getSubject(),
-              LogUtil.formatCsn(cert.getCert().getSerialNumber()));
+        Future<CertificateInfo> future;
+        try {
+          future = executor.submit(task);
+        } catch (RejectedExecutionException ex) {
+          // executor is being shut down
+          FutureTask<CertificateInfo> futureTask = new FutureTask<>(task);
+          futureTask.run();
+          future = futureTask;
         }
-      } catch (OperationException ex) {
-        exception = new OperationExceptionWithIndex(i, ex);
-      } catch (Throwable th) {
-        exception = new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE, th));
-      } finally {
-        if (!successful) {
-          LOG.warn("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
-              caIdent.getName(), certprofilIdent.getName(), subjectText);
+        futures.add(future);
+      }
+
+      // wait for all tasks, the generated certificates will be reverted in case of error
+      boolean interrupted = false;
+      for (int i = 0; i < n; i++) {
+        Future<CertificateInfo> future = futures.get(i);
+        while (true) {
+          try {
+            certInfos[i] = future.get();
+          } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (exception == null) {
+              exception = (cause instanceof OperationExceptionWithIndex)
+                  ? (OperationExceptionWithIndex) cause
+                  : new OperationExceptionWithIndex(i,
+                      new OperationException(SYSTEM_FAILURE, cause));
+            }
+          } catch (InterruptedException ex) {
+            // continue waiting, since the generated certificates must be reverted
+            interrupted = true;
+            failed.set(true);
+            continue;
+          }
+          break;
+        }
+      }
+
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+        if (exception == null) {
+          exception = new OperationExceptionWithIndex(0,
+              new OperationException(SYSTEM_FAILURE, "interrupted"));
         }
       }
     }
@@ -1700,6 +1811,10 @@ public class X509Ca implements Closeable {
           + " certificates", exception.getIndex());
       // delete generated certificates
       for (CertificateInfo m : certInfos) {
+        if (m == null) {
+          continue;
+        }
+
         BigInteger serial = m.getCert().getCert().getSerialNumber();
         try {
           removeCert(serial, msgId);
@@ -1712,7 +1827,40 @@ public class X509Ca implements Closeable {
       throw exception;
     }
 
-    return certInfos;
+    return new ArrayList<>(Arrays.asList(certInfos));
+  }
+
+  private CertificateInfo generateCert(int index, GrantedCertTemplate gct,
+      RequestorInfo requestor, RequestType reqType, byte[] transactionId, String msgId)
+      throws OperationExceptionWithIndex {
+    final NameId certprofilIdent = gct.certprofile.getIdent();
+    final String subjectText = gct.grantedSubjectText;
+    LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
+        caIdent.getName(), certprofilIdent.getName(), subjectText);
+
+    boolean successful = false;
+    try {
+      CertificateInfo certInfo = generateCert(gct, requestor, reqType, transactionId, msgId);
+      successful = true;
+
+      if (LOG.isInfoEnabled()) {
+        String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
+        CertWithDbId cert = certInfo.getCert();
+        LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
+            prefix, caIdent.getName(), certprofilIdent.getName(), cert.getSubject(),
+            LogUtil.formatCsn(cert.getCert().getSerialNumber()));
+      }
+      return certInfo;
+    } catch (OperationException ex) {
+      throw new OperationExceptionWithIndex(index, ex);
+    } catch (Throwable th) {
+      throw new OperationExceptionWithIndex(index, new OperationException(SYSTEM_FAILURE, th));
+    } finally {
+      if (!successful) {
+        LOG.warn("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
+            caIdent.getName(), certprofilIdent.getName(), subjectText);
+      }
+    }
   }
 
   public CertificateInfo generateCert(CertTemplateData certTemplate, RequestorInfo requestor,
@@ -1830,7 +1978,7 @@ public class X509Ca implements Closeable {
           throw new OperationException(SYSTEM_FAILURE, ex);
         }
 
-        if (!verifySignature(cert)) {
+        if (!certVerifier.verify(bcCert)) {
           throw new OperationException(SYSTEM_FAILURE,
               "could not verify the signature of generated certificate");
         }
@@ -1881,7 +2029,7 @@ public class X509Ca implements Closeable {
     String grantedSubjectText = X509Util.getRfc4519Name(gct.grantedSubject);
 
     final boolean incSerial = gct.certprofile.incSerialNumberIfSubjectExists();
-    final boolean certIssued = certstore.isCertForSubjectIssued(caIdent, fpSubject);
+    final boolean certIssued = isCertForSubjectIssued(fpSubject);
     if (certIssued && !incSerial) {
       throw new OperationException(ALREADY_ISSUED,
           "certificate for the given subject " + grantedSubjectText + " already issued");
@@ -1915,8 +2063,7 @@ public class X509Ca implements Closeable {
         throw new OperationException(SYSTEM_FAILURE, ex);
       }
 
-      foundUniqueSubject = !certstore.isCertForSubjectIssued(caIdent,
-          X509Util.fpCanonicalizedName(subject));
+      foundUniqueSubject = !isCertForSubjectIssued(X509Util.fpCanonicalizedName(subject));
       if (foundUniqueSubject) {
         break;
       }
@@ -1931,6 +2078,20 @@ public class X509Ca implements Closeable {
     gct.setGrantedSubject(subject);
   }
 
+  private boolean isCertForSubjectIssued(long fpSubject) throws OperationException {
+    if (certFpIndex != null && !certFpIndex.mightContainSubject(fpSubject)) {
+      return false;
+    }
+    return certstore.isCertForSubjectIssued(caIdent, fpSubject);
+  }
+
+  private boolean isCertForKeyIssued(long fpPublicKey) throws OperationException {
+    if (certFpIndex != null && !certFpIndex.mightContainPublicKey(fpPublicKey)) {
+      return false;
+    }
+    return certstore.isCertForKeyIssued(caIdent, fpPublicKey);
+  }
+
   private GrantedCertTemplate createGrantedCertTemplate(CertTemplateData certTemplate,
       RequestorInfo requestor, boolean update) throws OperationException {
     Args.notNull(certTemplate, "certTemplate");
@@ -2046,9 +2207,7 @@ public class X509Ca implements Closeable {
             throw new OperationException(BAD_CERT_TEMPLATE, "keysize too large");
           }
 
-          BigInteger publicExponent = tkg.getPublicExponent();
-
-          KeyPair kp = KeyUtil.generateRSAKeypair(keysize, publicExponent, random);
+          KeyPair kp = keypairPool.getKeypair(tkg, random);
           java.security.interfaces.RSAPublicKey rsaPubKey =
               (java.security.interfaces.RSAPublicKey) kp.getPublic();
 
@@ -2080,8 +2239,7 @@ public class X509Ca implements Closeable {
                  priv.getCrtCoefficient()));
         } else if (kg instanceof KeypairGenControl.ECKeypairGenControl) {
           KeypairGenControl.ECKeypairGenControl tkg = (KeypairGenControl.ECKeypairGenControl) kg;
-          ASN1ObjectIdentifier curveOid = tkg.getCurveOid();
-          KeyPair kp = KeyUtil.generateECKeypair(curveOid, random);
+          KeyPair kp = keypairPool.getKeypair(tkg, random);
           ECPublicKey pub = (ECPublicKey) kp.getPublic();
           int orderBitLength = pub.getParams().getOrder().bitLength();
 
@@ -2108,7 +2266,7 @@ public class X509Ca implements Closeable {
               new org.bouncycastle.asn1.sec.ECPrivateKey(orderBitLength, priv.getS()));
         } else if (kg instanceof KeypairGenControl.DSAKeypairGenControl) {
           KeypairGenControl.DSAKeypairGenControl tkg = (KeypairGenControl.DSAKeypairGenControl) kg;
-          KeyPair kp = KeyUtil.generateDSAKeypair(tkg.getParameterSpec(), random);
+          KeyPair kp = keypairPool.getKeypair(tkg, random);
 
           grantedPublicKeyInfo = new SubjectPublicKeyInfo(tkg.getKeyAlgorithm(),
               new ASN1Integer(((DSAPublicKey) kp.getPublic()).getY()));
@@ -2178,7 +2336,7 @@ public class X509Ca implements Closeable {
       }
     } else {
       if (!duplicateKeyPermitted) {
-        if (certstore.isCertForKeyIssued(caIdent, fpPublicKey)) {
+        if (isCertForKeyIssued(fpPublicKey)) {
           throw new OperationException(ALREADY_ISSUED,
               "certificate for the given public key already issued");
         }
@@ -2543,19 +2701,6 @@ public class X509Ca implements Closeable {
     return event;
   }
 
-  private boolean verifySignature(X509Certificate cert) {
-    Args.notNull(cert, "cert");
-    PublicKey caPublicKey = caCert.getCert().getPublicKey();
-    try {
-      cert.verify(caPublicKey);
-      return true;
-    } catch (SignatureException | InvalidKeyException | CertificateException
-        | NoSuchAlgorithmException | NoSuchProviderException ex) {
-      LOG.debug("{} while verifying signature: {}", ex.getClass().getName(), ex.getMessage());
-      return false;
-    }
-  } // method verifySignature
-
   private SignerEntryWrapper getCrlSigner() {
     if (caInfo.getCrlControl() == null) {
       return null;
@@ -2594,10 +2739,54 @@ public class X509Ca implements Closeable {
       suspendedCertsRevoker = null;
     }
 
+    if (certFpIndexChecker != null) {
+      certFpIndexChecker.cancel(false);
+      certFpIndexChecker = null;
+    }
+
     ScheduledThreadPoolExecutor executor = caManager.getScheduledThreadPoolExecutor();
     if (executor != null) {
       executor.purge();
     }
+
+    certVerifier.close();
+    keypairPool.close();
+  }
+
+  /**
+   * Gets the integer value of the extraControl.
+   * @param extraControl
+   *          The extraControl of the CA. Could be {@code null}.
+   * @param key
+   *          Name of the extraControl.
+   * @param defaultValue
+   *          Value to be returned if the extraControl is not set.
+   * @param minValue
+   *          The minimal allowed value.
+   * @return the value.
+   * @throws OperationException
+   *           if the value is not an integer, or is less than minValue.
+   */
+  private static int getIntExtraControl(ConfPairs extraControl, String key, int defaultValue,
+      int minValue) throws OperationException {
+    String str = (extraControl == null) ? null : extraControl.value(key);
+    if (str == null) {
+      return defaultValue;
+    }
+
+    int value;
+    try {
+      value = Integer.parseInt(str.trim());
+    } catch (NumberFormatException ex) {
+      throw new OperationException(SYSTEM_FAILURE,
+          "invalid extraControl " + key + ": '" + str + "' is not an integer");
+    }
+
+    if (value < minValue) {
+      throw new OperationException(SYSTEM_FAILURE,
+          "invalid extraControl " + key + ": " + value + " is less than " + minValue);
+    }
+    return value;
   }
 
   private static Extension createReasonExtension(int reasonCode) {
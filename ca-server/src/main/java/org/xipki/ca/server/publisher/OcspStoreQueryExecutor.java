@@ -31,6 +31,8 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,9 +63,12 @@ class OcspStoreQueryExecutor {
 
     private final byte[] cert;
 
+    private final int certHashCode;
+
     IssuerEntry(int id, String b64Cert) {
       this.id = id;
       this.cert = Base64.decode(b64Cert);
+      this.certHashCode = Arrays.hashCode(cert);
     }
 
     int getId() {
@@ -73,35 +78,63 @@ class OcspStoreQueryExecutor {
     boolean matchCert(byte[] encodedCert) {
       return Arrays.equals(this.cert, encodedCert);
     }
+
+    @Override
+    public int hashCode() {
+      return certHashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof IssuerEntry)) {
+        return false;
+      }
+
+      return matchCert(((IssuerEntry) obj).cert);
+    }
+
   }
 
   private static class IssuerStore {
 
-    private final List<IssuerEntry> entries;
+    private final ConcurrentHashMap<Integer, IssuerEntry> idMap = new ConcurrentHashMap<>();
+
+    // hash code of the encoded certificate to the issuers
+    private final ConcurrentHashMap<Integer, List<IssuerEntry>> certMap =
+        new ConcurrentHashMap<>();
 
     IssuerStore(List<IssuerEntry> entries) {
       Args.notNull(entries, "entries");
-      this.entries = new ArrayList<>(entries.size());
-
       for (IssuerEntry entry : entries) {
         addIdentityEntry(entry);
       }
     }
 
-    final void addIdentityEntry(IssuerEntry entry) {
+    final synchronized void addIdentityEntry(IssuerEntry entry) {
       Args.notNull(entry, "entry");
-      for (IssuerEntry existingEntry : entries) {
-        if (existingEntry.getId() == entry.getId()) {
-          throw new IllegalArgumentException(
-              "issuer with the same id " + entry.getId() + " already available");
-        }
+      if (idMap.containsKey(entry.getId())) {
+        throw new IllegalArgumentException(
+            "issuer with the same id " + entry.getId() + " already available");
       }
 
-      entries.add(entry);
+      idMap.put(entry.getId(), entry);
+
+      List<IssuerEntry> existingEntries = certMap.get(entry.hashCode());
+      List<IssuerEntry> newEntries = (existingEntries == null)
+          ? new ArrayList<>(1) : new ArrayList<>(existingEntries);
+      newEntries.add(entry);
+      certMap.put(entry.hashCode(), newEntries);
     }
 
     Integer getIdForCert(byte[] encodedCert) {
       Args.notNull(encodedCert, "encodedCert");
+      List<IssuerEntry> entries = certMap.get(Arrays.hashCode(encodedCert));
+      if (entries == null) {
+        return null;
+      }
+
       for (IssuerEntry entry : entries) {
         if (entry.matchCert(encodedCert)) {
           return entry.getId();
@@ -121,6 +154,18 @@ class OcspStoreQueryExecutor {
       "INSERT INTO CERT (ID,LUPDATE,SN,NBEFORE,NAFTER,REV,IID,HASH,SUBJECT) "
       + "VALUES (?,?,?,?,?,?,?,?,?)";
 
+  private static final String SQL_ADD_CERT_EVENT =
+      "INSERT INTO CERT_EVENT (IID,SN,ETIME) VALUES (?,?,?)";
+
+  private static final String SQL_DELETE_CERT_EVENTS = "DELETE FROM CERT_EVENT WHERE ETIME<?";
+
+  /**
+   * Events older than this period are removed from the table CERT_EVENT.
+   */
+  private static final long CERT_EVENT_RETENTION_MS = 24L * 60 * 60 * 1000;
+
+  private static final int CERT_EVENTS_PER_CLEANUP = 1000;
+
   private static final Logger LOG = LoggerFactory.getLogger(OcspStoreQueryExecutor.class);
 
   private final DataSourceWrapper datasource;
@@ -138,6 +183,14 @@ class OcspStoreQueryExecutor {
 
   private final HashAlgo certhashAlgo;
 
+  /**
+   * Whether the table CERT_EVENT exists. It does not exist in databases created
+   * before version 5.0.2.
+   */
+  private final boolean certEventSupported;
+
+  private final AtomicLong numCertEvents = new AtomicLong(0);
+
   OcspStoreQueryExecutor(DataSourceWrapper datasource, boolean publishGoodCerts)
       throws DataAccessException, NoSuchAlgorithmException {
     this.datasource = Args.notNull(datasource, "datasource");
@@ -176,6 +229,12 @@ class OcspStoreQueryExecutor {
 
     str = variables.get("CERTHASH_ALGO");
     this.certhashAlgo = HashAlgo.getNonNullInstance(str);
+
+    this.certEventSupported = datasource.tableExists(null, "CERT_EVENT");
+    if (!certEventSupported) {
+      LOG.warn("table CERT_EVENT does not exist in datasource {}, the OCSP responders will not "
+          + "be notified of the revocation of certificates", datasource.getName());
+    }
   } // constructor
 
   private IssuerStore initIssuerStore() throws DataAccessException {
@@ -224,6 +283,7 @@ class OcspStoreQueryExecutor {
 
     if (certRegisteredId != null) {
       updateRegisteredCert(certRegisteredId, revInfo);
+      addCertEvent(issuerId, serialNumber);
       return;
     }
 
@@ -285,6 +345,11 @@ class OcspStoreQueryExecutor {
     } finally {
       datasource.releaseResources(ps, null);
     }
+
+    if (revoked) {
+      // a response for the previously unknown certificate may have been cached
+      addCertEvent(issuerId, serialNumber);
+    }
   } // method addOrUpdateCert
 
   private void updateRegisteredCert(long registeredCertId, CertRevocationInfo revInfo)
@@ -376,6 +441,7 @@ class OcspStoreQueryExecutor {
       }
     }
 
+    addCertEvent(issuerId, serialNumber);
   } // method unrevokeCert
 
   void removeCert(X509Cert issuer, CertWithDbId cert) throws DataAccessException {
@@ -387,18 +453,21 @@ class OcspStoreQueryExecutor {
       return;
     }
 
+    BigInteger serialNumber = cert.getCert().getSerialNumber();
     final String sql = "DELETE FROM CERT WHERE IID=? AND SN=?";
     PreparedStatement ps = datasource.prepareStatement(sql);
 
     try {
       ps.setInt(1, issuerId);
-      ps.setString(2, cert.getCert().getSerialNumber().toString(16));
+      ps.setString(2, serialNumber.toString(16));
       ps.executeUpdate();
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
       datasource.releaseResources(ps, null);
     }
+
+    addCertEvent(issuerId, serialNumber);
   } // method removeCert
 
   void revokeCa(X509Cert caCert, CertRevocationInfo revInfo) throws DataAccessException {
@@ -506,6 +575,53 @@ class OcspStoreQueryExecutor {
     }
   } // method getCertId
 
+  /**
+   * Records that the status of the given certificate has been changed, so that the
+   * OCSP responders can remove the cached responses of this certificate.
+   */
+  private void addCertEvent(int issuerId, BigInteger serialNumber) throws DataAccessException {
+    if (!certEventSupported) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    final String sql = SQL_ADD_CERT_EVENT;
+    PreparedStatement ps = datasource.prepareStatement(sql);
+
+    try {
+      ps.setInt(1, issuerId);
+      ps.setString(2, serialNumber.toString(16));
+      ps.setLong(3, now);
+      ps.executeUpdate();
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+
+    if (numCertEvents.incrementAndGet() % CERT_EVENTS_PER_CLEANUP == 0) {
+      removeOldCertEvents(now - CERT_EVENT_RETENTION_MS);
+    }
+  } // method addCertEvent
+
+  private void removeOldCertEvents(long maxEventTime) {
+    final String sql = SQL_DELETE_CERT_EVENTS;
+    try {
+      PreparedStatement ps = datasource.prepareStatement(sql);
+      try {
+        ps.setLong(1, maxEventTime);
+        int num = ps.executeUpdate();
+        LOG.info("removed {} entries from the table CERT_EVENT", num);
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, null);
+      }
+    } catch (DataAccessException ex) {
+      LogUtil.warn(LOG, ex, "could not remove old entries from the table CERT_EVENT");
+    }
+  } // method removeOldCertEvents
+
   boolean isHealthy() {
     final String sql = "SELECT ID FROM ISSUER";
 
@@ -0,0 +1,221 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ca.server.store;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Group commit of INSERT statements. The concurrent callers enqueue their rows, and the
+ * caller holding the flush lock writes all queued rows with one batch in one transaction,
+ * while the others wait for the lock. Each caller returns only after its row has been
+ * committed, or the insertion has failed.
+ *
+ * <p>If the batch fails before the commit, the transaction is rolled back and the rows are
+ * inserted individually, so that a single bad row does not fail the others. If the commit
+ * itself fails, it is unknown whether the rows have been stored, and all rows of the batch
+ * are reported as failed without retrying them.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class CertInsertBatcher {
+
+  /**
+   * A row to be inserted.
+   */
+  abstract static class PendingRow {
+
+    // accessed only while holding the flushLock
+    private boolean done;
+
+    private Exception error;
+
+    /**
+     * Sets the parameters of this row.
+     * @param ps
+     *          The prepared statement.
+     * @throws SQLException
+     *           if the parameters could not be set.
+     */
+    protected abstract void setParameters(PreparedStatement ps) throws SQLException;
+
+  } // class PendingRow
+
+  private static final Logger LOG = LoggerFactory.getLogger(CertInsertBatcher.class);
+
+  private final DataSourceWrapper datasource;
+
+  private final String sql;
+
+  private final int maxBatchSize;
+
+  private final Queue<PendingRow> queue = new ConcurrentLinkedQueue<>();
+
+  private final ReentrantLock flushLock = new ReentrantLock();
+
+  CertInsertBatcher(DataSourceWrapper datasource, String sql, int maxBatchSize) {
+    this.datasource = Args.notNull(datasource, "datasource");
+    this.sql = Args.notBlank(sql, "sql");
+    this.maxBatchSize = Args.positive(maxBatchSize, "maxBatchSize");
+  }
+
+  /**
+   * Inserts the row, and waits until it has been committed.
+   * @param row
+   *          The row to be inserted.
+   * @throws DataAccessException
+   *           if the row could not be inserted.
+   */
+  void insert(PendingRow row) throws DataAccessException {
+    queue.add(row);
+
+    Exception error;
+    flushLock.lock();
+    try {
+      // the row may have been written by the previous holder of the lock
+      while (!row.done) {
+        flush();
+      }
+      error = row.error;
+    } finally {
+      flushLock.unlock();
+    }
+
+    if (error == null) {
+      return;
+    } else if (error instanceof DataAccessException) {
+      throw (DataAccessException) error;
+    } else if (error instanceof SQLException) {
+      throw datasource.translate(sql, (SQLException) error);
+    } else {
+      throw new DataAccessException("could not insert row: " + error.getMessage(), error);
+    }
+  } // method insert
+
+  private void flush() {
+    List<PendingRow> batch = new ArrayList<>();
+    PendingRow row;
+    while (batch.size() < maxBatchSize && (row = queue.poll()) != null) {
+      batch.add(row);
+    }
+
+    if (batch.isEmpty()) {
+      return;
+    } else if (batch.size() == 1) {
+      insertSingle(batch.get(0));
+      return;
+    }
+
+    try {
+      insertBatch(batch);
+    } catch (Exception ex) {
+      // the batch has been rolled back, it may fail due to a single row, insert the rows
+      // individually
+      LogUtil.warn(LOG, ex, "could not insert " + batch.size()
+          + " rows in batch, insert them individually");
+      for (PendingRow m : batch) {
+        insertSingle(m);
+      }
+    }
+  } // method flush
+
+  private void insertSingle(PendingRow row) {
+    PreparedStatement ps = null;
+    try {
+      ps = datasource.prepareStatement(sql);
+      row.setParameters(ps);
+      ps.executeUpdate();
+    } catch (Exception ex) {
+      row.error = ex;
+    } finally {
+      datasource.releaseResources(ps, null);
+      row.done = true;
+    }
+  } // method insertSingle
+
+  /**
+   * Inserts the rows in one transaction. If the commit is executed, the rows are marked as
+   * done, with error if the commit failed.
+   * @throws Exception
+   *           if the batch failed before the commit. The transaction has been rolled back.
+   */
+  private void insertBatch(List<PendingRow> batch) throws Exception {
+    Connection conn = datasource.getConnection();
+    try {
+      boolean autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+
+      PreparedStatement ps = null;
+      try {
+        try {
+          ps = datasource.prepareStatement(conn, sql);
+          for (PendingRow row : batch) {
+            row.setParameters(ps);
+            ps.addBatch();
+          }
+          ps.executeBatch();
+        } catch (Exception ex) {
+          try {
+            conn.rollback();
+          } catch (SQLException ex2) {
+            LogUtil.error(LOG, ex2, "could not rollback the transaction");
+          }
+          throw ex;
+        }
+
+        SQLException commitError = null;
+        try {
+          conn.commit();
+        } catch (SQLException ex) {
+          // the rows may have been stored, inserting them again may duplicate them.
+          LogUtil.error(LOG, ex, "could not commit " + batch.size() + " rows");
+          commitError = ex;
+        }
+
+        for (PendingRow row : batch) {
+          row.error = commitError;
+          row.done = true;
+        }
+      } finally {
+        datasource.releaseResources(ps, null, false);
+        try {
+          conn.setAutoCommit(autoCommit);
+        } catch (SQLException ex) {
+          LogUtil.warn(LOG, ex, "could not restore the auto-commit mode");
+        }
+      }
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  } // method insertBatch
+
+}
@@ -41,6 +41,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.DEROctetString;
@@ -99,6 +100,11 @@ public class CertStore {
       + "CA_ID,RID,UID,FP_K,EE,RTYPE,TID,SHA1,REQ_SUBJECT,CERT)"
       + " VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 
+  /**
+   * Maximal number of certificates written in one transaction.
+   */
+  private static final int MAX_CERT_INSERT_BATCH_SIZE = 100;
+
   private static final String SQL_REVOKE_CERT =
       "UPDATE CERT SET LUPDATE=?,REV=?,RT=?,RIT=?,RR=? WHERE ID=?";
 
@@ -165,6 +171,8 @@ public class CertStore {
 
   private final String sqlCertForKeyIssued;
 
+  private final String sqlCertOfOtherShard;
+
   private final String sqlLatestSerialForSubjectLike;
 
   private final String sqlCrl;
@@ -200,6 +208,10 @@ public class CertStore {
 
   private final UniqueIdGenerator idGenerator;
 
+  // one batcher per CA, so that the insertions of different CAs do not wait for each other.
+  private final ConcurrentHashMap<Integer, CertInsertBatcher> certInsertBatchers =
+      new ConcurrentHashMap<>();
+
   public CertStore(DataSourceWrapper datasource, UniqueIdGenerator idGenerator)
       throws DataAccessException {
     this.datasource = Args.notNull(datasource, "datasource");
@@ -226,6 +238,9 @@ public class CertStore {
     this.sqlCertStatusForSubjectFp = buildSelectFirstSql("REV FROM CERT WHERE FP_S=? AND CA_ID=?");
     this.sqlCertforSubjectIssued = buildSelectFirstSql("ID FROM CERT WHERE CA_ID=? AND FP_S=?");
     this.sqlCertForKeyIssued = buildSelectFirstSql("ID FROM CERT WHERE CA_ID=? AND FP_K=?");
+    // the lowest 7 bits of the ID are the shard id, see UniqueIdGenerator
+    this.sqlCertOfOtherShard = buildSelectFirstSql(
+        "ID FROM CERT WHERE CA_ID=? AND ID>=? AND MOD(ID,128)<>?");
     this.sqlReqIdForSerial = buildSelectFirstSql("REQCERT.RID as REQ_ID FROM REQCERT INNER JOIN "
         + "CERT ON CERT.CA_ID=? AND CERT.SN=? AND REQCERT.CID=CERT.ID");
     this.sqlReqForId = buildSelectFirstSql("DATA FROM REQUEST WHERE ID=?");
@@ -287,45 +302,55 @@ public class CertStore {
     String b64Cert = Base64.encodeToString(certificate.getEncodedCert());
     String tid = (transactionId == null) ? null : Base64.encodeToString(transactionId);
 
-    final String sql = SQL_ADD_CERT;
-    PreparedStatement ps = borrowPreparedStatement(sql);
-
-    try {
-      // cert
-      X509Certificate cert = certificate.getCert();
-      int idx = 1;
-      ps.setLong(idx++, certId);
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      ps.setString(idx++, cert.getSerialNumber().toString(16));
-      ps.setString(idx++, subjectText);
-      ps.setLong(idx++, fpSubject);
-      setLong(ps, idx++, fpReqSubject);
-      ps.setLong(idx++, cert.getNotBefore().getTime() / 1000); // notBeforeSeconds
-      ps.setLong(idx++, cert.getNotAfter().getTime() / 1000); // notAfterSeconds
-      setBoolean(ps, idx++, false);
-      ps.setInt(idx++, certprofile.getId());
-      ps.setInt(idx++, ca.getId());
-      setInt(ps, idx++, requestor.getId());
-      setInt(ps, idx++, userId);
-      ps.setLong(idx++, fpPk);
-      boolean isEeCert = cert.getBasicConstraints() == -1;
-      ps.setInt(idx++, isEeCert ? 1 : 0);
-      ps.setInt(idx++, reqType.getCode());
-      ps.setString(idx++, tid);
-
-      ps.setString(idx++, b64FpCert);
-      ps.setString(idx++, reqSubjectText);
-      ps.setString(idx++, b64Cert);
+    final X509Certificate cert = certificate.getCert();
+    final long lastUpdate = System.currentTimeMillis() / 1000; // currentTimeSeconds
+    final Long fpReqSubject0 = fpReqSubject;
+    final String reqSubjectText0 = reqSubjectText;
+
+    // concurrent insertions are committed together
+    getCertInsertBatcher(ca.getId()).insert(new CertInsertBatcher.PendingRow() {
+      @Override
+      protected void setParameters(PreparedStatement ps) throws SQLException {
+        int idx = 1;
+        ps.setLong(idx++, certId);
+        ps.setLong(idx++, lastUpdate);
+        ps.setString(idx++, cert.getSerialNumber().toString(16));
+        ps.setString(idx++, subjectText);
+        ps.setLong(idx++, fpSubject);
+        setLong(ps, idx++, fpReqSubject0);
+        ps.setLong(idx++, cert.getNotBefore().getTime() / 1000); // notBeforeSeconds
+        ps.setLong(idx++, cert.getNotAfter().getTime() / 1000); // notAfterSeconds
+        setBoolean(ps, idx++, false);
+        ps.setInt(idx++, certprofile.getId());
+        ps.setInt(idx++, ca.getId());
+        setInt(ps, idx++, requestor.getId());
+        setInt(ps, idx++, userId);
+        ps.setLong(idx++, fpPk);
+        boolean isEeCert = cert.getBasicConstraints() == -1;
+        ps.setInt(idx++, isEeCert ? 1 : 0);
+        ps.setInt(idx++, reqType.getCode());
+        ps.setString(idx++, tid);
+
+        ps.setString(idx++, b64FpCert);
+        ps.setString(idx++, reqSubjectText0);
+        ps.setString(idx++, b64Cert);
+      }
+    });
 
-      ps.executeUpdate();
+    certificate.setCertId(certId);
+  } // method addCert
 
-      certificate.setCertId(certId);
-    } catch (SQLException ex) {
-      throw datasource.translate(null, ex);
-    } finally {
-      datasource.releaseResources(ps, null);
+  private CertInsertBatcher getCertInsertBatcher(int caId) {
+    CertInsertBatcher batcher = certInsertBatchers.get(caId);
+    if (batcher == null) {
+      batcher = new CertInsertBatcher(datasource, SQL_ADD_CERT, MAX_CERT_INSERT_BATCH_SIZE);
+      CertInsertBatcher existing = certInsertBatchers.putIfAbsent(caId, batcher);
+      if (existing != null) {
+        batcher = existing;
+      }
     }
-  } // method addCert
+    return batcher;
+  }
 
   public void addToPublishQueue(NameId publisher, long certId, NameId ca)
       throws OperationException {
@@ -884,6 +909,76 @@ public class CertStore {
     }
   } // method getSerialNumbers
 
+  /**
+   * Gets the id of a certificate of the CA inserted by another node (with another shard id)
+   * since the given time.
+   * @param ca
+   *          The CA.
+   * @param since
+   *          Time in milliseconds since January 1, 1970, 00:00:00 GMT.
+   * @return the database id of such certificate, or 0 if there is none.
+   * @throws OperationException
+   *           If the database could not be queried.
+   */
+  public long getCertIdOfOtherShard(NameId ca, long since) throws OperationException {
+    Args.notNull(ca, "ca");
+
+    final String sql = sqlCertOfOtherShard;
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+
+    try {
+      ps.setInt(1, ca.getId());
+      ps.setLong(2, idGenerator.getMinId(since));
+      ps.setInt(3, idGenerator.getShardId());
+      rs = ps.executeQuery();
+      return rs.next() ? rs.getLong("ID") : 0;
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method getCertIdOfOtherShard
+
+  /**
+   * Retrieves the subject and public key fingerprints of the certificates issued by the CA.
+   * @param ca
+   *          The CA.
+   * @param startId
+   *          Minimal database id of the certificates.
+   * @param numEntries
+   *          Maximal number of certificates.
+   * @return list of the arrays {ID, FP_S, FP_K}, sorted by ID.
+   * @throws OperationException
+   *           If the fingerprints could not be retrieved.
+   */
+  public List<long[]> getCertFps(NameId ca, long startId, int numEntries)
+      throws OperationException {
+    Args.notNull(ca, "ca");
+    Args.positive(numEntries, "numEntries");
+
+    final String sql = datasource.buildSelectFirstSql(numEntries, "ID ASC",
+        "ID,FP_S,FP_K FROM CERT WHERE ID>? AND CA_ID=?");
+
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+
+    try {
+      ps.setLong(1, startId - 1);
+      ps.setInt(2, ca.getId());
+      rs = ps.executeQuery();
+      List<long[]> ret = new ArrayList<>();
+      while (rs.next() && ret.size() < numEntries) {
+        ret.add(new long[]{rs.getLong("ID"), rs.getLong("FP_S"), rs.getLong("FP_K")});
+      }
+      return ret;
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method getCertFps
+
   public List<BigInteger> getExpiredSerialNumbers(NameId ca, long expiredAt, int numEntries)
       throws OperationException {
     Args.notNull(ca, "ca");
@@ -943,7 +1038,7 @@ public class CertStore {
 
     String sql = (crlNumber == null) ? sqlCrl : sqlCrlWithNo;
     ResultSet rs = null;
-    PreparedStatement ps = borrowPreparedStatement(sql);
+    PreparedStatement ps = borrowReadPreparedStatement(sql);
 
     String b64Crl = null;
     try {
@@ -1404,7 +1499,7 @@ public class CertStore {
 
     final String sql = datasource.buildSelectFirstSql(numEntries, sortByStr, sb.toString());
     ResultSet rs = null;
-    PreparedStatement ps = borrowPreparedStatement(sql);
+    PreparedStatement ps = borrowReadPreparedStatement(sql);
 
     try {
       ps.setInt(1, ca.getId());
@@ -1739,6 +1834,20 @@ public class CertStore {
     }
   } // method borrowPreparedStatement
 
+  /**
+   * Borrows the prepared statement from a read replica, if configured. Use it only for
+   * queries which tolerate slightly outdated data.
+   */
+  private PreparedStatement borrowReadPreparedStatement(String sqlQuery)
+      throws OperationException {
+    try {
+      return datasource.prepareReadStatement(sqlQuery);
+    } catch (DataAccessException ex) {
+      LOG.debug("DataAccessException", ex);
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    }
+  } // method borrowReadPreparedStatement
+
   public boolean isHealthy() {
     final String sql = "SELECT ID FROM CA";
 
@@ -88,20 +88,18 @@ public class DataSourceFactory {
       }
     }
 
-    String password = conf.getProperty("password");
-    if (password != null) {
-      if (passwordResolver != null) {
-        password = new String(passwordResolver.resolvePassword(password));
+    for (String key : conf.stringPropertyNames()) {
+      // password of the primary datasource and of the read replicas (replica.<id>.password)
+      String baseKey = key.startsWith("replica.") ? key.substring(key.indexOf('.', 8) + 1) : key;
+      if (!("password".equals(baseKey) || "dataSource.password".equals(baseKey))) {
+        continue;
       }
-      conf.setProperty("password", password);
-    }
 
-    password = conf.getProperty("dataSource.password");
-    if (password != null) {
+      String password = conf.getProperty(key);
       if (passwordResolver != null) {
         password = new String(passwordResolver.resolvePassword(password));
       }
-      conf.setProperty("dataSource.password", password);
+      conf.setProperty(key, password);
     }
 
     /*
@@ -366,6 +366,12 @@ public abstract class DataSourceWrapper implements Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(DataSourceWrapper.class);
 
+  /**
+   * Name of the optional property which specifies the maximal number of cached
+   * {@link PreparedStatement}s per connection. The cache is disabled if not present or 0.
+   */
+  public static final String PROP_STATEMENT_CACHE_SIZE = "statementCacheSize";
+
   /**
    * References the real data source implementation this class acts as pure
    * proxy for. Derived classes must set this field at construction time.
@@ -386,6 +392,10 @@ public abstract class DataSourceWrapper implements Closeable {
 
   private final LruCache<String, String> cacheSeqNameSqls;
 
+  private PreparedStatementCache statementCache;
+
+  private ReadReplicas readReplicas;
+
   private DataSourceWrapper(String name, HikariDataSource service, DatabaseType dbType) {
     this.service = Args.notNull(service, "service");
     this.databaseType = Args.notNull(dbType, "dbType");
@@ -430,6 +440,10 @@ public abstract class DataSourceWrapper implements Closeable {
       return;
     }
 
+    if (readReplicas != null) {
+      readReplicas.connectionReturned(conn);
+    }
+
     try {
       conn.close();
     } catch (Exception ex) {
@@ -443,6 +457,14 @@ public abstract class DataSourceWrapper implements Closeable {
 
   @Override
   public void close() {
+    if (statementCache != null) {
+      statementCache.clear();
+    }
+
+    if (readReplicas != null) {
+      readReplicas.close();
+    }
+
     try {
       service.close();
     } catch (RuntimeException ex) {
@@ -484,6 +506,8 @@ public abstract class DataSourceWrapper implements Closeable {
       throws DataAccessException {
     Args.notNull(conn, "conn");
     try {
+      // the caller owns the connection and may use it within a transaction, hence the
+      // statement is not taken from the statement cache.
       return conn.prepareStatement(sqlQuery);
     } catch (SQLException ex) {
       throw translate(sqlQuery, ex);
@@ -495,7 +519,7 @@ public abstract class DataSourceWrapper implements Closeable {
 
     boolean succ = false;
     try {
-      PreparedStatement ps = conn.prepareStatement(sqlQuery);
+      PreparedStatement ps = prepareStatement0(conn, sqlQuery);
       succ = true;
       return ps;
     } catch (SQLException ex) {
@@ -507,6 +531,82 @@ public abstract class DataSourceWrapper implements Closeable {
     }
   }
 
+  /**
+   * Gets a connection for read-only queries. If read replicas are configured, the connection
+   * is borrowed from one of the healthy replicas, otherwise from the primary datasource.
+   * Since replicas may lag behind the primary, use it only for queries which tolerate
+   * slightly outdated data.
+   * @return the connection.
+   * @throws DataAccessException
+   *           if no connection can be borrowed.
+   */
+  public final Connection getReadConnection() throws DataAccessException {
+    if (readReplicas != null) {
+      Connection conn = readReplicas.getConnection();
+      if (conn != null) {
+        return conn;
+      }
+      LOG.debug("datasource {}: no read replica available, use the primary", name);
+    }
+
+    return getConnection();
+  }
+
+  /**
+   * Like {@link #prepareStatement(String)}, but the connection is borrowed via
+   * {@link #getReadConnection()}.
+   * @param sqlQuery
+   *          The read-only SQL query.
+   * @return the prepared statement.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  public PreparedStatement prepareReadStatement(String sqlQuery) throws DataAccessException {
+    Connection conn = getReadConnection();
+
+    boolean succ = false;
+    try {
+      PreparedStatement ps = prepareStatement0(conn, sqlQuery);
+      succ = true;
+      return ps;
+    } catch (SQLException ex) {
+      throw translate(sqlQuery, ex);
+    } finally {
+      if (!succ) {
+        returnConnection(conn);
+      }
+    }
+  }
+
+  private PreparedStatement prepareStatement0(Connection conn, String sqlQuery)
+      throws SQLException {
+    if (statementCache != null) {
+      PreparedStatement ps = statementCache.borrowStatement(conn, sqlQuery);
+      if (ps != null) {
+        return ps;
+      }
+    }
+
+    return conn.prepareStatement(sqlQuery);
+  }
+
+  /**
+   * Returns the number of statements served from the prepared statement cache.
+   * @return number of cache hits, or 0 if the cache is not enabled.
+   */
+  public long getStatementCacheHits() {
+    return statementCache == null ? 0 : statementCache.getHits();
+  }
+
+  /**
+   * Returns the number of statements which could not be served from the prepared
+   * statement cache.
+   * @return number of cache misses, or 0 if the cache is not enabled.
+   */
+  public long getStatementCacheMisses() {
+    return statementCache == null ? 0 : statementCache.getMisses();
+  }
+
   public void releaseResources(Statement ps, ResultSet rs) {
     releaseResources(ps, rs, true);
   }
@@ -522,7 +622,20 @@ public abstract class DataSourceWrapper implements Closeable {
 
     if (ps == null) {
       return;
-    } else if (returnConnection) {
+    }
+
+    if (statementCache != null) {
+      // cached statements are not closed, only their connection is returned.
+      Connection conn = statementCache.returnStatement(ps);
+      if (conn != null) {
+        if (returnConnection) {
+          returnConnection(conn);
+        }
+        return;
+      }
+    }
+
+    if (returnConnection) {
       Connection conn = null;
       try {
         conn = ps.getConnection();
@@ -982,6 +1095,11 @@ public abstract class DataSourceWrapper implements Closeable {
   public DataAccessException translate(String sql, SQLException ex) {
     Args.notNull(ex, "ex");
 
+    if (readReplicas != null) {
+      // the statement may have been executed on a replica connection
+      readReplicas.sqlFailed(ex);
+    }
+
     if (sql == null) {
       sql = "";
     }
@@ -1162,24 +1280,59 @@ public abstract class DataSourceWrapper implements Closeable {
         || databaseType == DatabaseType.HSQL || databaseType == DatabaseType.MYSQL
         || databaseType == DatabaseType.MARIADB || databaseType == DatabaseType.ORACLE
         || databaseType == DatabaseType.POSTGRES) {
-      HikariConfig conf = new HikariConfig(props);
-      HikariDataSource service = new HikariDataSource(conf);
+      // not a property of HikariCP, must be removed before creating HikariConfig.
+      String str = (String) props.remove(PROP_STATEMENT_CACHE_SIZE);
+      int statementCacheSize = StringUtil.isBlank(str) ? 0 : Integer.parseInt(str.trim());
+
+      ReadReplicas readReplicas = ReadReplicas.removeAndCreate(name, props);
+
+      HikariDataSource service;
+      try {
+        HikariConfig conf = new HikariConfig(props);
+        service = new HikariDataSource(conf);
+      } catch (RuntimeException ex) {
+        if (readReplicas != null) {
+          readReplicas.close();
+        }
+        throw ex;
+      }
+
+      DataSourceWrapper ds;
       switch (databaseType) {
         case DB2:
-          return new DB2(name, service);
+          ds = new DB2(name, service);
+          break;
         case H2:
-          return new H2(name, service);
+          ds = new H2(name, service);
+          break;
         case HSQL:
-          return new HSQL(name, service);
+          ds = new HSQL(name, service);
+          break;
         case MYSQL:
-          return new MySQL(name, service);
+          ds = new MySQL(name, service);
+          break;
         case MARIADB:
-          return new MariaDB(name, service);
+          ds = new MariaDB(name, service);
+          break;
         case ORACLE:
-          return new Oracle(name, service);
+          ds = new Oracle(name, service);
+          break;
         default: // POSTGRESQL:
-          return new PostgreSQL(name, service);
+          ds = new PostgreSQL(name, service);
+          break;
+      }
+
+      ds.readReplicas = readReplicas;
+      if (statementCacheSize > 0) {
+        int maxConnections = service.getMaximumPoolSize();
+        if (readReplicas != null) {
+          maxConnections += readReplicas.getMaximumPoolSize();
+        }
+        ds.statementCache = new PreparedStatementCache(statementCacheSize, maxConnections);
+        LOG.info("datasource {}: enabled prepared statement cache with {} statements "
+            + "per connection", name, statementCacheSize);
       }
+      return ds;
     } else {
       throw new IllegalArgumentException("unknown datasource type " + databaseType);
     }
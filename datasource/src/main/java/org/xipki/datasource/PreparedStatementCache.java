@@ -0,0 +1,279 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.Args;
+import org.xipki.util.LruCache;
+
+/**
+ * LRU cache of {@link PreparedStatement}s per physical database connection.
+ *
+ * <p>The statements are prepared on the connection unwrapped from the pool proxy, so that
+ * they are not closed by the pool when the connection is returned, and will be reused when
+ * the same physical connection is borrowed again. A statement is handed out to at most one
+ * caller at the same time.
+ *
+ * <p>Cached statements must never be used within a transaction: changes of the auto-commit
+ * mode on the physical connection are not seen by the pool, which would then not roll back
+ * or reset the connection. Therefore the cache is only used for statements whose connection
+ * is borrowed and returned by the {@link DataSourceWrapper} itself, and only if the
+ * connection is in auto-commit mode. If the auto-commit mode has been switched off when the
+ * statement is returned, the statement is detached from the cache and closed.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class PreparedStatementCache {
+
+  private static class CachedStatement {
+
+    private final PreparedStatement statement;
+
+    private final ConnectionCache cache;
+
+    private final String sql;
+
+    private Connection borrowedConnection;
+
+    private boolean inUse;
+
+    private boolean removed;
+
+    CachedStatement(PreparedStatement statement, ConnectionCache cache, String sql) {
+      this.statement = statement;
+      this.cache = cache;
+      this.sql = sql;
+    }
+
+  } // class CachedStatement
+
+  private static class ConnectionCache extends LruCache<String, CachedStatement> {
+
+    ConnectionCache(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, String key, CachedStatement oldValue,
+        CachedStatement newValue) {
+      oldValue.removed = true;
+      if (!oldValue.inUse) {
+        closeStatement(oldValue.statement);
+      }
+    }
+
+  } // class ConnectionCache
+
+  private static final Logger LOG = LoggerFactory.getLogger(PreparedStatementCache.class);
+
+  private final int maxSize;
+
+  private final int maxConnections;
+
+  private final ConcurrentHashMap<Connection, ConnectionCache> connectionCaches =
+      new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<Statement, CachedStatement> borrowedStatements =
+      new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Constructor.
+   * @param maxSize
+   *          Maximal number of cached statements per connection.
+   * @param maxConnections
+   *          Maximal number of connections in the pool.
+   */
+  PreparedStatementCache(int maxSize, int maxConnections) {
+    this.maxSize = Args.positive(maxSize, "maxSize");
+    this.maxConnections = Args.positive(maxConnections, "maxConnections");
+  }
+
+  /**
+   * Returns the cached statement for the given SQL, or prepares and caches a new one.
+   * @param conn
+   *          Connection borrowed from the pool. Must not be {@code null}.
+   * @param sql
+   *          The SQL statement. Must not be {@code null}.
+   * @return the prepared statement, or {@code null} if the statement cannot be cached.
+   * @throws SQLException
+   *           if database error occurs.
+   */
+  PreparedStatement borrowStatement(Connection conn, String sql) throws SQLException {
+    if (!conn.getAutoCommit()) {
+      return null;
+    }
+
+    Connection physicalConn = conn.unwrap(Connection.class);
+    ConnectionCache cache = connectionCaches.get(physicalConn);
+    if (cache == null) {
+      if (connectionCaches.size() >= maxConnections) {
+        removeClosedConnections();
+      }
+      cache = new ConnectionCache(maxSize);
+      connectionCaches.put(physicalConn, cache);
+    }
+
+    CachedStatement entry = cache.get(sql);
+    if (entry != null) {
+      if (entry.inUse) {
+        // the same SQL is used twice on this connection at the same time.
+        misses.incrementAndGet();
+        return null;
+      }
+
+      if (entry.statement.isClosed()) {
+        cache.remove(sql);
+        entry = null;
+      }
+    }
+
+    if (entry == null) {
+      misses.incrementAndGet();
+      entry = new CachedStatement(physicalConn.prepareStatement(sql), cache, sql);
+      cache.put(sql, entry);
+    } else {
+      hits.incrementAndGet();
+    }
+
+    entry.inUse = true;
+    entry.borrowedConnection = conn;
+    borrowedStatements.put(entry.statement, entry);
+    return entry.statement;
+  } // method borrowStatement
+
+  /**
+   * Gives back the statement to the cache.
+   * @param stmt
+   *          Statement returned by {@link #borrowStatement(Connection, String)}.
+   * @return the connection the statement was borrowed with, or {@code null} if the
+   *         statement is not cached.
+   */
+  Connection returnStatement(Statement stmt) {
+    CachedStatement entry = borrowedStatements.remove(stmt);
+    if (entry == null) {
+      return null;
+    }
+
+    Connection conn = entry.borrowedConnection;
+    entry.borrowedConnection = null;
+    entry.inUse = false;
+
+    if (entry.removed) {
+      closeStatement(entry.statement);
+      return conn;
+    }
+
+    try {
+      if (!conn.getAutoCommit()) {
+        LOG.warn("cached statement used within a transaction, detach it: {}", entry.sql);
+        detach(entry);
+        return conn;
+      }
+
+      PreparedStatement ps = entry.statement;
+      ps.clearParameters();
+      ps.clearBatch();
+      ps.clearWarnings();
+      ps.setFetchSize(0);
+      ps.setMaxRows(0);
+      ps.setQueryTimeout(0);
+    } catch (SQLException ex) {
+      LOG.warn("could not reset cached statement: {}", ex.getMessage());
+      detach(entry);
+    }
+
+    return conn;
+  } // method returnStatement
+
+  private static void detach(CachedStatement entry) {
+    entry.removed = true;
+    synchronized (entry.cache) {
+      if (entry.cache.get(entry.sql) == entry) {
+        entry.cache.remove(entry.sql);
+      }
+    }
+    closeStatement(entry.statement);
+  }
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long getMisses() {
+    return misses.get();
+  }
+
+  void clear() {
+    for (ConnectionCache cache : connectionCaches.values()) {
+      cache.evictAll();
+    }
+    connectionCaches.clear();
+  }
+
+  /**
+   * Removes the caches of connections which have been closed by the pool. The statements
+   * of such connections are already closed by the database driver.
+   */
+  private void removeClosedConnections() {
+    Iterator<Map.Entry<Connection, ConnectionCache>> it =
+        connectionCaches.entrySet().iterator();
+    while (it.hasNext()) {
+      boolean closed;
+      try {
+        closed = it.next().getKey().isClosed();
+      } catch (SQLException ex) {
+        closed = true;
+      }
+
+      if (closed) {
+        it.remove();
+      }
+    }
+  }
+
+  private static void closeStatement(Statement stmt) {
+    try {
+      stmt.close();
+    } catch (Throwable th) {
+      LOG.warn("could not close cached statement", th);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "hits=" + hits.get() + ", misses=" + misses.get()
+        + ", connections=" + connectionCaches.size();
+  }
+
+}
@@ -0,0 +1,267 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+import org.xipki.util.StringUtil;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Read replicas of a datasource. Connections are distributed round-robin over the replicas.
+ * A replica which could not provide a connection, or whose connection failed while executing
+ * a SQL statement, is ejected for a configurable period. The connection timeout of the
+ * replicas is short, so that a replica which is down does not block the readers.
+ *
+ * <p>The replicas are configured in the properties of the primary datasource with the prefix
+ * {@code replica.<id>.}, e.g. {@code replica.1.jdbcUrl}. Properties not specified for a replica
+ * are inherited from the primary datasource.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class ReadReplicas implements Closeable {
+
+  private static class Replica {
+
+    private final String id;
+
+    private final HikariDataSource service;
+
+    private volatile long ejectedUntil;
+
+    Replica(String id, HikariDataSource service) {
+      this.id = id;
+      this.service = service;
+    }
+
+  } // class Replica
+
+  private static class BorrowedConnection {
+
+    private final Connection connection;
+
+    private final Replica replica;
+
+    BorrowedConnection(Connection connection, Replica replica) {
+      this.connection = connection;
+      this.replica = replica;
+    }
+
+  } // class BorrowedConnection
+
+  static final String PREFIX = "replica.";
+
+  /**
+   * Name of the property which specifies how long, in seconds, a failed replica will not be
+   * used. Default to 30 seconds.
+   */
+  static final String PROP_EJECT_SECONDS = "replicaEjectSeconds";
+
+  /**
+   * Name of the property which specifies the connection timeout, in milliseconds, of the
+   * replicas, unless specified for a replica explicitly. Default to 1000 milliseconds.
+   */
+  static final String PROP_CONNECTION_TIMEOUT = "replicaConnectionTimeout";
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReadReplicas.class);
+
+  private final String name;
+
+  private final List<Replica> replicas;
+
+  private final long ejectMillis;
+
+  private final AtomicInteger nextIndex = new AtomicInteger();
+
+  // the replica connection borrowed by the current thread
+  private final ThreadLocal<BorrowedConnection> borrowedConnection = new ThreadLocal<>();
+
+  private ReadReplicas(String name, List<Replica> replicas, long ejectMillis) {
+    this.name = name;
+    this.replicas = replicas;
+    this.ejectMillis = ejectMillis;
+  }
+
+  /**
+   * Creates the read replicas configured in the given properties, and removes the replica
+   * properties.
+   * @param name
+   *          Name of the datasource.
+   * @param props
+   *          Properties of the primary datasource. Must not be {@code null}.
+   * @return the read replicas, or {@code null} if no replica is configured.
+   */
+  static ReadReplicas removeAndCreate(String name, Properties props) {
+    Args.notNull(props, "props");
+    String str = (String) props.remove(PROP_EJECT_SECONDS);
+    long ejectSeconds = StringUtil.isBlank(str) ? 30 : Long.parseLong(str.trim());
+    str = (String) props.remove(PROP_CONNECTION_TIMEOUT);
+    String connectionTimeout = StringUtil.isBlank(str) ? "1000" : str.trim();
+
+    TreeMap<String, Properties> replicaPropsMap = new TreeMap<>();
+    for (String key : new ArrayList<>(props.stringPropertyNames())) {
+      if (!key.startsWith(PREFIX)) {
+        continue;
+      }
+
+      String value = (String) props.remove(key);
+      String subKey = key.substring(PREFIX.length());
+      int idx = subKey.indexOf('.');
+      if (idx < 1 || idx == subKey.length() - 1) {
+        throw new IllegalArgumentException("invalid replica property " + key);
+      }
+
+      String id = subKey.substring(0, idx);
+      Properties replicaProps = replicaPropsMap.get(id);
+      if (replicaProps == null) {
+        replicaProps = new Properties();
+        replicaPropsMap.put(id, replicaProps);
+      }
+      replicaProps.setProperty(subKey.substring(idx + 1), value);
+    }
+
+    if (replicaPropsMap.isEmpty()) {
+      return null;
+    }
+
+    List<Replica> replicas = new ArrayList<>(replicaPropsMap.size());
+    try {
+      for (String id : replicaPropsMap.keySet()) {
+        Properties replicaProps = new Properties();
+        replicaProps.putAll(props);
+        replicaProps.setProperty("connectionTimeout", connectionTimeout);
+        replicaProps.putAll(replicaPropsMap.get(id));
+
+        String poolName = props.getProperty("poolName");
+        if (poolName != null && poolName.equals(replicaProps.getProperty("poolName"))) {
+          replicaProps.setProperty("poolName", poolName + "-replica-" + id);
+        }
+
+        HikariDataSource service = new HikariDataSource(new HikariConfig(replicaProps));
+        replicas.add(new Replica(id, service));
+        LOG.info("datasource {}: added read replica {}", name, id);
+      }
+    } catch (RuntimeException ex) {
+      for (Replica replica : replicas) {
+        replica.service.close();
+      }
+      throw ex;
+    }
+
+    return new ReadReplicas(name, Collections.unmodifiableList(replicas),
+        TimeUnit.SECONDS.toMillis(ejectSeconds));
+  } // method removeAndCreate
+
+  /**
+   * Gets a connection from the next healthy replica.
+   * @return the connection, or {@code null} if no replica can provide a connection.
+   */
+  Connection getConnection() {
+    final int size = replicas.size();
+    final int startIndex = Math.abs(nextIndex.getAndIncrement() % size);
+
+    for (int i = 0; i < size; i++) {
+      Replica replica = replicas.get((startIndex + i) % size);
+      if (replica.ejectedUntil != 0) {
+        if (System.currentTimeMillis() < replica.ejectedUntil) {
+          continue;
+        }
+        replica.ejectedUntil = 0;
+        LOG.info("datasource {}: retry read replica {}", name, replica.id);
+      }
+
+      try {
+        Connection conn = replica.service.getConnection();
+        borrowedConnection.set(new BorrowedConnection(conn, replica));
+        return conn;
+      } catch (Exception ex) {
+        eject(replica, ex);
+      }
+    }
+
+    return null;
+  } // method getConnection
+
+  /**
+   * Tells that the connection has been returned.
+   * @param conn
+   *          The returned connection.
+   */
+  void connectionReturned(Connection conn) {
+    BorrowedConnection borrowed = borrowedConnection.get();
+    if (borrowed != null && borrowed.connection == conn) {
+      borrowedConnection.remove();
+    }
+  }
+
+  /**
+   * Tells that executing a SQL statement failed. If the current thread has borrowed a replica
+   * connection, the replica is ejected.
+   * @param ex
+   *          The failure.
+   */
+  void sqlFailed(SQLException ex) {
+    BorrowedConnection borrowed = borrowedConnection.get();
+    if (borrowed != null) {
+      eject(borrowed.replica, ex);
+    }
+  }
+
+  private void eject(Replica replica, Exception ex) {
+    replica.ejectedUntil = System.currentTimeMillis() + ejectMillis;
+    LogUtil.error(LOG, ex, "datasource " + name + ": ejected read replica " + replica.id);
+  }
+
+  int getMaximumPoolSize() {
+    int sum = 0;
+    for (Replica replica : replicas) {
+      sum += replica.service.getMaximumPoolSize();
+    }
+    return sum;
+  }
+
+  @Override
+  public void close() {
+    for (Replica replica : replicas) {
+      try {
+        replica.service.close();
+      } catch (RuntimeException ex) {
+        LOG.warn("could not close read replica {} of datasource {}: {}",
+            replica.id, name, ex.getMessage());
+      }
+    }
+  }
+
+}
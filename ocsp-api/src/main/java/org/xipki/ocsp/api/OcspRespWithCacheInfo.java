@@ -53,6 +53,8 @@ public class OcspRespWithCacheInfo {
 
   private ResponseCacheInfo cacheInfo;
 
+  private volatile String etag;
+
   public OcspRespWithCacheInfo(byte[] response, ResponseCacheInfo cacheInfo) {
     this.response = response;
     this.cacheInfo = cacheInfo;
@@ -66,4 +68,17 @@ public class OcspRespWithCacheInfo {
     return cacheInfo;
   }
 
+  /**
+   * Returns the HTTP ETag of the response, if already computed. Since the cached responses
+   * are shared, the ETag needs to be computed only once per cached response.
+   * @return the quoted ETag, or {@code null} if not computed yet.
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  public void setEtag(String etag) {
+    this.etag = etag;
+  }
+
 }
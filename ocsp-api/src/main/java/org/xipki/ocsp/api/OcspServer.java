@@ -34,5 +34,24 @@ public interface OcspServer extends Closeable {
 
   OcspRespWithCacheInfo answer(Responder responder, byte[] request, boolean viaGet);
 
+  /**
+   * Looks up the cached response for the given request, without building a new one. Used to
+   * answer conditional HTTP GET requests without calling
+   * {@link #answer(Responder, byte[], boolean)}.
+   * @param responder
+   *          The responder.
+   * @param request
+   *          The DER-encoded OCSP request.
+   * @return the cached response, or {@code null} if the request is not cacheable or no
+   *         response is cached.
+   */
+  OcspRespWithCacheInfo getCachedResponse(Responder responder, byte[] request);
+
   HealthCheckResult healthCheck(Responder responder);
+
+  /**
+   * Returns the metrics of this server.
+   * @return the metrics, never {@code null}.
+   */
+  OcspServerMetrics getMetrics();
 }
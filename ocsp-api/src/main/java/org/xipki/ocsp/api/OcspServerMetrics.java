@@ -0,0 +1,37 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.api;
+
+/**
+ * Metrics of the OCSP server.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public interface OcspServerMetrics {
+
+  boolean isEnabled();
+
+  /**
+   * Returns the metrics in the text exposition format of Prometheus.
+   * @return the metrics.
+   */
+  String toText();
+
+}
@@ -20,7 +20,9 @@ package org.xipki.ocsp.api;
 import java.io.Closeable;
 import java.math.BigInteger;
 import java.security.cert.X509Certificate;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.xipki.datasource.DataSourceWrapper;
@@ -93,6 +95,39 @@ public abstract class OcspStore implements Closeable {
       boolean inheritCaRevocation) throws OcspStoreException {
     CertStatusInfo info = getCertStatus0(time, reqIssuer, serialNumber,
         includeCertHash, includeRit, inheritCaRevocation);
+    applyMinNextUpdatePeriod(time, info);
+    return info;
+  }
+
+  /**
+   * Gets the status of several certificates issued by the same issuer.
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @return the certificate status of the serial numbers. Serial numbers this store could
+   *         not answer are not contained.
+   */
+  public final Map<BigInteger, CertStatusInfo> getCertStatuses(Date time,
+      RequestIssuer reqIssuer, Collection<BigInteger> serialNumbers, boolean includeCertHash,
+      boolean includeRit, boolean inheritCaRevocation) throws OcspStoreException {
+    Map<BigInteger, CertStatusInfo> infos = getCertStatuses0(time, reqIssuer, serialNumbers,
+        includeCertHash, includeRit, inheritCaRevocation);
+    for (CertStatusInfo info : infos.values()) {
+      applyMinNextUpdatePeriod(time, info);
+    }
+    return infos;
+  }
+
+  private void applyMinNextUpdatePeriod(Date time, CertStatusInfo info) {
     if (info != null && minNextUpdatePeriod != null) {
       Date nextUpdate = info.getNextUpdate();
       Date minNextUpdate = minNextUpdatePeriod.add(time);
@@ -105,8 +140,6 @@ public abstract class OcspStore implements Closeable {
         info.setNextUpdate(minNextUpdate);
       }
     }
-
-    return info;
   }
 
   /**
@@ -129,6 +162,40 @@ public abstract class OcspStore implements Closeable {
       BigInteger serialNumber, boolean includeCertHash, boolean includeRit,
       boolean inheritCaRevocation) throws OcspStoreException;
 
+  /**
+   * Gets the status of several certificates issued by the same issuer. The default
+   * implementation calls {@link #getCertStatus0(Date, RequestIssuer, BigInteger, boolean,
+   * boolean, boolean)} for each serial number, stores able to resolve several
+   * certificates at once should overwrite it.
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @return the certificate status of the serial numbers. Serial numbers this store could
+   *         not answer are not contained.
+   */
+  protected Map<BigInteger, CertStatusInfo> getCertStatuses0(Date time, RequestIssuer reqIssuer,
+      Collection<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation) throws OcspStoreException {
+    Map<BigInteger, CertStatusInfo> infos = new HashMap<>(serialNumbers.size() * 2);
+    for (BigInteger serialNumber : serialNumbers) {
+      CertStatusInfo info = getCertStatus0(time, reqIssuer, serialNumber,
+          includeCertHash, includeRit, inheritCaRevocation);
+      if (info != null) {
+        infos.put(serialNumber, info);
+      }
+    }
+    return infos;
+  }
+
   /**
    * TODO.
    * @param sourceConf
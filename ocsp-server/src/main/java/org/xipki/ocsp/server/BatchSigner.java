@@ -0,0 +1,242 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.io.Closeable;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.NoIdleSignerException;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Collects the data to be signed by concurrent requests, and signs them in batches with
+ * {@link ConcurrentContentSigner#sign(byte[][])}, so that the signer is borrowed only
+ * once per batch.
+ *
+ * <p>The batches are signed by dedicated threads, a request waits only for the batch
+ * containing its own data.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class BatchSigner implements Closeable {
+
+  private static final class SignRequest {
+
+    private final byte[] data;
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    private byte[] signature;
+
+    private Exception exception;
+
+    SignRequest(byte[] data) {
+      this.data = data;
+    }
+
+    void complete(byte[] signature, Exception exception) {
+      this.signature = signature;
+      this.exception = exception;
+      latch.countDown();
+    }
+
+  } // class SignRequest
+
+  private class SignService implements Runnable {
+
+    @Override
+    public void run() {
+      while (!closed) {
+        List<SignRequest> batch;
+        try {
+          batch = nextBatch();
+        } catch (InterruptedException ex) {
+          // close() interrupts the threads
+          continue;
+        }
+
+        try {
+          signBatch(batch);
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "error while signing batch");
+        }
+      }
+    }
+
+  } // class SignService
+
+  private static final Logger LOG = LoggerFactory.getLogger(BatchSigner.class);
+
+  private final ConcurrentContentSigner signer;
+
+  private final int maxBatchSize;
+
+  private final long maxWaitNanos;
+
+  private final BlockingQueue<SignRequest> queue = new LinkedBlockingQueue<>();
+
+  private final Thread[] threads;
+
+  private volatile boolean closed;
+
+  BatchSigner(ConcurrentContentSigner signer, OcspServerConf.BatchSigning conf) {
+    this.signer = Args.notNull(signer, "signer");
+    Args.notNull(conf, "conf");
+    this.maxBatchSize = conf.getMaxBatchSize();
+    this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(conf.getMaxWaitMillis());
+
+    this.threads = new Thread[conf.getMaxConcurrentBatches()];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(new SignService(),
+          "ocsp-batch-signer-" + signer.getName() + "-" + i);
+      threads[i].setDaemon(true);
+      threads[i].start();
+    }
+  }
+
+  ConcurrentContentSigner getSigner() {
+    return signer;
+  }
+
+  byte[] sign(byte[] data)
+      throws NoIdleSignerException, SignatureException, InterruptedException {
+    SignRequest request = new SignRequest(Args.notNull(data, "data"));
+    if (closed) {
+      throw new SignatureException("batch signer is closed");
+    }
+
+    queue.add(request);
+    if (closed) {
+      // close() may have drained the queue before the request was added
+      failPendingRequests();
+    }
+
+    // every request taken from the queue is completed by the sign threads
+    request.latch.await();
+
+    Exception ex = request.exception;
+    if (ex == null) {
+      return request.signature;
+    } else if (ex instanceof NoIdleSignerException) {
+      throw (NoIdleSignerException) ex;
+    } else if (ex instanceof SignatureException) {
+      throw (SignatureException) ex;
+    } else {
+      throw (RuntimeException) ex;
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    for (Thread thread : threads) {
+      thread.interrupt();
+    }
+    failPendingRequests();
+  }
+
+  private void failPendingRequests() {
+    List<SignRequest> pending = new ArrayList<>();
+    queue.drainTo(pending);
+    SignatureException ex = new SignatureException("batch signer is closed");
+    for (SignRequest request : pending) {
+      request.complete(null, ex);
+    }
+  }
+
+  private List<SignRequest> nextBatch() throws InterruptedException {
+    List<SignRequest> batch = new ArrayList<>(maxBatchSize);
+    batch.add(queue.take());
+    queue.drainTo(batch, maxBatchSize - 1);
+
+    if (maxWaitNanos > 0) {
+      // wait for more requests
+      long deadline = System.nanoTime() + maxWaitNanos;
+      while (batch.size() < maxBatchSize) {
+        long timeout = deadline - System.nanoTime();
+        if (timeout <= 0) {
+          break;
+        }
+
+        SignRequest request;
+        try {
+          request = queue.poll(timeout, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+          // sign the already collected requests, the flag closed will be checked later
+          break;
+        }
+
+        if (request == null) {
+          break;
+        }
+        batch.add(request);
+        queue.drainTo(batch, maxBatchSize - batch.size());
+      }
+    }
+
+    return batch;
+  }
+
+  private void signBatch(List<SignRequest> batch) {
+    final int size = batch.size();
+    byte[][] data = new byte[size][];
+    for (int i = 0; i < size; i++) {
+      data[i] = batch.get(i).data;
+    }
+
+    byte[][] signatures;
+    Exception exception = null;
+    try {
+      signatures = signer.sign(data);
+      if (signatures == null || signatures.length != size) {
+        exception = new SignatureException("signer returned invalid number of signatures");
+      }
+    } catch (Exception ex) {
+      signatures = null;
+      exception = ex;
+    } catch (Error er) {
+      // the waiting requests must be completed in any case
+      signatures = null;
+      exception = new SignatureException(er.getMessage(), er);
+    }
+
+    if (exception != null) {
+      for (SignRequest request : batch) {
+        request.complete(null, exception);
+      }
+      return;
+    }
+
+    for (int i = 0; i < size; i++) {
+      batch.get(i).complete(signatures[i], null);
+    }
+  }
+
+}
@@ -19,8 +19,9 @@ package org.xipki.ocsp.server;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.security.SignatureException;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.bouncycastle.cert.ocsp.OCSPException;
@@ -30,7 +31,6 @@ import org.xipki.ocsp.server.type.Extensions;
 import org.xipki.ocsp.server.type.ResponderID;
 import org.xipki.ocsp.server.type.ResponseData;
 import org.xipki.ocsp.server.type.SingleResponse;
-import org.xipki.ocsp.server.type.TaggedCertSequence;
 import org.xipki.security.ConcurrentBagEntrySigner;
 import org.xipki.security.ConcurrentContentSigner;
 import org.xipki.security.NoIdleSignerException;
@@ -49,7 +49,7 @@ public class OCSPRespBuilder {
   private static final byte[] successfulStatus = Hex.decode("0a0100");
   private static final byte[] responseTypeBasic = Hex.decode("06092b0601050507300101");
 
-  private List<SingleResponse> list = new LinkedList<>();
+  private List<SingleResponse> list = new ArrayList<>(1);
   private Extensions responseExtensions = null;
   private ResponderID responderId;
 
@@ -86,9 +86,12 @@ public class OCSPRespBuilder {
     this.responseExtensions = responseExtensions;
   }
 
+  /**
+   * Builds the response with the pre-encoded parts of the template. The ResponderID of
+   * this builder must be that of the template.
+   */
   // CHECKSTYLE:SKIP
-  public byte[] buildOCSPResponse(ConcurrentContentSigner signer,
-      TaggedCertSequence taggedCertSequence, Date producedAt)
+  byte[] buildOCSPResponse(Template template, Date producedAt)
       throws OCSPException, NoIdleSignerException {
     ResponseData responseData = new ResponseData(0,
         responderId, producedAt, list, responseExtensions);
@@ -96,37 +99,41 @@ public class OCSPRespBuilder {
     byte[] tbs = new byte[responseData.getEncodedLength()];
     responseData.write(tbs, 0);
 
-    ConcurrentBagEntrySigner signer0 = signer.borrowSigner();
-
     byte[] signature;
-    byte[] sigAlgId;
-
-    try {
-      XiContentSigner csigner0 = signer0.value();
-      OutputStream sigOut = csigner0.getOutputStream();
+    BatchSigner batchSigner = template.getBatchSigner();
+    if (batchSigner == null) {
+      ConcurrentContentSigner signer = template.getSigner();
+      ConcurrentBagEntrySigner signer0 = signer.borrowSigner();
+      try {
+        XiContentSigner csigner0 = signer0.value();
+        OutputStream sigOut = csigner0.getOutputStream();
+        try {
+          sigOut.write(tbs);
+          sigOut.close();
+        } catch (IOException ex) {
+          throw new OCSPException("exception signing TBSRequest: " + ex.getMessage(), ex);
+        }
+
+        signature = csigner0.getSignature();
+      } finally {
+        signer.requiteSigner(signer0);
+      }
+    } else {
+      // sign together with the responses of concurrent requests
       try {
-        sigOut.write(tbs);
-        sigOut.close();
-      } catch (IOException ex) {
+        signature = batchSigner.sign(tbs);
+      } catch (SignatureException ex) {
         throw new OCSPException("exception signing TBSRequest: " + ex.getMessage(), ex);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new OCSPException("interrupted while signing TBSRequest", ex);
       }
-
-      signature = csigner0.getSignature();
-      sigAlgId = csigner0.getEncodedAlgorithmIdentifier();
-    } finally {
-      signer.requiteSigner(signer0);
     }
 
     // ----- Get the length -----
-    // BasicOCSPResponse.signature
-    int signatureBodyLen = signature.length + 1;
-    int signatureLen = getLen(signatureBodyLen);
-
     // BasicOCSPResponse
-    int basicResponseBodyLen = tbs.length + sigAlgId.length + signatureLen;
-    if (taggedCertSequence != null) {
-      basicResponseBodyLen += taggedCertSequence.getEncodedLength();
-    }
+    int basicResponseBodyLen = tbs.length
+        + template.getBasicResponseSuffixLength(signature.length);
     int basicResponseLen = getLen(basicResponseBodyLen);
 
     // OCSPResponse.[0].responseBytes
@@ -165,17 +172,8 @@ public class OCSPRespBuilder {
     // BasicOCSPResponse.tbsResponseData
     offset += arraycopy(tbs, out, offset);
 
-    // BasicOCSPResponse.signatureAlgorithm
-    offset += arraycopy(sigAlgId, out, offset);
-
-    // BasicOCSPResponse.signature
-    offset += ASN1Type.writeHeader((byte) 0x03, signatureBodyLen, out, offset);
-    out[offset++] = 0x00; // skipping bits
-    offset += arraycopy(signature, out, offset);
-
-    if (taggedCertSequence != null) {
-      offset += taggedCertSequence.write(out, offset);
-    }
+    // BasicOCSPResponse.signatureAlgorithm, signature and certs
+    template.writeBasicResponseSuffix(signature, out, offset);
     return out;
   }
 
@@ -0,0 +1,248 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ocsp.server;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.xipki.ocsp.api.OcspServerMetrics;
+
+/**
+ * Latency histograms and counters of the OCSP answer pipeline. Recording does not allocate
+ * any object. If disabled, the recording methods return immediately without reading the
+ * clock.
+ *
+ * <p>The metrics are exported in the text exposition format of Prometheus.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class OcspMetrics implements OcspServerMetrics {
+
+  /**
+   * Stages of answering a request. An unsigned request is timed as parseRequest, a signed one
+   * as checkSignature, which includes the parsing. checkRequest covers the checks of the
+   * request list, nonce and extensions.
+   */
+  public enum Stage {
+    parseRequest,
+    checkSignature,
+    checkRequest,
+    cacheLookup,
+    storeLookup,
+    sign,
+    cacheStore,
+    total
+  }
+
+  public enum Event {
+    request,
+    cacheHit,
+    cacheMiss,
+    tryLater,
+    unknownIssuer,
+    malformedRequest,
+    internalError
+  }
+
+  private static final class LatencyHistogram {
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_NANOS.length + 1];
+
+    private final LongAdder sumNanos = new LongAdder();
+
+    LatencyHistogram() {
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    void observe(long nanos) {
+      int idx = 0;
+      while (idx < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[idx]) {
+        idx++;
+      }
+      buckets[idx].increment();
+      sumNanos.add(nanos);
+    }
+
+    void writeTo(StringBuilder sb, String metricName, String labels) {
+      long count = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        count += buckets[i].sum();
+        String le = (i < BUCKET_BOUNDS_NANOS.length)
+            ? Double.toString(BUCKET_BOUNDS_NANOS[i] / 1e9) : "+Inf";
+        sb.append(metricName).append("_bucket{").append(labels).append(",le=\"").append(le)
+          .append("\"} ").append(count).append('\n');
+      }
+      sb.append(metricName).append("_sum{").append(labels).append("} ")
+        .append(sumNanos.sum() / 1e9).append('\n');
+      sb.append(metricName).append("_count{").append(labels).append("} ")
+        .append(count).append('\n');
+    }
+
+  } // class LatencyHistogram
+
+  private static final long[] BUCKET_BOUNDS_NANOS;
+
+  private static final String METRIC_STAGE = "xipki_ocsp_stage_seconds";
+
+  private static final String METRIC_STORE = "xipki_ocsp_store_seconds";
+
+  private static final String METRIC_EVENTS = "xipki_ocsp_events_total";
+
+  static {
+    long[] boundsMicros = {100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000,
+        250000, 500000, 1000000, 2500000};
+    BUCKET_BOUNDS_NANOS = new long[boundsMicros.length];
+    for (int i = 0; i < boundsMicros.length; i++) {
+      BUCKET_BOUNDS_NANOS[i] = TimeUnit.MICROSECONDS.toNanos(boundsMicros[i]);
+    }
+  }
+
+  private final boolean enabled;
+
+  private final LatencyHistogram[] stageHistograms;
+
+  private final LongAdder[] eventCounters;
+
+  private final Map<String, LatencyHistogram> storeHistograms = new ConcurrentHashMap<>();
+
+  public OcspMetrics(boolean enabled) {
+    this.enabled = enabled;
+
+    Stage[] stages = Stage.values();
+    this.stageHistograms = new LatencyHistogram[stages.length];
+    for (int i = 0; i < stages.length; i++) {
+      stageHistograms[i] = new LatencyHistogram();
+    }
+
+    Event[] events = Event.values();
+    this.eventCounters = new LongAdder[events.length];
+    for (int i = 0; i < events.length; i++) {
+      eventCounters[i] = new LongAdder();
+    }
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Registers the stores, whose latency will be recorded by
+   * {@link #observeStore(String, long)}.
+   * @param storeNames
+   *          Names of the stores.
+   */
+  void registerStores(Collection<String> storeNames) {
+    for (String name : storeNames) {
+      storeHistograms.put(name, new LatencyHistogram());
+    }
+  }
+
+  /**
+   * Returns the start time of a stage.
+   * @return the current value of {@link System#nanoTime()}, or 0 if disabled.
+   */
+  long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Records the duration of a stage.
+   * @param stage
+   *          The stage.
+   * @param startNanos
+   *          The start time returned by {@link #start()}.
+   * @return the end time of the stage, can be used as start time of the next stage.
+   */
+  long observe(Stage stage, long startNanos) {
+    if (!enabled) {
+      return 0;
+    }
+
+    long now = System.nanoTime();
+    stageHistograms[stage.ordinal()].observe(now - startNanos);
+    return now;
+  }
+
+  /**
+   * Records the duration of a lookup in the given store.
+   * @param storeName
+   *          Name of the store.
+   * @param startNanos
+   *          The start time returned by {@link #start()}.
+   */
+  void observeStore(String storeName, long startNanos) {
+    if (!enabled) {
+      return;
+    }
+
+    LatencyHistogram histogram = storeHistograms.get(storeName);
+    if (histogram != null) {
+      histogram.observe(System.nanoTime() - startNanos);
+    }
+  }
+
+  void count(Event event) {
+    if (enabled) {
+      eventCounters[event.ordinal()].increment();
+    }
+  }
+
+  /**
+   * Returns the metrics in the text exposition format of Prometheus.
+   * @return the metrics.
+   */
+  @Override
+  public String toText() {
+    StringBuilder sb = new StringBuilder(8192);
+    sb.append("# HELP ").append(METRIC_STAGE)
+      .append(" Latency of the stages of answering OCSP requests.\n");
+    sb.append("# TYPE ").append(METRIC_STAGE).append(" histogram\n");
+    for (Stage stage : Stage.values()) {
+      stageHistograms[stage.ordinal()].writeTo(sb, METRIC_STAGE,
+          "stage=\"" + stage.name() + "\"");
+    }
+
+    sb.append("# HELP ").append(METRIC_STORE)
+      .append(" Latency of the certificate status lookups per store.\n");
+    sb.append("# TYPE ").append(METRIC_STORE).append(" histogram\n");
+    for (Map.Entry<String, LatencyHistogram> entry : storeHistograms.entrySet()) {
+      entry.getValue().writeTo(sb, METRIC_STORE, "store=\"" + escape(entry.getKey()) + "\"");
+    }
+
+    sb.append("# HELP ").append(METRIC_EVENTS).append(" Number of events.\n");
+    sb.append("# TYPE ").append(METRIC_EVENTS).append(" counter\n");
+    for (Event event : Event.values()) {
+      sb.append(METRIC_EVENTS).append("{event=\"").append(event.name()).append("\"} ")
+        .append(eventCounters[event.ordinal()].sum()).append('\n');
+    }
+
+    return sb.toString();
+  }
+
+  private static String escape(String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+}
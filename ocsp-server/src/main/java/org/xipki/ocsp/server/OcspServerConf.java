@@ -467,12 +467,193 @@ public class OcspServerConf extends ValidatableConf {
 
   }
 
+  public static class ResponsePreSigning extends ValidatableConf {
+
+    /**
+     * Interval in seconds between two runs of the pre-signing.
+     * The default is 600 (10 minutes).
+     */
+    private int interval = 600;
+
+    /**
+     * The cached responses with nextUpdate in less than this number of seconds will be
+     * signed again. The default is 3600 (1 hour).
+     */
+    private int aheadPeriod = 3600;
+
+    /**
+     * Maximal number of signing operations per second. The default is 50.
+     */
+    private int maxSignsPerSecond = 50;
+
+    /**
+     * Number of threads to sign the responses in parallel. The default is 2.
+     */
+    private int threads = 2;
+
+    public int getInterval() {
+      return interval;
+    }
+
+    public void setInterval(int interval) {
+      this.interval = interval;
+    }
+
+    public int getAheadPeriod() {
+      return aheadPeriod;
+    }
+
+    public void setAheadPeriod(int aheadPeriod) {
+      this.aheadPeriod = aheadPeriod;
+    }
+
+    public int getMaxSignsPerSecond() {
+      return maxSignsPerSecond;
+    }
+
+    public void setMaxSignsPerSecond(int maxSignsPerSecond) {
+      this.maxSignsPerSecond = maxSignsPerSecond;
+    }
+
+    public int getThreads() {
+      return threads;
+    }
+
+    public void setThreads(int threads) {
+      this.threads = threads;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (interval < 1) {
+        throw new InvalidConfException("interval may not be less than 1");
+      }
+
+      if (aheadPeriod <= 600) {
+        throw new InvalidConfException("aheadPeriod must be greater than 600");
+      }
+
+      if (maxSignsPerSecond < 1) {
+        throw new InvalidConfException("maxSignsPerSecond may not be less than 1");
+      }
+
+      if (threads < 1) {
+        throw new InvalidConfException("threads may not be less than 1");
+      }
+    }
+
+  }
+
+  public static class ResponseWriteBehind extends ValidatableConf {
+
+    /**
+     * Maximal number of responses waiting to be written to the cache database. Further
+     * responses will not be cached. The default is 10000.
+     */
+    private int queueSize = 10000;
+
+    /**
+     * Maximal number of responses written to the cache database in one batch.
+     * The default is 100.
+     */
+    private int maxBatchSize = 100;
+
+    public int getQueueSize() {
+      return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+      this.queueSize = queueSize;
+    }
+
+    public int getMaxBatchSize() {
+      return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+      this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (queueSize < 1) {
+        throw new InvalidConfException("queueSize may not be less than 1");
+      }
+
+      if (maxBatchSize < 1) {
+        throw new InvalidConfException("maxBatchSize may not be less than 1");
+      }
+    }
+
+  }
+
+  public static class ResponseFileStore extends ValidatableConf {
+
+    /**
+     * Directory of the segment files.
+     */
+    private String dir;
+
+    /**
+     * Size of a segment file in bytes. The default is 64 MiB.
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+
+    public String getDir() {
+      return dir;
+    }
+
+    public void setDir(String dir) {
+      this.dir = dir;
+    }
+
+    public int getSegmentSize() {
+      return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+      this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      notEmpty(dir, "dir");
+      if (segmentSize < 1024 * 1024) {
+        throw new InvalidConfException("segmentSize may not be less than 1048576");
+      }
+    }
+
+  }
+
   public static class ResponseCache extends ValidatableConf {
 
     private Datasource datasource;
 
     private int validity = 86400;
 
+    /**
+     * Maximal number of responses cached in memory in front of the database.
+     * The default is 0 (memory cache deactivated).
+     */
+    private int memoryCacheSize = 0;
+
+    /**
+     * Signing of the cached responses before they expire. Deactivated if not present.
+     */
+    private ResponsePreSigning preSigning;
+
+    /**
+     * Writing of the responses to the cache database in a background thread.
+     * The responses are written synchronously if not present.
+     */
+    private ResponseWriteBehind writeBehind;
+
+    /**
+     * Local file store of the responses, instead of the table OCSP of the cache database.
+     * The issuers are still stored in the cache database.
+     */
+    private ResponseFileStore fileStore;
+
     public Datasource getDatasource() {
       return datasource;
     }
@@ -489,9 +670,44 @@ public class OcspServerConf extends ValidatableConf {
       this.validity = validity;
     }
 
+    public int getMemoryCacheSize() {
+      return memoryCacheSize;
+    }
+
+    public void setMemoryCacheSize(int memoryCacheSize) {
+      this.memoryCacheSize = memoryCacheSize;
+    }
+
+    public ResponsePreSigning getPreSigning() {
+      return preSigning;
+    }
+
+    public void setPreSigning(ResponsePreSigning preSigning) {
+      this.preSigning = preSigning;
+    }
+
+    public ResponseWriteBehind getWriteBehind() {
+      return writeBehind;
+    }
+
+    public void setWriteBehind(ResponseWriteBehind writeBehind) {
+      this.writeBehind = writeBehind;
+    }
+
+    public ResponseFileStore getFileStore() {
+      return fileStore;
+    }
+
+    public void setFileStore(ResponseFileStore fileStore) {
+      this.fileStore = fileStore;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notNull(datasource, "datasource");
+      validate(preSigning);
+      validate(writeBehind);
+      validate(fileStore);
     }
 
   }
@@ -575,6 +791,67 @@ public class OcspServerConf extends ValidatableConf {
 
   }
 
+  public static class BatchSigning extends ValidatableConf {
+
+    /**
+     * Maximal number of responses signed in one batch. The default is 16.
+     */
+    private int maxBatchSize = 16;
+
+    /**
+     * Maximal time in milliseconds to wait for further responses before a batch is
+     * signed. The default is 0, namely only the responses which are waiting for the
+     * signer are signed together.
+     */
+    private int maxWaitMillis = 0;
+
+    /**
+     * Maximal number of batches signed in parallel, namely the number of signing threads.
+     * It should not be greater than the parallelism of the signer. The default is 2.
+     */
+    private int maxConcurrentBatches = 2;
+
+    public int getMaxBatchSize() {
+      return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+      this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxWaitMillis() {
+      return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(int maxWaitMillis) {
+      this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public int getMaxConcurrentBatches() {
+      return maxConcurrentBatches;
+    }
+
+    public void setMaxConcurrentBatches(int maxConcurrentBatches) {
+      this.maxConcurrentBatches = maxConcurrentBatches;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (maxBatchSize < 1) {
+        throw new InvalidConfException("maxBatchSize may not be less than 1");
+      }
+
+      if (maxWaitMillis < 0) {
+        throw new InvalidConfException("maxWaitMillis may not be negative");
+      }
+
+      if (maxConcurrentBatches < 1) {
+        throw new InvalidConfException("maxConcurrentBatches may not be less than 1");
+      }
+    }
+
+  }
+
   public static class Signer extends ValidatableConf {
 
     private String name;
@@ -589,6 +866,8 @@ public class OcspServerConf extends ValidatableConf {
 
     private List<FileOrBinary> caCerts;
 
+    private BatchSigning batchSigning;
+
     public String getName() {
       return name;
     }
@@ -643,12 +922,21 @@ public class OcspServerConf extends ValidatableConf {
       this.caCerts = caCerts;
     }
 
+    public BatchSigning getBatchSigning() {
+      return batchSigning;
+    }
+
+    public void setBatchSigning(BatchSigning batchSigning) {
+      this.batchSigning = batchSigning;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notEmpty(name, "name");
       notEmpty(type, "type");
       notEmpty(key, "key");
       notEmpty(algorithms, "algorithms");
+      validate(batchSigning);
     }
 
   }
@@ -850,6 +1138,12 @@ public class OcspServerConf extends ValidatableConf {
 
   private boolean master = true;
 
+  /**
+   * Whether to record the latency of the stages of answering OCSP requests. The metrics
+   * are exported via the health endpoint (path /health/metrics).
+   */
+  private boolean metrics;
+
   public ResponseCache getResponseCache() {
     return responseCache;
   }
@@ -932,6 +1226,14 @@ public class OcspServerConf extends ValidatableConf {
     this.master = master;
   }
 
+  public boolean isMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(boolean metrics) {
+    this.metrics = metrics;
+  }
+
   @Override
   public void validate() throws InvalidConfException {
     notEmpty(responders, "responders");
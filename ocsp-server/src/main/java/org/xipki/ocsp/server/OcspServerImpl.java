@@ -39,6 +39,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -65,10 +66,15 @@ import org.xipki.ocsp.api.OcspStoreException;
 import org.xipki.ocsp.api.RequestIssuer;
 import org.xipki.ocsp.api.Responder;
 import org.xipki.ocsp.api.ResponderAndPath;
+import org.xipki.ocsp.server.OcspMetrics.Event;
+import org.xipki.ocsp.server.OcspMetrics.Stage;
 import org.xipki.ocsp.server.OcspServerConf.EmbedCertsMode;
 import org.xipki.ocsp.server.ResponderOption.OcspMode;
+import org.xipki.ocsp.server.store.CertStatusChangeListener;
 import org.xipki.ocsp.server.store.CrlDbCertStatusStore;
 import org.xipki.ocsp.server.store.DbCertStatusStore;
+import org.xipki.ocsp.server.store.FileResponseCacheStore;
+import org.xipki.ocsp.server.store.ResponseCacheStore;
 import org.xipki.ocsp.server.store.ResponseCacher;
 import org.xipki.ocsp.server.store.ejbca.EjbcaCertStatusStore;
 import org.xipki.ocsp.server.type.CertID;
@@ -78,8 +84,6 @@ import org.xipki.ocsp.server.type.Extension;
 import org.xipki.ocsp.server.type.Extensions;
 import org.xipki.ocsp.server.type.OID;
 import org.xipki.ocsp.server.type.OcspRequest;
-import org.xipki.ocsp.server.type.ResponderID;
-import org.xipki.ocsp.server.type.TaggedCertSequence;
 import org.xipki.ocsp.server.type.WritableOnlyExtension;
 import org.xipki.password.PasswordResolverException;
 import org.xipki.security.AlgorithmCode;
@@ -180,6 +184,10 @@ public class OcspServerImpl implements OcspServer {
 
   private ResponseCacher responseCacher;
 
+  private ResponsePreSigner responsePreSigner;
+
+  private OcspMetrics metrics = new OcspMetrics(false);
+
   private Map<String, ResponderImpl> responders = new HashMap<>();
 
   private Map<String, ResponderSigner> signers = new HashMap<>();
@@ -252,6 +260,11 @@ public class OcspServerImpl implements OcspServer {
     return initialized.get();
   }
 
+  @Override
+  public OcspMetrics getMetrics() {
+    return metrics;
+  }
+
   public void init() throws InvalidConfException, DataAccessException, PasswordResolverException {
     init(true);
   }
@@ -298,6 +311,10 @@ public class OcspServerImpl implements OcspServer {
     initialized.set(false);
 
     // reset
+    if (responsePreSigner != null) {
+      responsePreSigner.close();
+      responsePreSigner = null;
+    }
     responseCacher = null;
     responders.clear();
     signers.clear();
@@ -404,6 +421,7 @@ public class OcspServerImpl implements OcspServer {
     }
 
     this.master = conf.isMaster();
+    this.metrics = new OcspMetrics(conf.isMetrics());
 
     // Response Cache
     OcspServerConf.ResponseCache cacheType = conf.getResponseCache();
@@ -420,7 +438,32 @@ public class OcspServerImpl implements OcspServer {
       } finally {
         closeStream(dsStream);
       }
-      responseCacher = new ResponseCacher(datasource, master, cacheType.getValidity());
+      ResponseCacheStore responseStore = null;
+      OcspServerConf.ResponseFileStore fileStoreConf = cacheType.getFileStore();
+      if (fileStoreConf != null) {
+        try {
+          responseStore = new FileResponseCacheStore(fileStoreConf.getDir(),
+              fileStoreConf.getSegmentSize());
+        } catch (IOException ex) {
+          datasource.close();
+          throw new OcspStoreException("could not initialize the OCSP response file store", ex);
+        }
+      }
+
+      try {
+        OcspServerConf.ResponseWriteBehind writeBehind = cacheType.getWriteBehind();
+        responseCacher = (writeBehind == null)
+            ? new ResponseCacher(datasource, master, cacheType.getValidity(),
+                cacheType.getMemoryCacheSize(), 0, 0, responseStore)
+            : new ResponseCacher(datasource, master, cacheType.getValidity(),
+                cacheType.getMemoryCacheSize(), writeBehind.getQueueSize(),
+                writeBehind.getMaxBatchSize(), responseStore);
+      } catch (DataAccessException ex) {
+        if (responseStore != null) {
+          responseStore.close();
+        }
+        throw new OcspStoreException("could not initialize the OCSP response cacher", ex);
+      }
       responseCacher.init();
     }
 
@@ -494,10 +537,24 @@ public class OcspServerImpl implements OcspServer {
     } // end for
 
     // stores
+    CertStatusChangeListener certStatusChangeListener = null;
+    if (responseCacher != null) {
+      certStatusChangeListener = new CertStatusChangeListener() {
+        @Override
+        public void certStatusChanged(RequestIssuer issuer, BigInteger serialNumber) {
+          invalidateCachedResponses(issuer, serialNumber);
+        }
+      };
+    }
+
     for (OcspServerConf.Store m : conf.getStores()) {
       OcspStore store = newStore(m, datasources);
+      if (certStatusChangeListener != null && store instanceof DbCertStatusStore) {
+        ((DbCertStatusStore) store).setCertStatusChangeListener(certStatusChangeListener);
+      }
       stores.put(m.getName(), store);
     }
+    metrics.registerStores(stores.keySet());
 
     // responders
     for (String name : responderOptions.keySet()) {
@@ -549,15 +606,29 @@ public class OcspServerImpl implements OcspServer {
       list2.add(m.str);
     }
     this.servletPaths = list2;
+
+    // Only the master signs the cached responses in advance
+    if (responseCacher != null && master && cacheType.getPreSigning() != null) {
+      responsePreSigner = new ResponsePreSigner(this, responseCacher, cacheType.getPreSigning());
+      responsePreSigner.init();
+    }
   } // method init0
 
   @Override
   public void close() {
     LOG.info("stopped OCSP Responder");
+    if (responsePreSigner != null) {
+      responsePreSigner.close();
+    }
+
     if (responseCacher != null) {
       responseCacher.close();
     }
 
+    for (ResponderSigner signer : signers.values()) {
+      signer.close();
+    }
+
     for (OcspStore store : stores.values()) {
       try {
         store.close();
@@ -569,6 +640,72 @@ public class OcspServerImpl implements OcspServer {
 
   @Override
   public OcspRespWithCacheInfo answer(Responder responder2, byte[] request, boolean viaGet) {
+    OcspMetrics metrics = this.metrics;
+    long start = metrics.start();
+    OcspRespWithCacheInfo resp = answer0(responder2, request, viaGet, metrics);
+
+    if (metrics.isEnabled()) {
+      metrics.observe(Stage.total, start);
+      metrics.count(Event.request);
+      if (resp == unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater)) {
+        metrics.count(Event.tryLater);
+      } else if (resp == unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest)) {
+        metrics.count(Event.malformedRequest);
+      } else if (resp == unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError)) {
+        metrics.count(Event.internalError);
+      }
+    }
+    return resp;
+  } // method answer
+
+  @Override
+  public OcspRespWithCacheInfo getCachedResponse(Responder responder2, byte[] request) {
+    ResponseCacher cacher = responseCacher;
+    if (cacher == null || !cacher.isOnService()) {
+      return null;
+    }
+
+    ResponderImpl responder = (ResponderImpl) responder2;
+    RequestOption reqOpt = responder.getRequestOption();
+
+    try {
+      // only unsigned requests for one certificate without any extension (e.g. nonce or
+      // preferred signature algorithms) are answered from the cache, see answer0().
+      if (reqOpt.isSignatureRequired() || reqOpt.getNonceOccurrence() == TripleState.required
+          || OcspRequest.containsSignature(request)) {
+        return null;
+      }
+
+      OcspRequest req = OcspRequest.getInstance(request);
+      if (!reqOpt.isVersionAllowed(req.getVersion()) || req.getRequestList().size() != 1
+          || (req.getExtensions() != null && !req.getExtensions().isEmpty())) {
+        return null;
+      }
+
+      CertID certId = req.getRequestList().get(0);
+      if (!reqOpt.allows(certId.getIssuer().hashAlgorithm())) {
+        return null;
+      }
+
+      Integer issuerId = cacher.getIssuerId(certId.getIssuer());
+      if (issuerId == null) {
+        return null;
+      }
+
+      AlgorithmCode sigAlgCode = responder.getSigner().getFirstSigner().getAlgorithmCode();
+      return cacher.getOcspResponse(issuerId.intValue(), certId.getSerialNumber(), sigAlgCode);
+    } catch (EncodingException ex) {
+      // the error response is generated by answer().
+      return null;
+    } catch (OcspStoreException ex) {
+      LOG.debug("could not get the cached response", ex);
+      return null;
+    }
+  } // method getCachedResponse
+
+  private OcspRespWithCacheInfo answer0(Responder responder2, byte[] request, boolean viaGet,
+      OcspMetrics metrics) {
+    long stageStart = metrics.start();
     ResponderImpl responder = (ResponderImpl) responder2;
     RequestOption reqOpt = responder.getRequestOption();
 
@@ -591,7 +728,23 @@ public class OcspServerImpl implements OcspServer {
     OcspServerConf.ResponseOption repOpt = responder.getResponseOption();
 
     try {
-      Object reqOrRrrorResp = checkSignature(request, reqOpt);
+      Object reqOrRrrorResp;
+      try {
+        if (reqOpt.isValidateSignature() && OcspRequest.containsSignature(request)) {
+          // the request is parsed by the signature verification.
+          reqOrRrrorResp = checkSignature(request, reqOpt);
+          stageStart = metrics.observe(Stage.checkSignature, stageStart);
+        } else if (reqOpt.isValidateSignature() && reqOpt.isSignatureRequired()) {
+          LOG.warn("signature in request required");
+          return unsuccesfulOCSPRespMap.get(OcspResponseStatus.sigRequired);
+        } else {
+          reqOrRrrorResp = OcspRequest.getInstance(request);
+          stageStart = metrics.observe(Stage.parseRequest, stageStart);
+        }
+      } catch (EncodingException ex) {
+        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+      }
+
       if (reqOrRrrorResp instanceof OcspRespWithCacheInfo) {
         return (OcspRespWithCacheInfo) reqOrRrrorResp;
       }
@@ -611,7 +764,7 @@ public class OcspServerImpl implements OcspServer {
       repControl.canCacheInfo = true;
 
       List<ExtendedExtension> reqExtensions = req.getExtensions();
-      List<Extension> respExtensions = new LinkedList<>();
+      List<Extension> respExtensions = new ArrayList<>(2);
 
       ExtendedExtension nonceExtn = removeExtension(reqExtensions, OID.ID_PKIX_OCSP_NONCE);
       if (nonceExtn != null) {
@@ -686,6 +839,7 @@ public class OcspServerImpl implements OcspServer {
       if (concurrentSigner == null) {
         concurrentSigner = signer.getFirstSigner();
       }
+      stageStart = metrics.observe(Stage.checkRequest, stageStart);
 
       AlgorithmCode cacheDbSigAlgCode = null;
       BigInteger cacheDbSerialNumber = null;
@@ -712,6 +866,8 @@ public class OcspServerImpl implements OcspServer {
           OcspRespWithCacheInfo cachedResp = responseCacher.getOcspResponse(
               cacheDbIssuerId.intValue(), cacheDbSerialNumber, cacheDbSigAlgCode);
           if (cachedResp != null) {
+            metrics.observe(Stage.cacheLookup, stageStart);
+            metrics.count(Event.cacheHit);
             return cachedResp;
           }
         } else if (master) {
@@ -732,19 +888,27 @@ public class OcspServerImpl implements OcspServer {
         if (cacheDbIssuerId == null) {
           canCacheDb = false;
         }
+        stageStart = metrics.observe(Stage.cacheLookup, stageStart);
+        metrics.count(Event.cacheMiss);
       }
 
-      ResponderID responderId = signer.getResponderId(repOpt.isResponderIdByName());
-      OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
+      Template template = responder.getResponseTemplate(concurrentSigner);
+      OCSPRespBuilder builder = new OCSPRespBuilder(template.getResponderId());
+
+      // resolve the status of all certificates at once, instead one query per CertID
+      CertStatusInfo[] certStatusInfos = (requestsSize > 1)
+          ? getCertStatuses(requestList, responder, reqOpt, repOpt) : null;
 
       for (int i = 0; i < requestsSize; i++) {
         OcspRespWithCacheInfo failureOcspResp = processCertReq(requestList.get(i),
+            (certStatusInfos == null) ? null : certStatusInfos[i],
             builder, responder, reqOpt, repOpt, repControl);
 
         if (failureOcspResp != null) {
           return failureOcspResp;
         }
       }
+      stageStart = metrics.observe(Stage.storeLookup, stageStart);
 
       if (repControl.includeExtendedRevokeExtension) {
         respExtensions.add(extension_pkix_ocsp_extendedRevoke);
@@ -755,20 +919,10 @@ public class OcspServerImpl implements OcspServer {
         builder.setResponseExtensions(extns);
       }
 
-      TaggedCertSequence certsInResp;
-      EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
-      if (certsMode == EmbedCertsMode.SIGNER) {
-        certsInResp = signer.getSequenceOfCert();
-      } else if (certsMode == EmbedCertsMode.NONE) {
-        certsInResp = null;
-      } else {
-        // certsMode == EmbedCertsMode.SIGNER_AND_CA
-        certsInResp = signer.getSequenceOfCertChain();
-      }
-
       byte[] encodeOcspResponse;
       try {
-        encodeOcspResponse = builder.buildOCSPResponse(concurrentSigner, certsInResp, new Date());
+        encodeOcspResponse = builder.buildOCSPResponse(template, new Date());
+        stageStart = metrics.observe(Stage.sign, stageStart);
       } catch (NoIdleSignerException ex) {
         return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
       } catch (OCSPException ex) {
@@ -780,9 +934,9 @@ public class OcspServerImpl implements OcspServer {
       if (canCacheDb && repControl.canCacheInfo) {
         // Don't cache the response with status UNKNOWN, since this may result in DDoS
         // of storage
-        responseCacher.storeOcspResponse(cacheDbIssuerId.intValue(), cacheDbSerialNumber,
-            repControl.cacheThisUpdate, repControl.cacheNextUpdate, cacheDbSigAlgCode,
-            encodeOcspResponse);
+        storeOcspResponse(cacheDbIssuerId.intValue(), cacheDbSerialNumber, repControl,
+            cacheDbSigAlgCode, encodeOcspResponse);
+        metrics.observe(Stage.cacheStore, stageStart);
       }
 
       if (viaGet && repControl.canCacheInfo) {
@@ -798,18 +952,162 @@ public class OcspServerImpl implements OcspServer {
       LogUtil.error(LOG, th);
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
     }
-  } // method ask
+  } // method answer0
+
+  /**
+   * Signs the cached response again and replaces the cached one.
+   * @param ident
+   *          Identifier of the cached response.
+   * @return whether the new response has been cached.
+   */
+  boolean preSignResponse(ResponseCacher.CachedResponseIdent ident) throws Exception {
+    RequestIssuer reqIssuer = ident.getRequestIssuer();
+
+    ResponderImpl responder = null;
+    ConcurrentContentSigner concurrentSigner = null;
+    for (ResponderImpl m : responders.values()) {
+      concurrentSigner = m.getSigner().getSigner(ident.getSigAlg());
+      if (concurrentSigner == null) {
+        continue;
+      }
+
+      for (OcspStore store : m.getStores()) {
+        if (store.knowsIssuer(reqIssuer)) {
+          responder = m;
+          break;
+        }
+      }
 
-  private OcspRespWithCacheInfo processCertReq(CertID certId, OCSPRespBuilder builder,
-      ResponderImpl responder, RequestOption reqOpt, OcspServerConf.ResponseOption repOpt,
-      OcspRespControl repControl) throws IOException {
+      if (responder != null) {
+        break;
+      }
+    }
+
+    if (responder == null) {
+      LOG.debug("found no responder to sign the response for issuer {} and algorithm {}",
+          reqIssuer, ident.getSigAlg());
+      return false;
+    }
+
+    OcspServerConf.ResponseOption repOpt = responder.getResponseOption();
+
+    OcspRespControl repControl = new OcspRespControl();
+    repControl.canCacheInfo = true;
+
+    Template template = responder.getResponseTemplate(concurrentSigner);
+    OCSPRespBuilder builder = new OCSPRespBuilder(template.getResponderId());
+    OcspRespWithCacheInfo failureOcspResp = processCertReq(
+        new CertID(reqIssuer, ident.getSerialNumber()), null, builder, responder,
+        responder.getRequestOption(), repOpt, repControl);
+    if (failureOcspResp != null || !repControl.canCacheInfo) {
+      return false;
+    }
+
+    // do not sign a response which will not be stored
+    if (repControl.cacheNextUpdate != Long.MAX_VALUE
+        && !responseCacher.isNextUpdateStorable(repControl.cacheNextUpdate / 1000)) {
+      return false;
+    }
+
+    if (repControl.includeExtendedRevokeExtension) {
+      List<Extension> respExtensions = new ArrayList<>(1);
+      respExtensions.add(extension_pkix_ocsp_extendedRevoke);
+      builder.setResponseExtensions(new Extensions(respExtensions));
+    }
+
+    byte[] encodeOcspResponse = builder.buildOCSPResponse(template, new Date());
+    return storeOcspResponse(ident.getIssuerId(), ident.getSerialNumber(), repControl,
+        ident.getSigAlg(), encodeOcspResponse);
+  }
+
+  private boolean storeOcspResponse(int issuerId, BigInteger serialNumber,
+      OcspRespControl repControl, AlgorithmCode sigAlgCode, byte[] encodedOcspResp) {
+    // ResponseCacher expects the time in seconds
+    Long nextUpdate = (repControl.cacheNextUpdate == Long.MAX_VALUE)
+        ? null : repControl.cacheNextUpdate / 1000;
+    return responseCacher.storeOcspResponse(issuerId, serialNumber,
+        repControl.cacheThisUpdate / 1000, nextUpdate, sigAlgCode, encodedOcspResp);
+  }
+
+  /**
+   * Gets the status of the certificates in the request list with one query per issuer and
+   * store.
+   * @return the certificate status, with the same order as the request list. Elements of
+   *         certificates which could not be resolved are {@code null}.
+   */
+  private CertStatusInfo[] getCertStatuses(List<CertID> requestList,
+      ResponderImpl responder, RequestOption reqOpt, OcspServerConf.ResponseOption repOpt) {
+    Map<RequestIssuer, Set<BigInteger>> issuerSerialsMap = new HashMap<>();
+    for (CertID certId : requestList) {
+      RequestIssuer reqIssuer = certId.getIssuer();
+      if (!reqOpt.allows(reqIssuer.hashAlgorithm())) {
+        // will be rejected by processCertReq()
+        continue;
+      }
+
+      Set<BigInteger> serials = issuerSerialsMap.get(reqIssuer);
+      if (serials == null) {
+        serials = new HashSet<>();
+        issuerSerialsMap.put(reqIssuer, serials);
+      }
+      serials.add(certId.getSerialNumber());
+    }
+
+    Date now = new Date();
+    Map<RequestIssuer, Map<BigInteger, CertStatusInfo>> statusesMap = new HashMap<>();
+    for (Entry<RequestIssuer, Set<BigInteger>> entry : issuerSerialsMap.entrySet()) {
+      RequestIssuer reqIssuer = entry.getKey();
+      Set<BigInteger> serials = entry.getValue();
+      Map<BigInteger, CertStatusInfo> statuses = new HashMap<>();
+
+      for (OcspStore store : responder.getStores()) {
+        if (serials.isEmpty()) {
+          break;
+        }
+
+        if (!store.knowsIssuer(reqIssuer)) {
+          continue;
+        }
+
+        long storeStart = metrics.start();
+        try {
+          Map<BigInteger, CertStatusInfo> storeStatuses = store.getCertStatuses(now, reqIssuer,
+              serials, repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
+              responder.getResponderOption().isInheritCaRevocation());
+          metrics.observeStore(store.getName(), storeStart);
+          statuses.putAll(storeStatuses);
+          serials.removeAll(storeStatuses.keySet());
+        } catch (OcspStoreException ex) {
+          // the remaining certificates will be resolved individually
+          LogUtil.error(LOG, ex, "getCertStatuses() of CertStatusStore " + store.getName());
+        }
+      }
+
+      statusesMap.put(reqIssuer, statuses);
+    }
+
+    final int size = requestList.size();
+    CertStatusInfo[] certStatusInfos = new CertStatusInfo[size];
+    for (int i = 0; i < size; i++) {
+      CertID certId = requestList.get(i);
+      Map<BigInteger, CertStatusInfo> statuses = statusesMap.get(certId.getIssuer());
+      if (statuses != null) {
+        certStatusInfos[i] = statuses.get(certId.getSerialNumber());
+      }
+    }
+    return certStatusInfos;
+  } // method getCertStatuses
+
+  private OcspRespWithCacheInfo processCertReq(CertID certId, CertStatusInfo resolvedStatusInfo,
+      OCSPRespBuilder builder, ResponderImpl responder, RequestOption reqOpt,
+      OcspServerConf.ResponseOption repOpt, OcspRespControl repControl) throws IOException {
     HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
     if (!reqOpt.allows(reqHashAlgo)) {
       LOG.warn("CertID.hashAlgorithm {} not allowed", reqHashAlgo);
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
     }
 
-    CertStatusInfo certStatusInfo = null;
+    CertStatusInfo certStatusInfo = resolvedStatusInfo;
     boolean exceptionOccurs = false;
 
     BigInteger serial = certId.getSerialNumber();
@@ -817,14 +1115,21 @@ public class OcspServerImpl implements OcspServer {
     RequestIssuer reqIssuer = certId.getIssuer();
     Date now = new Date();
     for (OcspStore store : responder.getStores()) {
+      if (certStatusInfo != null) {
+        // already resolved
+        break;
+      }
+
       if (!store.knowsIssuer(reqIssuer)) {
         continue;
       }
 
+      long storeStart = metrics.start();
       try {
         certStatusInfo = store.getCertStatus(now, certId.getIssuer(), serial,
             repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
             responder.getResponderOption().isInheritCaRevocation());
+        metrics.observeStore(store.getName(), storeStart);
         if (certStatusInfo != null) {
           break;
         }
@@ -851,7 +1156,7 @@ public class OcspServerImpl implements OcspServer {
     }
     Date nextUpdate = certStatusInfo.getNextUpdate();
 
-    List<Extension> extensions = new LinkedList<>();
+    List<Extension> extensions = new ArrayList<>(3);
     boolean unknownAsRevoked = false;
     byte[] certStatus;
     switch (certStatusInfo.getCertStatus()) {
@@ -859,6 +1164,7 @@ public class OcspServerImpl implements OcspServer {
         certStatus = bytes_certstatus_good;
         break;
       case ISSUER_UNKNOWN:
+        metrics.count(Event.unknownIssuer);
         repControl.canCacheInfo = false;
         certStatus = bytes_certstatus_unknown;
         break;
@@ -1011,12 +1317,32 @@ public class OcspServerImpl implements OcspServer {
     }
 
     try {
-      return new ResponderSigner(singleSigners);
+      return new ResponderSigner(singleSigners, signerType.getBatchSigning());
     } catch (CertificateException | IOException ex) {
       throw new InvalidConfException(ex.getMessage(), ex);
     }
   } // method initSigner
 
+  private void invalidateCachedResponses(RequestIssuer issuer, BigInteger serialNumber) {
+    ResponseCacher cacher = responseCacher;
+    if (cacher == null) {
+      return;
+    }
+
+    Integer issuerId = cacher.getIssuerId(issuer);
+    if (issuerId == null) {
+      // no response of this issuer has been cached
+      return;
+    }
+
+    try {
+      cacher.invalidate(issuerId, serialNumber);
+    } catch (OcspStoreException ex) {
+      LogUtil.error(LOG, ex, "could not invalidate the cached OCSP responses of certificate "
+          + LogUtil.formatCsn(serialNumber));
+    }
+  } // method invalidateCachedResponses
+
   private OcspStore newStore(OcspServerConf.Store conf, Map<String, DataSourceWrapper> datasources)
       throws InvalidConfException {
     OcspStore store;
@@ -1084,25 +1410,8 @@ public class OcspServerImpl implements OcspServer {
       throws OCSPException, CertificateParsingException, InvalidAlgorithmParameterException {
     OCSPRequest req;
     try {
-      if (!requestOption.isValidateSignature()) {
-        return OcspRequest.getInstance(request);
-      }
-
-      if (!OcspRequest.containsSignature(request)) {
-        if (requestOption.isSignatureRequired()) {
-          LOG.warn("signature in request required");
-          return unsuccesfulOCSPRespMap.get(OcspResponseStatus.sigRequired);
-        } else {
-          return OcspRequest.getInstance(request);
-        }
-      }
-
-      try {
-        req = OCSPRequest.getInstance(request);
-      } catch (IllegalArgumentException ex) {
-        throw new EncodingException("could not parse OCSP request", ex);
-      }
-    } catch (EncodingException ex) {
+      req = OCSPRequest.getInstance(request);
+    } catch (IllegalArgumentException ex) {
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
     }
 
@@ -17,11 +17,17 @@
 
 package org.xipki.ocsp.server;
 
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.xipki.ocsp.api.OcspStore;
 import org.xipki.ocsp.api.Responder;
+import org.xipki.ocsp.server.OcspServerConf.EmbedCertsMode;
 import org.xipki.ocsp.server.OcspServerConf.ResponseOption;
+import org.xipki.ocsp.server.type.ResponderID;
+import org.xipki.ocsp.server.type.TaggedCertSequence;
+import org.xipki.security.ConcurrentContentSigner;
 import org.xipki.util.Args;
 
 /**
@@ -42,6 +48,8 @@ public class ResponderImpl implements Responder {
 
   private final List<OcspStore> stores;
 
+  private final Map<ConcurrentContentSigner, Template> responseTemplates;
+
   ResponderImpl(ResponderOption responderOption, RequestOption requestOption,
       ResponseOption responseOption, ResponderSigner signer, List<OcspStore> stores) {
     this.responderOption = Args.notNull(responderOption, "responderOption");
@@ -49,6 +57,24 @@ public class ResponderImpl implements Responder {
     this.responseOption = Args.notNull(responseOption, "responseOption");
     this.signer = Args.notNull(signer, "signer");
     this.stores = Args.notEmpty(stores, "stores");
+
+    TaggedCertSequence certsInResp;
+    EmbedCertsMode certsMode = responseOption.getEmbedCertsMode();
+    if (certsMode == EmbedCertsMode.SIGNER) {
+      certsInResp = signer.getSequenceOfCert();
+    } else if (certsMode == EmbedCertsMode.NONE) {
+      certsInResp = null;
+    } else {
+      // certsMode == EmbedCertsMode.SIGNER_AND_CA
+      certsInResp = signer.getSequenceOfCertChain();
+    }
+
+    ResponderID responderId = signer.getResponderId(responseOption.isResponderIdByName());
+    this.responseTemplates = new IdentityHashMap<>();
+    for (ConcurrentContentSigner m : signer.getSigners()) {
+      responseTemplates.put(m,
+          new Template(responderId, certsInResp, m, signer.getBatchSigner(m)));
+    }
   }
 
   public ResponderOption getResponderOption() {
@@ -71,6 +97,16 @@ public class ResponderImpl implements Responder {
     return stores;
   }
 
+  /**
+   * Gets the template of the responses signed by the given signer.
+   * @param signer
+   *          One of the signers of this responder.
+   * @return the response template.
+   */
+  Template getResponseTemplate(ConcurrentContentSigner signer) {
+    return responseTemplates.get(signer);
+  }
+
   @Override
   public int getMaxRequestSize() {
     return requestOption.getMaxRequestSize();
@@ -20,7 +20,9 @@ package org.xipki.ocsp.server;
 import java.io.IOException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -32,6 +34,7 @@ import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.asn1.x509.Certificate;
 import org.xipki.ocsp.server.type.ResponderID;
 import org.xipki.ocsp.server.type.TaggedCertSequence;
+import org.xipki.security.AlgorithmCode;
 import org.xipki.security.ConcurrentContentSigner;
 import org.xipki.security.HashAlgo;
 import org.xipki.util.Args;
@@ -62,7 +65,14 @@ class ResponderSigner {
 
   private final boolean macSigner;
 
+  private final Map<ConcurrentContentSigner, BatchSigner> batchSigners;
+
   ResponderSigner(List<ConcurrentContentSigner> signers) throws CertificateException, IOException {
+    this(signers, null);
+  }
+
+  ResponderSigner(List<ConcurrentContentSigner> signers, OcspServerConf.BatchSigning batchSigning)
+      throws CertificateException, IOException {
     this.signers = Args.notEmpty(signers, "signers");
     ConcurrentContentSigner firstSigner = signers.get(0);
     this.macSigner = firstSigner.isMac();
@@ -115,12 +125,25 @@ class ResponderSigner {
       String algoName = signer.getAlgorithmName();
       algoSignerMap.put(algoName, signer);
     }
+
+    if (batchSigning == null) {
+      batchSigners = Collections.emptyMap();
+    } else {
+      batchSigners = new IdentityHashMap<>();
+      for (ConcurrentContentSigner signer : signers) {
+        batchSigners.put(signer, new BatchSigner(signer, batchSigning));
+      }
+    }
   } // constructor
 
   public boolean isMacSigner() {
     return macSigner;
   }
 
+  public List<ConcurrentContentSigner> getSigners() {
+    return Collections.unmodifiableList(signers);
+  }
+
   public ConcurrentContentSigner getFirstSigner() {
     return signers.get(0);
   }
@@ -140,6 +163,34 @@ class ResponderSigner {
     return null;
   }
 
+  public ConcurrentContentSigner getSigner(AlgorithmCode sigAlg) {
+    for (ConcurrentContentSigner signer : signers) {
+      if (signer.getAlgorithmCode() == sigAlg) {
+        return signer;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the batch signer of the given signer.
+   * @param signer
+   *          One of the signers of this ResponderSigner.
+   * @return the batch signer, or {@code null} if batch signing is not enabled.
+   */
+  public BatchSigner getBatchSigner(ConcurrentContentSigner signer) {
+    return batchSigners.get(signer);
+  }
+
+  /**
+   * Stops the threads of the batch signers.
+   */
+  public void close() {
+    for (BatchSigner batchSigner : batchSigners.values()) {
+      batchSigner.close();
+    }
+  }
+
   public ResponderID getResponderId(boolean byName) {
     return byName ? responderIdByName :  responderIdByKey;
   }
@@ -0,0 +1,194 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.server.store.ResponseCacher;
+import org.xipki.ocsp.server.store.ResponseCacher.CachedResponseIdent;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Signs the cached OCSP responses again before they expire, so that the clients will
+ * be served from the cache also after the nextUpdate of the previous response.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class ResponsePreSigner implements Closeable {
+
+  private class PreSignService implements Runnable {
+
+    @Override
+    public void run() {
+      if (!inProcess.compareAndSet(false, true)) {
+        return;
+      }
+
+      try {
+        preSign();
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "error while pre-signing the cached OCSP responses");
+      } finally {
+        inProcess.set(false);
+      }
+    }
+
+  } // class PreSignService
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponsePreSigner.class);
+
+  private final OcspServerImpl server;
+
+  private final ResponseCacher responseCacher;
+
+  private final OcspServerConf.ResponsePreSigning conf;
+
+  private final long nanosPerSign;
+
+  private final AtomicBoolean inProcess = new AtomicBoolean(false);
+
+  private long nextSignNanos;
+
+  private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+
+  private ScheduledFuture<?> preSignService;
+
+  private ExecutorService signExecutor;
+
+  ResponsePreSigner(OcspServerImpl server, ResponseCacher responseCacher,
+      OcspServerConf.ResponsePreSigning conf) {
+    this.server = Args.notNull(server, "server");
+    this.responseCacher = Args.notNull(responseCacher, "responseCacher");
+    this.conf = Args.notNull(conf, "conf");
+    this.nanosPerSign = TimeUnit.SECONDS.toNanos(1) / conf.getMaxSignsPerSecond();
+    this.nextSignNanos = System.nanoTime();
+  }
+
+  void init() {
+    signExecutor = Executors.newFixedThreadPool(conf.getThreads());
+
+    scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
+    scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
+    preSignService = scheduledThreadPoolExecutor.scheduleWithFixedDelay(
+        new PreSignService(), 60, conf.getInterval(), TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void close() {
+    if (preSignService != null) {
+      preSignService.cancel(false);
+      preSignService = null;
+    }
+
+    if (scheduledThreadPoolExecutor != null) {
+      scheduledThreadPoolExecutor.shutdown();
+      scheduledThreadPoolExecutor = null;
+    }
+
+    if (signExecutor != null) {
+      signExecutor.shutdownNow();
+      signExecutor = null;
+    }
+  }
+
+  private void preSign() throws Exception {
+    if (!responseCacher.isOnService()) {
+      LOG.warn("OCSP response cacher is out of service, skip pre-signing");
+      return;
+    }
+
+    final long maxNextUpdate = System.currentTimeMillis() / 1000 + conf.getAheadPeriod();
+
+    long startTime = System.currentTimeMillis();
+    int numSigned = 0;
+    int numSkipped = 0;
+
+    long minId = 0;
+    while (true) {
+      List<CachedResponseIdent> idents =
+          responseCacher.getExpiringResponses(minId, maxNextUpdate);
+      if (idents.isEmpty()) {
+        break;
+      }
+
+      List<Callable<Boolean>> tasks = new ArrayList<>(idents.size());
+      for (final CachedResponseIdent ident : idents) {
+        minId = Math.max(minId, ident.getId());
+        tasks.add(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            waitForSignPermit();
+            return server.preSignResponse(ident);
+          }
+        });
+      }
+
+      for (Future<Boolean> future : signExecutor.invokeAll(tasks)) {
+        boolean signed;
+        try {
+          signed = future.get();
+        } catch (Exception ex) {
+          LogUtil.warn(LOG, ex, "could not pre-sign OCSP response");
+          signed = false;
+        }
+
+        if (signed) {
+          numSigned++;
+        } else {
+          numSkipped++;
+        }
+      }
+    }
+
+    LOG.info("pre-signed {} OCSP responses with nextUpdate < {}, skipped {}, took {} ms",
+        numSigned, maxNextUpdate, numSkipped, System.currentTimeMillis() - startTime);
+  }
+
+  /**
+   * Limits the signing operations to the configured maxSignsPerSecond.
+   */
+  private void waitForSignPermit() throws InterruptedException {
+    long signNanos;
+    synchronized (this) {
+      long now = System.nanoTime();
+      signNanos = Math.max(now, nextSignNanos);
+      nextSignNanos = signNanos + nanosPerSign;
+    }
+
+    long waitNanos = signNanos - System.nanoTime();
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+}
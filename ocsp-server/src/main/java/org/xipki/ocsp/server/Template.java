@@ -18,6 +18,8 @@
 package org.xipki.ocsp.server;
 
 import java.io.IOException;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -31,12 +33,23 @@ import org.xipki.ocsp.server.type.ASN1Type;
 import org.xipki.ocsp.server.type.ExtendedExtension;
 import org.xipki.ocsp.server.type.Extension;
 import org.xipki.ocsp.server.type.OID;
+import org.xipki.ocsp.server.type.ResponderID;
+import org.xipki.ocsp.server.type.TaggedCertSequence;
 import org.xipki.ocsp.server.type.WritableOnlyExtension;
+import org.xipki.security.ConcurrentBagEntrySigner;
+import org.xipki.security.ConcurrentContentSigner;
 import org.xipki.security.CrlReason;
 import org.xipki.security.HashAlgo;
+import org.xipki.security.NoIdleSignerException;
+import org.xipki.util.Args;
 
 /**
- * TODO.
+ * Pre-encoded parts of the OCSP responses. The static methods provide the templates of
+ * the certificate status and extensions, an instance the constant parts of the responses
+ * of one responder and one signer: the ResponderID in the ResponseData, and the suffix
+ * of the BasicOCSPResponse after the tbsResponseData (signatureAlgorithm, header of the
+ * signature and the embedded certificates).
+ *
  * @author Lijun Liao
  * @since 2.2.0
  */
@@ -55,6 +68,8 @@ class Template {
 
   private static final byte[] reasonPrefix = new byte[]{(byte) 0xa0, 0x03, 0x0a, 0x01};
 
+  private static final byte[] EMPTY = new byte[0];
+
   static {
     // CertHash
     for (HashAlgo h : HashAlgo.values()) {
@@ -83,6 +98,121 @@ class Template {
     extension.write(extnArchiveCutof, 0);
   }
 
+  private final ResponderID responderId;
+
+  private final ConcurrentContentSigner signer;
+
+  private final BatchSigner batchSigner;
+
+  private final byte[] encodedCerts;
+
+  // -1 if the length of the signature is not constant, e.g. ECDSA and DSA
+  private final int signatureLength;
+
+  // signatureAlgorithm, followed by the header of the signature if signatureLength != -1
+  private volatile byte[] encodedSigAlgIdPrefix;
+
+  private volatile byte[] encodedSigAlgId;
+
+  Template(ResponderID responderId, TaggedCertSequence certsInResp,
+      ConcurrentContentSigner signer, BatchSigner batchSigner) {
+    this.responderId = Args.notNull(responderId, "responderId");
+    this.signer = Args.notNull(signer, "signer");
+    this.batchSigner = batchSigner;
+
+    if (certsInResp == null) {
+      this.encodedCerts = EMPTY;
+    } else {
+      this.encodedCerts = new byte[certsInResp.getEncodedLength()];
+      certsInResp.write(encodedCerts, 0);
+    }
+
+    PublicKey publicKey = signer.isMac() ? null : signer.getPublicKey();
+    this.signatureLength = (publicKey instanceof RSAPublicKey)
+        ? (((RSAPublicKey) publicKey).getModulus().bitLength() + 7) / 8 : -1;
+  }
+
+  ResponderID getResponderId() {
+    return responderId;
+  }
+
+  ConcurrentContentSigner getSigner() {
+    return signer;
+  }
+
+  /**
+   * Gets the batch signer.
+   * @return the batch signer, or {@code null} if batch signing is not enabled.
+   */
+  BatchSigner getBatchSigner() {
+    return batchSigner;
+  }
+
+  /**
+   * Gets the length of the BasicOCSPResponse after the tbsResponseData.
+   * @param sigLen
+   *          Length of the signature.
+   * @return the length of the suffix.
+   */
+  int getBasicResponseSuffixLength(int sigLen) throws NoIdleSignerException {
+    return getEncodedSigAlgId().length + ASN1Type.getLen(sigLen + 1) + encodedCerts.length;
+  }
+
+  /**
+   * Writes the BasicOCSPResponse after the tbsResponseData, namely the signatureAlgorithm,
+   * signature and the embedded certificates.
+   * @param signature
+   *          The signature.
+   * @param out
+   *          The output buffer.
+   * @param offset
+   *          Offset in the output buffer.
+   * @return number of written bytes.
+   */
+  int writeBasicResponseSuffix(byte[] signature, byte[] out, int offset)
+      throws NoIdleSignerException {
+    int idx = offset;
+    if (signature.length == signatureLength) {
+      idx += ASN1Type.arraycopy(getEncodedSigAlgIdPrefix(), out, idx);
+    } else {
+      idx += ASN1Type.arraycopy(getEncodedSigAlgId(), out, idx);
+      idx += ASN1Type.writeHeader((byte) 0x03, signature.length + 1, out, idx);
+      out[idx++] = 0x00; // skipping bits
+    }
+
+    idx += ASN1Type.arraycopy(signature, out, idx);
+    idx += ASN1Type.arraycopy(encodedCerts, out, idx);
+    return idx - offset;
+  }
+
+  private byte[] getEncodedSigAlgIdPrefix() throws NoIdleSignerException {
+    if (encodedSigAlgIdPrefix == null) {
+      byte[] sigAlgId = getEncodedSigAlgId();
+      int bodyLen = signatureLength + 1;
+      byte[] prefix = new byte[sigAlgId.length + ASN1Type.getHeaderLen(bodyLen) + 1];
+      int idx = ASN1Type.arraycopy(sigAlgId, prefix, 0);
+      idx += ASN1Type.writeHeader((byte) 0x03, bodyLen, prefix, idx);
+      prefix[idx] = 0x00; // skipping bits
+      encodedSigAlgIdPrefix = prefix;
+    }
+    return encodedSigAlgIdPrefix;
+  }
+
+  /**
+   * Gets the encoded signatureAlgorithm. The signer is borrowed only the first time.
+   */
+  private byte[] getEncodedSigAlgId() throws NoIdleSignerException {
+    if (encodedSigAlgId == null) {
+      ConcurrentBagEntrySigner signer0 = signer.borrowSigner();
+      try {
+        encodedSigAlgId = signer0.value().getEncodedAlgorithmIdentifier();
+      } finally {
+        signer.requiteSigner(signer0);
+      }
+    }
+    return encodedSigAlgId;
+  }
+
   public static WritableOnlyExtension getCertHashExtension(HashAlgo hashAlgo, byte[] certHash) {
     if (hashAlgo.getLength() != certHash.length) {
       throw new IllegalArgumentException("hashAlgo and certHash do not match");
@@ -0,0 +1,43 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+
+import org.xipki.ocsp.api.RequestIssuer;
+
+/**
+ * Listener to be notified if the status of a certificate has been changed, e.g. the
+ * certificate has been revoked.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public interface CertStatusChangeListener {
+
+  /**
+   * Called if the status of the given certificate may have been changed. The same change
+   * may be notified more than once.
+   * @param issuer
+   *          Issuer of the certificate.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   */
+  void certStatusChanged(RequestIssuer issuer, BigInteger serialNumber);
+
+}
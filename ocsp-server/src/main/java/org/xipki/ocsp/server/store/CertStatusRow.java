@@ -0,0 +1,82 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.xipki.util.Base64;
+
+/**
+ * Status of a certificate as stored in the table CERT.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class CertStatusRow {
+
+  long notBefore;
+
+  long notAfter;
+
+  boolean revoked;
+
+  int reason;
+
+  long revTime;
+
+  long invalTime;
+
+  byte[] certHash;
+
+  /**
+   * Reads the status from the current row of the result set.
+   * @param rs
+   *          Result set containing the columns NBEFORE, NAFTER, REV, RR, RT, and optional
+   *          RIT and HASH.
+   * @param includeCertHash
+   *          Whether the column HASH is contained.
+   * @param includeRit
+   *          Whether the column RIT is contained.
+   * @return the certificate status.
+   */
+  static CertStatusRow read(ResultSet rs, boolean includeCertHash, boolean includeRit)
+      throws SQLException {
+    CertStatusRow row = new CertStatusRow();
+    row.notBefore = rs.getLong("NBEFORE");
+    row.notAfter = rs.getLong("NAFTER");
+    if (includeCertHash) {
+      String b64CertHash = rs.getString("HASH");
+      if (b64CertHash != null) {
+        row.certHash = Base64.decodeFast(b64CertHash);
+      }
+    }
+
+    row.revoked = rs.getBoolean("REV");
+    if (row.revoked) {
+      row.reason = rs.getInt("RR");
+      row.revTime = rs.getLong("RT");
+      if (includeRit) {
+        row.invalTime = rs.getLong("RIT");
+      }
+    }
+    return row;
+  }
+
+}
@@ -20,9 +20,10 @@ package org.xipki.ocsp.server.store;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Date;
@@ -69,6 +70,33 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
 
   } // StoreUpdateService
 
+  private class CrlFileWatchTask implements Runnable {
+
+    private final boolean crlFileReplaced;
+
+    CrlFileWatchTask(boolean crlFileReplaced) {
+      this.crlFileReplaced = crlFileReplaced;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (crlFileReplaced) {
+          // the CRL file has been renamed to crlFile, import it as if .UPDATEME was created
+          try {
+            Files.createFile(Paths.get(crlFilename + ".UPDATEME"));
+          } catch (FileAlreadyExistsException ex) {
+            // do nothing
+          }
+        }
+        updateStore(datasource);
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "error while updating the CRL of store " + name);
+      }
+    }
+
+  } // class CrlFileWatchTask
+
   private static final Logger LOG = LoggerFactory.getLogger(CrlDbCertStatusStore.class);
 
   private final AtomicBoolean crlUpdateInProcess = new AtomicBoolean(false);
@@ -83,9 +111,13 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
 
   private String certsDirName;
 
-  private boolean crlUpdated;
+  private int importBatchSize;
+
+  private CrlDirectoryWatcher crlDirectoryWatcher;
+
+  private volatile boolean crlUpdated;
 
-  private boolean crlUpdateFailed;
+  private volatile boolean crlUpdateFailed;
 
   /**
    * Initialize the store.
@@ -110,6 +142,14 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
    * <li>certsDir: optional
    *   <p/>
    *   Folder containing the DER-encoded certificates suffixed with ".der" and ".crt"</li>
+   * <li>importBatchSize: optional, default to 1000
+   *   <p/>
+   *   Number of CRL entries imported in one transaction.</li>
+   * <li>watchCrlDir: optional, default to false
+   *   <p/>
+   *   Whether to watch the folder of crlFile. If true, the CRL will be imported within
+   *   seconds after the file ${crlFile}.UPDATEME has been created or a new CRL has been
+   *   renamed to crlFile. Otherwise these files are checked every minute.</li>
    *  </ul>
    * @param datasource DataSource.
    */
@@ -127,8 +167,39 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
     str = getStrValue(sourceConf, "issuerCertFile", false);
     this.issuerCert = (str == null) ? null : parseCert(str);
 
+    Object objValue = sourceConf.get("importBatchSize");
+    this.importBatchSize = (objValue == null) ? 1000 : Integer.parseInt(objValue.toString());
+    if (importBatchSize < 1) {
+      throw new IllegalArgumentException("importBatchSize may not be less than 1");
+    }
+
     updateStore(datasource);
     super.init(sourceConf, datasource);
+
+    objValue = sourceConf.get("watchCrlDir");
+    if (objValue != null && Boolean.parseBoolean(objValue.toString())) {
+      try {
+        CrlDirectoryWatcher watcher = CrlDirectoryWatcher.getInstance();
+        watcher.register(Paths.get(crlFilename + ".UPDATEME"), false,
+            new CrlFileWatchTask(false));
+        // a new CRL written to another file and renamed to crlFile
+        watcher.register(Paths.get(crlFilename), true, new CrlFileWatchTask(true));
+        this.crlDirectoryWatcher = watcher;
+      } catch (IOException ex) {
+        LogUtil.warn(LOG, ex, "could not watch the folder of CRL file " + crlFilename
+            + ", check it every minute");
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    if (crlDirectoryWatcher != null) {
+      crlDirectoryWatcher.unregister(Paths.get(crlFilename + ".UPDATEME"));
+      crlDirectoryWatcher.unregister(Paths.get(crlFilename));
+      crlDirectoryWatcher = null;
+    }
+    super.close();
   }
 
   private static String getStrValue(Map<String, ? extends Object> sourceConf,
@@ -175,11 +246,11 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
     }
   }
 
-  private synchronized void updateStore(DataSourceWrapper datasource) {
-    if (crlUpdateInProcess.get()) {
-      return;
-    }
-
+  /**
+   * Imports the CRL if the file ${crlFile}.UPDATEME exists. If the CRL is being imported
+   * by another thread, this thread will check the file again after the import.
+   */
+  private void updateStore(DataSourceWrapper datasource) {
     File updateMeFile = new File(crlFilename + ".UPDATEME");
     if (!updateMeFile.exists()) {
       LOG.info("The CRL will not be updated. Create new file {} to force the update",
@@ -187,8 +258,26 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
       return;
     }
 
+    while (updateMeFile.exists()) {
+      if (!crlUpdateInProcess.compareAndSet(false, true)) {
+        return;
+      }
+
+      try {
+        while (updateMeFile.exists()) {
+          importCrl(datasource, updateMeFile);
+        }
+      } finally {
+        crlUpdateInProcess.set(false);
+      }
+    }
+  }
+
+  private void importCrl(DataSourceWrapper datasource, File updateMeFile) {
+    // delete the file before the import, so that a new request during the import is kept.
+    updateMeFile.delete();
+
     Boolean updateCrlSuccessful = null;
-    crlUpdateInProcess.set(true);
 
     try {
       File fullCrlFile = new File(crlFilename);
@@ -201,7 +290,8 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
       LOG.info("UPDATE_CERTSTORE: a newer CRL is available");
       updateCrlSuccessful = false;
 
-      X509CRL crl = X509Util.parseCrl(new File(crlFilename));
+      // parse only the header, the revoked certificates are read while importing
+      CrlStreamParser crl = new CrlStreamParser(new File(crlFilename));
 
       File revFile = new File(crlFilename + ".revocation");
       CertRevocationInfo caRevInfo = null;
@@ -228,11 +318,13 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
       }
 
       ImportCrl importCrl = new ImportCrl(datasource, crl, crlUrl,
-          caCert, issuerCert, caRevInfo, certsDirName);
+          caCert, issuerCert, caRevInfo, certsDirName, importBatchSize);
       updateCrlSuccessful = importCrl.importCrlToOcspDb();
       crlUpdated = true;
       if (updateCrlSuccessful) {
         crlUpdateFailed = false;
+        // certificates not contained in the new CRL have been deleted
+        requireFullReload();
         LOG.info("updated CertStore {} successfully", name);
       } else {
         crlUpdateFailed = true;
@@ -243,8 +335,6 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
       crlUpdateFailed = true;
       crlUpdated = true;
     } finally {
-      updateMeFile.delete();
-      crlUpdateInProcess.set(false);
       if (updateCrlSuccessful != null) {
         if (updateCrlSuccessful.booleanValue()) {
           LOG.info("UPDATE_CRL: successful");
@@ -253,6 +343,6 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
         }
       }
     }
-  } // method initializeStore
+  } // method importCrl
 
 }
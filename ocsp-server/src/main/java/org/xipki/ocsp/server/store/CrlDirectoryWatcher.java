@@ -0,0 +1,237 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Watches the folders of the CRL files, so that new CRLs are imported within seconds
+ * instead of at the next scheduled check. One watcher thread serves all CRL based
+ * stores, the tasks of different stores run in parallel on a bounded pool. The imports into
+ * the same database run concurrently, only the allocation of IDs is serialized by
+ * {@link ImportCrl}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class CrlDirectoryWatcher implements Runnable {
+
+  private static class Listener {
+
+    private final Runnable task;
+
+    private final boolean createOnly;
+
+    Listener(Runnable task, boolean createOnly) {
+      this.task = task;
+      this.createOnly = createOnly;
+    }
+
+  } // class Listener
+
+  private static final Logger LOG = LoggerFactory.getLogger(CrlDirectoryWatcher.class);
+
+  private static CrlDirectoryWatcher instance;
+
+  private final WatchService watchService;
+
+  private final ExecutorService executor;
+
+  private final Map<WatchKey, Path> dirs = new ConcurrentHashMap<>();
+
+  private final Map<Path, Listener> listeners = new ConcurrentHashMap<>();
+
+  private final Thread thread;
+
+  private CrlDirectoryWatcher() throws IOException {
+    this.watchService = FileSystems.getDefault().newWatchService();
+    int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+    ThreadPoolExecutor tmpExecutor = new ThreadPoolExecutor(threads, threads, 60,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          private final AtomicInteger index = new AtomicInteger(0);
+
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "crl-import-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    // do not keep idle threads
+    tmpExecutor.allowCoreThreadTimeOut(true);
+    this.executor = tmpExecutor;
+    this.thread = new Thread(this, "crl-directory-watcher");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  static synchronized CrlDirectoryWatcher getInstance() throws IOException {
+    if (instance == null) {
+      instance = new CrlDirectoryWatcher();
+    }
+    return instance;
+  }
+
+  /**
+   * Registers the task to be executed if the given file is created or modified.
+   * @param file
+   *          The watched file.
+   * @param createOnly
+   *          Whether only the creation of the file, e.g. by renaming another file to it,
+   *          triggers the task.
+   * @param task
+   *          The task to be executed.
+   * @throws IOException
+   *           if the folder of the file could not be watched.
+   */
+  synchronized void register(Path file, boolean createOnly, Runnable task) throws IOException {
+    Args.notNull(task, "task");
+    Path path = Args.notNull(file, "file").toAbsolutePath().normalize();
+    Path dir = path.getParent();
+    // registering the same folder again returns the same key
+    WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY);
+    dirs.put(key, dir);
+    listeners.put(path, new Listener(task, createOnly));
+    LOG.info("watching file {}", path);
+  }
+
+  /**
+   * Removes the task of the given file. The watcher is closed if no file is watched.
+   * @param file
+   *          The watched file.
+   */
+  synchronized void unregister(Path file) {
+    Path path = Args.notNull(file, "file").toAbsolutePath().normalize();
+    if (listeners.remove(path) == null) {
+      return;
+    }
+
+    Path dir = path.getParent();
+    boolean dirWatched = false;
+    for (Path m : listeners.keySet()) {
+      if (dir.equals(m.getParent())) {
+        dirWatched = true;
+        break;
+      }
+    }
+
+    if (!dirWatched) {
+      for (Map.Entry<WatchKey, Path> entry : dirs.entrySet()) {
+        if (dir.equals(entry.getValue())) {
+          entry.getKey().cancel();
+          dirs.remove(entry.getKey());
+        }
+      }
+    }
+
+    if (listeners.isEmpty()) {
+      close();
+    }
+  }
+
+  private void close() {
+    synchronized (CrlDirectoryWatcher.class) {
+      if (instance == this) {
+        instance = null;
+      }
+    }
+
+    try {
+      watchService.close();
+    } catch (IOException ex) {
+      LogUtil.warn(LOG, ex, "could not close the WatchService");
+    }
+    executor.shutdown();
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (ClosedWatchServiceException ex) {
+        return;
+      } catch (InterruptedException ex) {
+        LOG.error("interrupted: {}", ex.getMessage());
+        return;
+      }
+
+      Path dir = dirs.get(key);
+      if (dir != null) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+          WatchEvent.Kind<?> kind = event.kind();
+          if (kind == StandardWatchEventKinds.OVERFLOW) {
+            // events may have been lost, trigger all tasks of this folder
+            for (Map.Entry<Path, Listener> entry : listeners.entrySet()) {
+              if (dir.equals(entry.getKey().getParent())) {
+                execute(entry.getValue());
+              }
+            }
+            continue;
+          }
+
+          Listener listener = listeners.get(dir.resolve((Path) event.context()));
+          if (listener == null) {
+            continue;
+          }
+
+          if (listener.createOnly && kind != StandardWatchEventKinds.ENTRY_CREATE) {
+            continue;
+          }
+
+          execute(listener);
+        }
+      }
+
+      key.reset();
+    }
+  }
+
+  private void execute(Listener listener) {
+    try {
+      executor.execute(listener.task);
+    } catch (RejectedExecutionException ex) {
+      LOG.warn("could not execute task, the watcher has been closed");
+    }
+  }
+
+}
@@ -0,0 +1,489 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.bouncycastle.asn1.ASN1Enumerated;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.Time;
+import org.xipki.security.CrlReason;
+import org.xipki.security.util.AlgorithmUtil;
+import org.xipki.security.util.X509Util;
+import org.xipki.util.Args;
+import org.xipki.util.IoUtil;
+
+/**
+ * Parser of X.509 CRL which does not load the whole CRL in the heap. The DER-encoded CRL
+ * file is memory-mapped, and the revoked certificates are parsed one by one while
+ * iterating over them.
+ *
+ * <p>The constructor parses only the fields before and after the revokedCertificates.
+ * The signature is verified over the mapped TBSCertList.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class CrlStreamParser {
+
+  /**
+   * Entry of the revokedCertificates.
+   */
+  static class RevokedCert {
+
+    private final BigInteger serialNumber;
+
+    private final Date revocationDate;
+
+    private final CrlReason reason;
+
+    private final Date invalidityDate;
+
+    private final X500Name certificateIssuer;
+
+    private RevokedCert(BigInteger serialNumber, Date revocationDate, CrlReason reason,
+        Date invalidityDate, X500Name certificateIssuer) {
+      this.serialNumber = serialNumber;
+      this.revocationDate = revocationDate;
+      this.reason = reason;
+      this.invalidityDate = invalidityDate;
+      this.certificateIssuer = certificateIssuer;
+    }
+
+    BigInteger getSerialNumber() {
+      return serialNumber;
+    }
+
+    Date getRevocationDate() {
+      return revocationDate;
+    }
+
+    CrlReason getReason() {
+      return reason;
+    }
+
+    Date getInvalidityDate() {
+      return invalidityDate;
+    }
+
+    /**
+     * Returns the certificate issuer of this entry in an indirect CRL. As specified in
+     * RFC 5280, an entry without the extension certificateIssuer inherits the issuer of
+     * the previous entry.
+     * @return the certificate issuer, or {@code null} if the CRL issuer is the
+     *     certificate issuer.
+     */
+    X500Name getCertificateIssuer() {
+      return certificateIssuer;
+    }
+
+  } // class RevokedCert
+
+  private class RevokedCertIterator implements Iterator<RevokedCert> {
+
+    private int offset = revokedCertsOffset;
+
+    private X500Name certificateIssuer;
+
+    @Override
+    public boolean hasNext() {
+      return offset < revokedCertsEnd;
+    }
+
+    @Override
+    public RevokedCert next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      try {
+        Header hdr = readHeader(offset, TAG_SEQUENCE);
+        ASN1Sequence seq = ASN1Sequence.getInstance(readBytes(offset, hdr.end));
+        offset = hdr.end;
+
+        BigInteger serialNumber = ASN1Integer.getInstance(seq.getObjectAt(0)).getPositiveValue();
+        Date revocationDate = Time.getInstance(seq.getObjectAt(1)).getDate();
+        CrlReason reason = CrlReason.UNSPECIFIED;
+        Date invalidityDate = null;
+
+        if (seq.size() > 2) {
+          Extensions extns = Extensions.getInstance(seq.getObjectAt(2));
+          Extension extn = extns.getExtension(Extension.reasonCode);
+          if (extn != null) {
+            int code = ASN1Enumerated.getInstance(extn.getParsedValue()).getValue().intValue();
+            reason = CrlReason.forReasonCode(code);
+          }
+
+          extn = extns.getExtension(Extension.invalidityDate);
+          if (extn != null) {
+            invalidityDate = ASN1GeneralizedTime.getInstance(extn.getParsedValue()).getDate();
+          }
+
+          extn = extns.getExtension(Extension.certificateIssuer);
+          if (extn != null) {
+            certificateIssuer = getDirectoryName(GeneralNames.getInstance(extn.getParsedValue()));
+          }
+        }
+
+        return new RevokedCert(serialNumber, revocationDate, reason, invalidityDate,
+            certificateIssuer);
+      } catch (IOException | ParseException | IllegalArgumentException ex) {
+        throw new IllegalStateException("invalid revokedCertificates entry at offset "
+            + offset + ": " + ex.getMessage(), ex);
+      }
+    }
+
+  } // class RevokedCertIterator
+
+  private static class Header {
+
+    private final int tag;
+
+    private final int readerIndex;
+
+    private final int end;
+
+    Header(int tag, int readerIndex, int len) {
+      this.tag = tag;
+      this.readerIndex = readerIndex;
+      this.end = readerIndex + len;
+    }
+
+  } // class Header
+
+  private static final int TAG_INTEGER = 0x02;
+
+  private static final int TAG_BITSTRING = 0x03;
+
+  private static final int TAG_UTCTIME = 0x17;
+
+  private static final int TAG_GENERALIZEDTIME = 0x18;
+
+  private static final int TAG_SEQUENCE = 0x30;
+
+  private static final int TAG_CONTEXT_CONSTRUCTED_0 = 0xA0;
+
+  private final ByteBuffer buffer;
+
+  private final int tbsOffset;
+
+  private final int tbsEnd;
+
+  private final int revokedCertsOffset;
+
+  private final int revokedCertsEnd;
+
+  private final int version;
+
+  private final AlgorithmIdentifier algorithmIdentifier;
+
+  private final X500Name issuer;
+
+  private final Date thisUpdate;
+
+  private final Date nextUpdate;
+
+  private final Extensions crlExtensions;
+
+  private final byte[] signature;
+
+  /**
+   * Constructor.
+   * @param crlFile
+   *          DER- or PEM-encoded CRL file. The DER-encoded file is memory-mapped, the
+   *          PEM-encoded file will be decoded in the heap.
+   * @throws IOException
+   *           if the file could not be read or does not contain a valid CRL.
+   */
+  CrlStreamParser(File crlFile) throws IOException {
+    this.buffer = read(IoUtil.expandFilepath(Args.notNull(crlFile, "crlFile")));
+
+    try {
+      Header crlHdr = readHeader(0, TAG_SEQUENCE);
+      Header tbsHdr = readHeader(crlHdr.readerIndex, TAG_SEQUENCE);
+      this.tbsOffset = crlHdr.readerIndex;
+      this.tbsEnd = tbsHdr.end;
+
+      // version
+      int offset = tbsHdr.readerIndex;
+      Header hdr = readHeader(offset);
+      if (hdr.tag == TAG_INTEGER) {
+        this.version = ASN1Integer.getInstance(readBytes(offset, hdr.end)).getValue().intValue();
+        offset = hdr.end;
+        hdr = readHeader(offset);
+      } else {
+        this.version = 0;
+      }
+
+      // signature
+      assertTag(hdr, TAG_SEQUENCE);
+      AlgorithmIdentifier tbsSigAlgId = AlgorithmIdentifier.getInstance(
+          readBytes(offset, hdr.end));
+      offset = hdr.end;
+
+      // issuer
+      hdr = readHeader(offset, TAG_SEQUENCE);
+      this.issuer = X500Name.getInstance(readBytes(offset, hdr.end));
+      offset = hdr.end;
+
+      // thisUpdate
+      hdr = readHeader(offset);
+      this.thisUpdate = readTime(offset, hdr);
+      offset = hdr.end;
+
+      Date tmpNextUpdate = null;
+      int tmpRevokedCertsOffset = 0;
+      int tmpRevokedCertsEnd = 0;
+      Extensions tmpCrlExtensions = null;
+
+      if (offset < tbsEnd) {
+        hdr = readHeader(offset);
+        // nextUpdate
+        if (hdr.tag == TAG_UTCTIME || hdr.tag == TAG_GENERALIZEDTIME) {
+          tmpNextUpdate = readTime(offset, hdr);
+          offset = hdr.end;
+          hdr = (offset < tbsEnd) ? readHeader(offset) : null;
+        }
+
+        // revokedCertificates
+        if (hdr != null && hdr.tag == TAG_SEQUENCE) {
+          tmpRevokedCertsOffset = hdr.readerIndex;
+          tmpRevokedCertsEnd = hdr.end;
+          offset = hdr.end;
+          hdr = (offset < tbsEnd) ? readHeader(offset) : null;
+        }
+
+        // crlExtensions
+        if (hdr != null && hdr.tag == TAG_CONTEXT_CONSTRUCTED_0) {
+          tmpCrlExtensions = Extensions.getInstance(readBytes(hdr.readerIndex, hdr.end));
+          offset = hdr.end;
+        }
+
+        if (offset != tbsEnd) {
+          throw new IOException("invalid TBSCertList: unexpected content at " + offset);
+        }
+      }
+
+      this.nextUpdate = tmpNextUpdate;
+      this.revokedCertsOffset = tmpRevokedCertsOffset;
+      this.revokedCertsEnd = tmpRevokedCertsEnd;
+      this.crlExtensions = tmpCrlExtensions;
+
+      // signatureAlgorithm
+      offset = tbsEnd;
+      hdr = readHeader(offset, TAG_SEQUENCE);
+      this.algorithmIdentifier = AlgorithmIdentifier.getInstance(readBytes(offset, hdr.end));
+      if (!algorithmIdentifier.equals(tbsSigAlgId)) {
+        throw new IOException("signatureAlgorithm and TBSCertList.signature differ");
+      }
+      offset = hdr.end;
+
+      // signatureValue
+      hdr = readHeader(offset, TAG_BITSTRING);
+      this.signature = DERBitString.getInstance(readBytes(offset, hdr.end)).getBytes();
+    } catch (IllegalArgumentException | IllegalStateException ex) {
+      throw new IOException("invalid CRL: " + ex.getMessage(), ex);
+    }
+  }
+
+  int getVersion() {
+    return version;
+  }
+
+  AlgorithmIdentifier getAlgorithmIdentifier() {
+    return algorithmIdentifier;
+  }
+
+  X500Name getIssuer() {
+    return issuer;
+  }
+
+  Date getThisUpdate() {
+    return thisUpdate;
+  }
+
+  Date getNextUpdate() {
+    return nextUpdate;
+  }
+
+  /**
+   * Returns the crlExtensions.
+   * @return the crlExtensions, may be {@code null}.
+   */
+  Extensions getCrlExtensions() {
+    return crlExtensions;
+  }
+
+  /**
+   * Verifies the signature over the TBSCertList.
+   * @param publicKey
+   *          Public key of the CRL issuer.
+   * @return whether the signature is valid.
+   * @throws NoSuchAlgorithmException
+   *           if the signature algorithm is not supported.
+   * @throws InvalidKeyException
+   *           if the public key is invalid.
+   * @throws SignatureException
+   *           if the signature could not be verified.
+   */
+  boolean verifySignature(PublicKey publicKey)
+      throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+    Signature verifier = Signature.getInstance(
+        AlgorithmUtil.getSignatureAlgoName(algorithmIdentifier));
+    verifier.initVerify(Args.notNull(publicKey, "publicKey"));
+
+    ByteBuffer tbs = buffer.duplicate();
+    tbs.limit(tbsEnd);
+    tbs.position(tbsOffset);
+    verifier.update(tbs);
+    return verifier.verify(signature);
+  }
+
+  /**
+   * Returns the iterator over the revokedCertificates. The entries are parsed while
+   * iterating, an invalid entry causes an {@link IllegalStateException}.
+   * @return the iterator over the revokedCertificates.
+   */
+  Iterator<RevokedCert> revokedCertificates() {
+    return new RevokedCertIterator();
+  }
+
+  private static ByteBuffer read(File file) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      if (size < 2) {
+        throw new IOException("file " + file.getPath() + " is too short");
+      }
+
+      ByteBuffer first = ByteBuffer.allocate(1);
+      channel.read(first, 0);
+      if (first.get(0) == TAG_SEQUENCE) {
+        if (size > Integer.MAX_VALUE) {
+          throw new IOException("file " + file.getPath() + " is too large");
+        }
+        // the mapping stays valid after the channel is closed
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+    } finally {
+      channel.close();
+    }
+
+    // PEM-encoded
+    return ByteBuffer.wrap(X509Util.toDerEncoded(IoUtil.read(file)));
+  }
+
+  private Header readHeader(int offset, int expectedTag) throws IOException {
+    Header hdr = readHeader(offset);
+    assertTag(hdr, expectedTag);
+    return hdr;
+  }
+
+  private Header readHeader(int offset) throws IOException {
+    final int limit = buffer.limit();
+    if (offset + 2 > limit) {
+      throw new IOException("unexpected end of CRL at " + offset);
+    }
+
+    int tag = buffer.get(offset) & 0xFF;
+    int idx = offset + 1;
+    int len = buffer.get(idx++) & 0xFF;
+    if (len > 0x7F) {
+      int numBytes = len & 0x7F;
+      if (numBytes == 0 || numBytes > 4) {
+        throw new IOException("invalid length at " + offset);
+      }
+
+      if (idx + numBytes > limit) {
+        throw new IOException("unexpected end of CRL at " + offset);
+      }
+
+      len = 0;
+      for (int i = 0; i < numBytes; i++) {
+        len = (len << 8) | (buffer.get(idx++) & 0xFF);
+      }
+
+      if (len < 0) {
+        throw new IOException("invalid length at " + offset);
+      }
+    }
+
+    if ((long) idx + len > limit) {
+      throw new IOException("length of object at " + offset + " exceeds the CRL");
+    }
+
+    return new Header(tag, idx, len);
+  }
+
+  private static void assertTag(Header hdr, int expectedTag) throws IOException {
+    if (hdr.tag != expectedTag) {
+      throw new IOException("invalid tag " + Integer.toHexString(hdr.tag) + ", expected "
+          + Integer.toHexString(expectedTag));
+    }
+  }
+
+  private byte[] readBytes(int from, int to) {
+    byte[] bytes = new byte[to - from];
+    ByteBuffer dup = buffer.duplicate();
+    dup.position(from);
+    dup.get(bytes);
+    return bytes;
+  }
+
+  private Date readTime(int offset, Header hdr) throws IOException {
+    if (hdr.tag != TAG_UTCTIME && hdr.tag != TAG_GENERALIZEDTIME) {
+      throw new IOException("invalid tag " + Integer.toHexString(hdr.tag) + " of Time");
+    }
+    return Time.getInstance(ASN1Primitive.fromByteArray(readBytes(offset, hdr.end))).getDate();
+  }
+
+  private static X500Name getDirectoryName(GeneralNames names) {
+    for (GeneralName name : names.getNames()) {
+      if (name.getTagNo() == GeneralName.directoryName) {
+        return X500Name.getInstance(name.getName());
+      }
+    }
+    return null;
+  }
+
+}
@@ -26,16 +26,20 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -56,7 +60,6 @@ import org.xipki.security.CrlReason;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
-import org.xipki.util.Base64;
 import org.xipki.util.CollectionUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
@@ -102,6 +105,8 @@ public class DbCertStatusStore extends OcspStore {
     @Override
     public void run() {
       updateIssuerStore();
+      updateInMemoryIndex();
+      processCertEvents();
     }
 
   } // class StoreUpdateService
@@ -110,6 +115,45 @@ public class DbCertStatusStore extends OcspStore {
 
   private static final Logger LOG = LoggerFactory.getLogger(DbCertStatusStore.class);
 
+  /**
+   * Numbers of serial numbers in the queries of multiple certificates. The list of serial
+   * numbers is padded to one of these sizes, so that only a few distinct SQL statements are
+   * prepared.
+   */
+  private static final int[] SERIALS_PER_QUERY = {1, 10, 100};
+
+  private static final int MAX_SERIALS_PER_QUERY =
+      SERIALS_PER_QUERY[SERIALS_PER_QUERY.length - 1];
+
+  /**
+   * SQL statements of the queries of multiple certificates, indexed by the position in
+   * {@link #SERIALS_PER_QUERY}, includeCertHash and includeRit.
+   */
+  private final String[] sqlCsMulti = new String[SERIALS_PER_QUERY.length * 4];
+
+  private static final long IN_MEMORY_FULL_RELOAD_INTERVAL_MS = 60L * 60 * 1000;
+
+  private static final long DFLT_IN_MEMORY_OVERLAP_SECONDS = 60;
+
+  /**
+   * The events in table CERT_EVENT are read with this overlap to tolerate the clock skew
+   * between CA and OCSP responder, and the transactions committed after the last read.
+   */
+  private static final long CERT_EVENT_OVERLAP_MS = 60L * 1000;
+
+  private static final String SQL_CERT_EVENTS = "SELECT IID,SN FROM CERT_EVENT WHERE ETIME>=?";
+
+  /**
+   * The status of a certificate is read from the primary database, and not from a read
+   * replica or the in-memory status, within this period after its change has been read from
+   * the table CERT_EVENT. Otherwise a lagging replica would return the old status, and the
+   * response built from it would be cached again right after the cached responses of the
+   * certificate have been invalidated. The status changes of which no event is recorded,
+   * or which are read from a replica lagging more than this period, are still served stale
+   * from the replica, and the responses built from them are cached.
+   */
+  private static final long CERT_EVENT_PRIMARY_READ_MS = 5L * 60 * 1000;
+
   private final AtomicBoolean storeUpdateInProcess = new AtomicBoolean(false);
 
   private String sqlCsNoRit;
@@ -122,7 +166,9 @@ public class DbCertStatusStore extends OcspStore {
 
   private IssuerFilter issuerFilter;
 
-  private IssuerStore issuerStore;
+  private volatile IssuerStore issuerStore;
+
+  private volatile InMemoryCertStatusIndex inMemoryIndex;
 
   private HashAlgo certHashAlgo;
 
@@ -132,6 +178,17 @@ public class DbCertStatusStore extends OcspStore {
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  private boolean certEventSupported;
+
+  private long lastCertEventsReadTime;
+
+  private volatile CertStatusChangeListener certStatusChangeListener;
+
+  /**
+   * Time of reading the recent events of certificates, indexed by "{issuer id}:{hex serial}".
+   */
+  private final ConcurrentHashMap<String, Long> recentCertEvents = new ConcurrentHashMap<>();
+
   protected List<Runnable> getScheduledServices() {
     return Collections.emptyList();
   }
@@ -243,13 +300,122 @@ public class DbCertStatusStore extends OcspStore {
       }
     } catch (Throwable th) {
       LogUtil.error(LOG, th, "error while executing updateIssuerStore()");
-      initializationFailed = true;
+      if (issuerStore != null && inMemoryIndex != null && inMemoryIndex.isLoaded()) {
+        // the certificate status can still be answered from memory
+        LOG.warn("use the previously loaded issuers of store {}", name);
+      } else {
+        initializationFailed = true;
+      }
       initialized = true;
     } finally {
       storeUpdateInProcess.set(false);
     }
   } // method initIssuerStore
 
+  private void updateInMemoryIndex() {
+    InMemoryCertStatusIndex index = inMemoryIndex;
+    IssuerStore store = issuerStore;
+    if (index == null || store == null || !initialized || initializationFailed) {
+      return;
+    }
+
+    try {
+      index.refresh(store.getIds());
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th,
+          "error while refreshing the in-memory certificate status of store " + name);
+    }
+  }
+
+  /**
+   * Reads the changes of certificate status since the last read from the table CERT_EVENT,
+   * and notifies the {@link CertStatusChangeListener}.
+   */
+  private void processCertEvents() {
+    CertStatusChangeListener listener = certStatusChangeListener;
+    IssuerStore store = issuerStore;
+    if (listener == null || !certEventSupported || store == null
+        || !initialized || initializationFailed) {
+      return;
+    }
+
+    long readTime = System.currentTimeMillis();
+    Set<String> processed = new HashSet<>();
+    int num = 0;
+
+    long minEventReadTime = readTime - CERT_EVENT_PRIMARY_READ_MS;
+    for (Entry<String, Long> entry : recentCertEvents.entrySet()) {
+      if (entry.getValue() < minEventReadTime) {
+        recentCertEvents.remove(entry.getKey(), entry.getValue());
+      }
+    }
+
+    final String sql = SQL_CERT_EVENTS;
+    try {
+      PreparedStatement ps = preparedStatement(sql);
+      ResultSet rs = null;
+      try {
+        ps.setLong(1, lastCertEventsReadTime - CERT_EVENT_OVERLAP_MS);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          int issuerId = rs.getInt("IID");
+          String serial = rs.getString("SN");
+          String key = issuerId + ":" + serial;
+          if (!processed.add(key)) {
+            continue;
+          }
+
+          IssuerEntry issuer = store.getIssuerForId(issuerId);
+          if (issuer == null) {
+            // issuer is not included in this store
+            continue;
+          }
+
+          // must be recorded before the cached responses are invalidated.
+          recentCertEvents.put(key, readTime);
+
+          RequestIssuer reqIssuer =
+              new RequestIssuer(HashAlgo.SHA1, issuer.getEncodedHash(HashAlgo.SHA1));
+          listener.certStatusChanged(reqIssuer, new BigInteger(serial, 16));
+          num++;
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseDbResources(ps, rs);
+      }
+
+      lastCertEventsReadTime = readTime;
+      if (num > 0) {
+        LOG.info("store {}: processed status changes of {} certificates", name, num);
+      }
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "error while reading the certificate events of store " + name);
+    }
+  } // method processCertEvents
+
+  /**
+   * Sets the listener to be notified if the status of a certificate has been changed.
+   * The changes are read from the table CERT_EVENT (if present) periodically.
+   * @param listener
+   *          Listener to be notified. <code>null</code> to unset the listener.
+   */
+  public void setCertStatusChangeListener(CertStatusChangeListener listener) {
+    this.certStatusChangeListener = listener;
+  }
+
+  /**
+   * Tells that the table CERT may have been changed other than by adding and updating
+   * rows, e.g. by deleting rows. The in-memory certificate status, if enabled, will be
+   * reloaded completely at the next update.
+   */
+  protected void requireFullReload() {
+    InMemoryCertStatusIndex index = inMemoryIndex;
+    if (index != null) {
+      index.requireFullReload();
+    }
+  }
+
   @Override
   protected CertStatusInfo getCertStatus0(Date time, RequestIssuer reqIssuer,
       BigInteger serialNumber, boolean includeCertHash, boolean includeRit,
@@ -258,184 +424,334 @@ public class DbCertStatusStore extends OcspStore {
       return CertStatusInfo.getUnknownCertStatusInfo(new Date(), null);
     }
 
-    if (!initialized) {
-      throw new OcspStoreException("initialization of CertStore is still in process");
+    assertInitialized();
+
+    IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      return null;
     }
 
-    if (initializationFailed) {
-      throw new OcspStoreException("initialization of CertStore failed");
+    String hexSerial = serialNumber.toString(16);
+    boolean recentlyChanged = isRecentlyChanged(issuer.getId(), hexSerial);
+
+    InMemoryCertStatusIndex index = inMemoryIndex;
+    if (!recentlyChanged && index != null && index.isLoaded()) {
+      return buildCertStatusInfo(time, issuer, index.get(issuer.getId(), serialNumber),
+          includeCertHash, includeRit, inheritCaRevocation);
     }
 
     String sql;
+    if (includeCertHash) {
+      sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
+    } else {
+      sql = includeRit ? sqlCs : sqlCsNoRit;
+    }
 
+    CertStatusRow row = null;
     try {
-      IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
-      if (issuer == null) {
-        return null;
+      PreparedStatement ps = recentlyChanged
+          ? datasource.prepareStatement(sql) : datasource.prepareReadStatement(sql);
+      ResultSet rs = null;
+      try {
+        ps.setInt(1, issuer.getId());
+        ps.setString(2, hexSerial);
+        rs = ps.executeQuery();
+
+        if (rs.next()) {
+          row = CertStatusRow.read(rs, includeCertHash, includeRit);
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseDbResources(ps, rs);
       }
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-      if (includeCertHash) {
-        sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
+    return buildCertStatusInfo(time, issuer, row, includeCertHash, includeRit,
+        inheritCaRevocation);
+  } // method getCertStatus0
+
+  @Override
+  protected Map<BigInteger, CertStatusInfo> getCertStatuses0(Date time, RequestIssuer reqIssuer,
+      Collection<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation) throws OcspStoreException {
+    Map<BigInteger, CertStatusInfo> infos = new HashMap<>(serialNumbers.size() * 2);
+    Map<String, BigInteger> hexSerials = new LinkedHashMap<>(serialNumbers.size() * 2);
+    for (BigInteger serialNumber : serialNumbers) {
+      if (serialNumber.signum() != 1) { // non-positive serial number
+        infos.put(serialNumber, CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
       } else {
-        sql = includeRit ? sqlCs : sqlCsNoRit;
+        hexSerials.put(serialNumber.toString(16), serialNumber);
       }
+    }
 
-      CrlInfo crlInfo = issuer.getCrlInfo();
+    if (hexSerials.isEmpty()) {
+      return infos;
+    }
 
-      Date thisUpdate;
-      Date nextUpdate = null;
+    assertInitialized();
 
-      if (crlInfo != null) {
-        thisUpdate = crlInfo.getThisUpdate();
+    IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      return infos;
+    }
 
-        // this.nextUpdate is still in the future (10 seconds buffer)
-        if (crlInfo.getNextUpdate().getTime() - System.currentTimeMillis() > 10 * 1000) {
-          nextUpdate = crlInfo.getNextUpdate();
+    // the recently changed certificates are read from the primary database
+    List<String> primarySerials = new ArrayList<>(1);
+    List<String> serials = new ArrayList<>(hexSerials.size());
+    for (String hexSerial : hexSerials.keySet()) {
+      if (isRecentlyChanged(issuer.getId(), hexSerial)) {
+        primarySerials.add(hexSerial);
+      } else {
+        serials.add(hexSerial);
+      }
+    }
+
+    Map<String, CertStatusRow> rows = new HashMap<>(hexSerials.size() * 2);
+    try {
+      InMemoryCertStatusIndex index = inMemoryIndex;
+      if (index != null && index.isLoaded()) {
+        for (String hexSerial : serials) {
+          CertStatusRow row = index.get(issuer.getId(), hexSerials.get(hexSerial));
+          if (row != null) {
+            rows.put(hexSerial, row);
+          }
         }
       } else {
-        thisUpdate = new Date();
+        readCertStatusRows(issuer.getId(), serials, false, includeCertHash, includeRit, rows);
       }
 
-      ResultSet rs = null;
-      CertStatusInfo certStatusInfo = null;
+      readCertStatusRows(issuer.getId(), primarySerials, true, includeCertHash, includeRit,
+          rows);
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-      boolean unknown = true;
-      boolean ignore = false;
-      String certprofile = null;
-      String b64CertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-      long invalTime = 0;
+    for (Entry<String, BigInteger> entry : hexSerials.entrySet()) {
+      infos.put(entry.getValue(), buildCertStatusInfo(time, issuer, rows.get(entry.getKey()),
+          includeCertHash, includeRit, inheritCaRevocation));
+    }
+    return infos;
+  } // method getCertStatuses0
 
-      PreparedStatement ps = datasource.prepareStatement(sql);
+  /**
+   * Reads the status of the given certificates.
+   * @param primary
+   *          Whether to read from the primary database instead of a read replica.
+   */
+  private void readCertStatusRows(int issuerId, List<String> serials, boolean primary,
+      boolean includeCertHash, boolean includeRit, Map<String, CertStatusRow> rows)
+      throws DataAccessException {
+    for (int off = 0; off < serials.size(); off += MAX_SERIALS_PER_QUERY) {
+      List<String> chunk =
+          serials.subList(off, Math.min(serials.size(), off + MAX_SERIALS_PER_QUERY));
+      readCertStatusRows0(issuerId, chunk, primary, includeCertHash, includeRit, rows);
+    }
+  }
 
-      try {
-        ps.setInt(1, issuer.getId());
-        ps.setString(2, serialNumber.toString(16));
-        rs = ps.executeQuery();
+  private void readCertStatusRows0(int issuerId, List<String> serials, boolean primary,
+      boolean includeCertHash, boolean includeRit, Map<String, CertStatusRow> rows)
+      throws DataAccessException {
+    int sizeIndex = 0;
+    while (SERIALS_PER_QUERY[sizeIndex] < serials.size()) {
+      sizeIndex++;
+    }
+    final int size = SERIALS_PER_QUERY[sizeIndex];
+
+    int sqlIndex = sizeIndex * 4 + (includeCertHash ? 2 : 0) + (includeRit ? 1 : 0);
+    String sql = sqlCsMulti[sqlIndex];
+    if (sql == null) {
+      StringBuilder sb = new StringBuilder(120 + 2 * size);
+      sb.append("SELECT SN,NBEFORE,NAFTER,REV,RR,RT");
+      if (includeRit) {
+        sb.append(",RIT");
+      }
+      if (includeCertHash) {
+        sb.append(",HASH");
+      }
+      sb.append(" FROM CERT WHERE IID=? AND SN IN (?");
+      for (int i = 1; i < size; i++) {
+        sb.append(",?");
+      }
+      sb.append(")");
+      sql = sb.toString();
+      sqlCsMulti[sqlIndex] = sql;
+    }
 
-        if (rs.next()) {
-          unknown = false;
+    PreparedStatement ps = primary
+        ? datasource.prepareStatement(sql) : datasource.prepareReadStatement(sql);
+    ResultSet rs = null;
+    try {
+      int idx = 1;
+      ps.setInt(idx++, issuerId);
+      for (String serial : serials) {
+        ps.setString(idx++, serial);
+      }
 
-          long timeInSec = time.getTime() / 1000;
-          if (!ignore && ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
-            if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
-              ignore = true;
-            }
-          }
+      // pad with the last serial number
+      String lastSerial = serials.get(serials.size() - 1);
+      for (int i = serials.size(); i < size; i++) {
+        ps.setString(idx++, lastSerial);
+      }
+      rs = ps.executeQuery();
 
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
-            if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
-              ignore = true;
-            }
-          }
+      while (rs.next()) {
+        rows.put(rs.getString("SN"), CertStatusRow.read(rs, includeCertHash, includeRit));
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+  } // method readCertStatusRows0
 
-          if (!ignore) {
-            if (includeCertHash) {
-              b64CertHash = rs.getString("HASH");
-            }
+  private boolean isRecentlyChanged(int issuerId, String hexSerial) {
+    return !recentCertEvents.isEmpty() && recentCertEvents.containsKey(issuerId + ":" + hexSerial);
+  }
 
-            revoked = rs.getBoolean("REV");
-            if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
-              if (includeRit) {
-                invalTime = rs.getLong("RIT");
-              }
-            }
-          }
-        } // end if (rs.next())
-      } catch (SQLException ex) {
-        throw datasource.translate(sql, ex);
-      } finally {
-        releaseDbResources(ps, rs);
-      }
+  private void assertInitialized() throws OcspStoreException {
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
 
-      if (unknown) {
-        if (unknownSerialAsGood) {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo, null,
-              thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-        }
-      } else {
-        if (ignore) {
-          certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
-        } else {
-          byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
-          if (revoked) {
-            Date invTime = (invalTime == 0 || invalTime == revTime)
-                ? null : new Date(invalTime * 1000);
-            CertRevocationInfo revInfo = new CertRevocationInfo(reason,
-                new Date(revTime * 1000), invTime);
-            certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-                certHashAlgo, certHash, thisUpdate, nextUpdate, certprofile);
-          } else {
-            certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
-                certHash, thisUpdate, nextUpdate, certprofile);
-          }
-        }
-      }
+    if (initializationFailed) {
+      throw new OcspStoreException("initialization of CertStore failed");
+    }
+  }
+
+  /**
+   * Builds the certificate status.
+   * @param time
+   *          Time of the certificate status.
+   * @param issuer
+   *          Issuer of the certificate.
+   * @param row
+   *          The certificate status read from the database, {@code null} if the certificate
+   *          is unknown.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @return the certificate status.
+   */
+  private CertStatusInfo buildCertStatusInfo(Date time, IssuerEntry issuer, CertStatusRow row,
+      boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation) {
+    CrlInfo crlInfo = issuer.getCrlInfo();
+
+    Date thisUpdate;
+    Date nextUpdate = null;
 
-      if (includeCrlId && crlInfo != null) {
-        certStatusInfo.setCrlId(crlInfo.getCrlId());
+    if (crlInfo != null) {
+      thisUpdate = crlInfo.getThisUpdate();
+
+      // this.nextUpdate is still in the future (10 seconds buffer)
+      if (crlInfo.getNextUpdate().getTime() - System.currentTimeMillis() > 10 * 1000) {
+        nextUpdate = crlInfo.getNextUpdate();
       }
+    } else {
+      thisUpdate = new Date();
+    }
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
-          }
+    CertStatusInfo certStatusInfo;
+    String certprofile = null;
 
-          certStatusInfo.setArchiveCutOff(date);
+    if (row == null) {
+      if (unknownSerialAsGood) {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo, null,
+            thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+      }
+    } else {
+      boolean ignore = false;
+      long timeInSec = time.getTime() / 1000;
+      if (ignoreNotYetValidCert) {
+        if (row.notBefore != 0 && timeInSec < row.notBefore) {
+          ignore = true;
         }
       }
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+      if (!ignore && ignoreExpiredCert) {
+        if (row.notAfter != 0 && timeInSec > row.notAfter) {
+          ignore = true;
+        }
       }
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD || certStatus == CertStatus.UNKNOWN) {
-        replaced = true;
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
+      if (ignore) {
+        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+      } else {
+        byte[] certHash = includeCertHash ? row.certHash : null;
+        if (row.revoked) {
+          long invalTime = includeRit ? row.invalTime : 0;
+          Date invTime = (invalTime == 0 || invalTime == row.revTime)
+              ? null : new Date(invalTime * 1000);
+          CertRevocationInfo revInfo = new CertRevocationInfo(row.reason,
+              new Date(row.revTime * 1000), invTime);
+          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+              certHashAlgo, certHash, thisUpdate, nextUpdate, certprofile);
+        } else {
+          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
+              certHash, thisUpdate, nextUpdate, certprofile);
         }
       }
+    }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
+    if (includeCrlId && crlInfo != null) {
+      certStatusInfo.setCrlId(crlInfo.getCrlId());
+    }
+
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date;
+        // expired certificate remains in status store for ever
+        if (retentionInterval < 0) {
+          date = issuer.getNotBefore();
         } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+          long nowInMs = System.currentTimeMillis();
+          long dateInMs = Math.max(issuer.getNotBefore().getTime(),
+              nowInMs - DAY * retentionInterval);
+          date = new Date(dateInMs);
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
+
+        certStatusInfo.setArchiveCutOff(date);
       }
+    }
+
+    if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
       return certStatusInfo;
-    } catch (DataAccessException ex) {
-      throw new OcspStoreException(ex.getMessage(), ex);
     }
 
-  } // method getCertStatus
+    CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD || certStatus == CertStatus.UNKNOWN) {
+      replaced = true;
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (replaced) {
+      CertRevocationInfo newRevInfo;
+      if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+        newRevInfo = caRevInfo;
+      } else {
+        newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+            caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+      }
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+          certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  } // method buildCertStatusInfo
 
   /**
    * Borrow Prepared Statement.
@@ -456,6 +772,11 @@ public class DbCertStatusStore extends OcspStore {
       return false;
     }
 
+    if (inMemoryIndex != null && inMemoryIndex.isLoaded()) {
+      // the database is not required to answer the requests
+      return true;
+    }
+
     final String sql = "SELECT ID FROM ISSUER";
 
     try {
@@ -486,6 +807,14 @@ public class DbCertStatusStore extends OcspStore {
    * <li>caCerts: optional
    *   <p/>
    *   CA certificate files to be included / excluded.</li>
+   * <li>inMemory: optional, default to false
+   *   <p/>
+   *   Whether to keep the status of all certificates in memory.</li>
+   * <li>inMemoryOverlap: optional, default to 60
+   *   <p/>
+   *   Overlap in seconds of the incremental refreshes of the in-memory status, to tolerate
+   *   the late committed transactions and the clock skew between the writers of table
+   *   CERT.</li>
    *  </ul>
    * @param datasource DataSource.
    */
@@ -493,11 +822,31 @@ public class DbCertStatusStore extends OcspStore {
   public void init(Map<String, ? extends Object> sourceConf, DataSourceWrapper datasource)
       throws OcspStoreException {
     OcspServerConf.CaCerts caCerts = null;
+    boolean inMemory = false;
+    long inMemoryOverlap = DFLT_IN_MEMORY_OVERLAP_SECONDS;
     if (sourceConf != null) {
       Object objValue = sourceConf.get("caCerts");
       if (objValue != null) {
         caCerts = JSON.parseObject(JSON.toJSONBytes(objValue), OcspServerConf.CaCerts.class);
       }
+
+      objValue = sourceConf.get("inMemory");
+      if (objValue != null) {
+        inMemory = Boolean.parseBoolean(objValue.toString());
+      }
+
+      objValue = sourceConf.get("inMemoryOverlap");
+      if (objValue != null) {
+        try {
+          inMemoryOverlap = Long.parseLong(objValue.toString());
+        } catch (NumberFormatException ex) {
+          throw new OcspStoreException("invalid inMemoryOverlap '" + objValue + "'");
+        }
+
+        if (inMemoryOverlap < 0) {
+          throw new OcspStoreException("inMemoryOverlap may not be negative");
+        }
+      }
     }
 
     this.datasource = Args.notNull(datasource, "datasource");
@@ -538,8 +887,21 @@ public class DbCertStatusStore extends OcspStore {
       throw new OcspStoreException(ex.getMessage(), ex);
     } // end try
 
+    // the events during the downtime are relevant for the persistent response cache
+    this.lastCertEventsReadTime = System.currentTimeMillis() - DAY;
+    try {
+      this.certEventSupported = datasource.tableExists(null, "CERT_EVENT");
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException("could not check the existence of table CERT_EVENT", ex);
+    }
+
     updateIssuerStore();
 
+    this.inMemoryIndex = inMemory
+        ? new InMemoryCertStatusIndex(datasource, IN_MEMORY_FULL_RELOAD_INTERVAL_MS,
+            inMemoryOverlap) : null;
+    updateInMemoryIndex();
+
     if (this.scheduledThreadPoolExecutor != null) {
       this.scheduledThreadPoolExecutor.shutdownNow();
     }
@@ -0,0 +1,385 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataAccessException.Reason;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.api.OcspStoreException;
+import org.xipki.util.Args;
+import org.xipki.util.Base64;
+
+/**
+ * {@link ResponseCacheStore} which stores the responses in the table OCSP of the cache
+ * database.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class DbResponseCacheStore implements ResponseCacheStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DbResponseCacheStore.class);
+
+  // THIS_UPDATE in the future: responses cached in milliseconds by the previous versions.
+  private static final String SQL_DELETE_EXPIRED_RESP =
+      "DELETE FROM OCSP WHERE THIS_UPDATE<? OR THIS_UPDATE>?";
+
+  private static final String SQL_ADD_RESP = "INSERT INTO OCSP (ID,IID,IDENT,"
+      + "THIS_UPDATE,NEXT_UPDATE,RESP) VALUES (?,?,?,?,?,?)";
+
+  private static final String SQL_UPDATE_RESP = "UPDATE OCSP SET THIS_UPDATE=?,"
+      + "NEXT_UPDATE=?,RESP=? WHERE ID=?";
+
+  private final DataSourceWrapper datasource;
+
+  private final String sqlSelectOcsp;
+
+  /**
+   * Whether the columns IDENT and RESP of table OCSP contain the binary value instead
+   * of the Base64-encoded text.
+   */
+  private final boolean binaryResp;
+
+  DbResponseCacheStore(DataSourceWrapper datasource) throws DataAccessException {
+    this.datasource = Args.notNull(datasource, "datasource");
+    this.sqlSelectOcsp = datasource.buildSelectFirstSql(1,
+        "IID,IDENT,THIS_UPDATE,NEXT_UPDATE,RESP FROM OCSP WHERE ID=?");
+    this.binaryResp = isBinaryRespEncoding(datasource);
+    LOG.info("OCSP response cache uses {} encoding", binaryResp ? "BINARY" : "BASE64");
+  }
+
+  @Override
+  public CachedResponse get(long id) throws OcspStoreException {
+    final String sql = sqlSelectOcsp;
+    ResultSet rs = null;
+    PreparedStatement ps = null;
+    try {
+      ps = datasource.prepareStatement(sql);
+      ps.setLong(1, id);
+      rs = ps.executeQuery();
+      if (!rs.next()) {
+        return null;
+      }
+
+      return new CachedResponse(id, rs.getInt("IID"), getBinaryColumn(rs, "IDENT"),
+          rs.getLong("THIS_UPDATE"), rs.getLong("NEXT_UPDATE"), getBinaryColumn(rs, "RESP"));
+    } catch (SQLException ex) {
+      throw new OcspStoreException(datasource.translate(sql, ex));
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  }
+
+  @Override
+  public void put(Collection<CachedResponse> responses) throws OcspStoreException {
+    try {
+      Connection conn = datasource.getConnection();
+      try {
+        if (responses.size() == 1) {
+          writeResponse(conn, responses.iterator().next());
+        } else {
+          writeResponses(conn, responses);
+        }
+      } finally {
+        datasource.returnConnection(conn);
+      }
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex);
+    }
+  }
+
+  /**
+   * Writes the responses to the database. The existing rows are updated in one batch,
+   * and the remaining responses are inserted in one batch.
+   */
+  private void writeResponses(Connection conn, Collection<CachedResponse> responses)
+      throws DataAccessException {
+    // only the last response of the same ID will be written
+    Map<Long, CachedResponse> map = new LinkedHashMap<>();
+    for (CachedResponse m : responses) {
+      map.put(m.getId(), m);
+    }
+    List<CachedResponse> entries = new ArrayList<>(map.values());
+
+    String sql = SQL_UPDATE_RESP;
+    int[] updateCounts;
+    PreparedStatement ps = datasource.prepareStatement(conn, sql);
+    try {
+      for (CachedResponse m : entries) {
+        int idx = 1;
+        ps.setLong(idx++, m.getThisUpdate());
+        ps.setLong(idx++, m.getNextUpdate());
+        setBinaryParameter(ps, idx++, m.getResponse());
+        ps.setLong(idx++, m.getId());
+        ps.addBatch();
+      }
+      updateCounts = ps.executeBatch();
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, null, false);
+    }
+
+    List<CachedResponse> newEntries = new ArrayList<>(entries.size());
+    boolean knownCounts = updateCounts.length == entries.size();
+    for (int i = 0; i < entries.size(); i++) {
+      if (!knownCounts || updateCounts[i] == Statement.SUCCESS_NO_INFO) {
+        // the driver does not tell which rows exist
+        writeResponse(conn, entries.get(i));
+      } else if (updateCounts[i] == 0) {
+        newEntries.add(entries.get(i));
+      }
+    }
+
+    if (newEntries.isEmpty()) {
+      return;
+    }
+
+    sql = SQL_ADD_RESP;
+    ps = datasource.prepareStatement(conn, sql);
+    boolean batchFailed = false;
+    try {
+      for (CachedResponse m : newEntries) {
+        int idx = 1;
+        ps.setLong(idx++, m.getId());
+        ps.setInt(idx++, m.getIssuerId());
+        setBinaryParameter(ps, idx++, m.getIdentBytes());
+        ps.setLong(idx++, m.getThisUpdate());
+        ps.setLong(idx++, m.getNextUpdate());
+        setBinaryParameter(ps, idx++, m.getResponse());
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    } catch (SQLException ex) {
+      // e.g. the same response has been cached by another responder in the meantime
+      LOG.debug("could not insert cached OCSP responses in batch, insert them one by one: {}",
+          ex.getMessage());
+      batchFailed = true;
+    } finally {
+      datasource.releaseResources(ps, null, false);
+    }
+
+    if (batchFailed) {
+      for (CachedResponse m : newEntries) {
+        try {
+          writeResponse(conn, m);
+        } catch (DataAccessException ex) {
+          ResponseCacher.logWriteResponseError(m, ex);
+        }
+      }
+    } else if (LOG.isDebugEnabled()) {
+      LOG.debug("added {} and updated {} cached OCSP responses", newEntries.size(),
+          entries.size() - newEntries.size());
+    }
+  } // method writeResponses
+
+  /**
+   * Inserts the response, or updates it if a response with the same ID exists.
+   */
+  private void writeResponse(Connection conn, CachedResponse entry)
+      throws DataAccessException {
+    String sql = SQL_ADD_RESP;
+    PreparedStatement ps = datasource.prepareStatement(conn, sql);
+
+    Boolean dataIntegrityViolationException = null;
+    try {
+      int idx = 1;
+      ps.setLong(idx++, entry.getId());
+      ps.setInt(idx++, entry.getIssuerId());
+      setBinaryParameter(ps, idx++, entry.getIdentBytes());
+      ps.setLong(idx++, entry.getThisUpdate());
+      ps.setLong(idx++, entry.getNextUpdate());
+      setBinaryParameter(ps, idx++, entry.getResponse());
+      ps.execute();
+    } catch (SQLException ex) {
+      DataAccessException dex = datasource.translate(sql, ex);
+      if (dex.getReason().isDescendantOrSelfOf(Reason.DataIntegrityViolation)) {
+        dataIntegrityViolationException = Boolean.TRUE;
+      } else {
+        throw dex;
+      }
+    } finally {
+      datasource.releaseResources(ps, null, false);
+    }
+
+    if (dataIntegrityViolationException == null) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("added cached OCSP response iid={}, ident={}", entry.getIssuerId(),
+            Base64.encodeToString(entry.getIdentBytes()));
+      }
+      return;
+    }
+
+    sql = SQL_UPDATE_RESP;
+    ps = datasource.prepareStatement(conn, sql);
+    try {
+      int idx = 1;
+      ps.setLong(idx++, entry.getThisUpdate());
+      ps.setLong(idx++, entry.getNextUpdate());
+      setBinaryParameter(ps, idx++, entry.getResponse());
+      ps.setLong(idx++, entry.getId());
+      ps.executeUpdate();
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, null, false);
+    }
+  } // method writeResponse
+
+  @Override
+  public void invalidate(Collection<Long> ids) throws OcspStoreException {
+    if (ids.isEmpty()) {
+      return;
+    }
+
+    StringBuilder sb = new StringBuilder(30 + 2 * ids.size());
+    sb.append("DELETE FROM OCSP WHERE ID IN (?");
+    for (int i = 1; i < ids.size(); i++) {
+      sb.append(",?");
+    }
+    sb.append(")");
+    final String sql = sb.toString();
+
+    PreparedStatement ps = null;
+    try {
+      ps = datasource.prepareStatement(sql);
+      int idx = 1;
+      for (Long id : ids) {
+        ps.setLong(idx++, id);
+      }
+      ps.executeUpdate();
+    } catch (SQLException ex) {
+      throw new OcspStoreException(datasource.translate(sql, ex));
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  }
+
+  @Override
+  public int removeExpired(long maxThisUpdate, long minInvalidThisUpdate)
+      throws OcspStoreException {
+    final String sql = SQL_DELETE_EXPIRED_RESP;
+    PreparedStatement ps = null;
+    try {
+      ps = datasource.prepareStatement(sql);
+      ps.setLong(1, maxThisUpdate);
+      ps.setLong(2, minInvalidThisUpdate);
+      return ps.executeUpdate();
+    } catch (SQLException ex) {
+      throw new OcspStoreException(datasource.translate(sql, ex));
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  }
+
+  @Override
+  public List<CachedResponse> getExpiring(long minId, long maxNextUpdate, int maxEntries)
+      throws OcspStoreException {
+    final String sql = datasource.buildSelectFirstSql(maxEntries, "ID",
+        "ID,IID,IDENT,THIS_UPDATE,NEXT_UPDATE FROM OCSP WHERE ID>? AND NEXT_UPDATE<?");
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+
+    List<CachedResponse> ret = new LinkedList<>();
+    try {
+      ps = datasource.prepareStatement(sql);
+      ps.setLong(1, minId);
+      ps.setLong(2, maxNextUpdate);
+      rs = ps.executeQuery();
+      while (rs.next()) {
+        ret.add(new CachedResponse(rs.getLong("ID"), rs.getInt("IID"),
+            getBinaryColumn(rs, "IDENT"), rs.getLong("THIS_UPDATE"), rs.getLong("NEXT_UPDATE"),
+            null));
+      }
+    } catch (SQLException ex) {
+      throw new OcspStoreException(datasource.translate(sql, ex));
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+
+    return ret;
+  }
+
+  @Override
+  public void close() {
+    // the datasource is closed by the ResponseCacher
+  }
+
+  private byte[] getBinaryColumn(ResultSet rs, String column) throws SQLException {
+    if (binaryResp) {
+      return rs.getBytes(column);
+    } else {
+      String b64 = rs.getString(column);
+      return (b64 == null) ? null : Base64.decodeFast(b64);
+    }
+  }
+
+  private void setBinaryParameter(PreparedStatement ps, int index, byte[] value)
+      throws SQLException {
+    if (binaryResp) {
+      ps.setBytes(index, value);
+    } else {
+      ps.setString(index, Base64.encodeToString(value));
+    }
+  }
+
+  /**
+   * Whether the columns IDENT and RESP of the table OCSP are of binary type.
+   * @param datasource
+   *          Datasource of the cache database.
+   * @return {@code true} if the columns are binary, {@code false} if they contain the
+   *     Base64-encoded text.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  static boolean isBinaryRespEncoding(DataSourceWrapper datasource)
+      throws DataAccessException {
+    // databases created by the previous versions contain no table DBSCHEMA
+    if (!datasource.tableExists(null, "DBSCHEMA")) {
+      return false;
+    }
+
+    String encoding = datasource.getFirstValue(null, "DBSCHEMA", "VALUE2",
+        "NAME='RESP_ENCODING'", String.class);
+    return "BINARY".equalsIgnoreCase(encoding);
+  }
+
+}
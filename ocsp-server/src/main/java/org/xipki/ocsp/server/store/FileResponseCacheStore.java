@@ -0,0 +1,553 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.api.OcspStoreException;
+import org.xipki.util.Args;
+import org.xipki.util.IoUtil;
+
+/**
+ * {@link ResponseCacheStore} which stores the responses in local, memory-mapped, append-only
+ * segment files. The responder can warm-start from these files after a restart without
+ * reading the responses from the shared cache database.
+ *
+ * <p>Each record has the following layout:
+ * <pre>
+ *   int   length of the record, including this field and the checksum
+ *   byte  type, 1 for a response and 2 for the removal of a response
+ *   long  id
+ *   int   issuer id
+ *   long  thisUpdate
+ *   long  nextUpdate
+ *   short length of the ident
+ *   byte[] ident
+ *   byte[] DER-encoded response
+ *   int   CRC32 of the bytes from the type to the end of the response
+ * </pre>
+ * The index of the current records is kept in memory and rebuilt from the files while
+ * starting. If more than half of the closed segments are occupied by replaced or removed
+ * records, the current records are copied to the active segment, and the closed segments
+ * are deleted.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class FileResponseCacheStore implements ResponseCacheStore {
+
+  private static final class Segment {
+
+    private final int number;
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final int capacity;
+
+    /**
+     * Position of the next record, guarded by the writeLock.
+     */
+    private int writePosition;
+
+    /**
+     * Number of bytes occupied by current records, guarded by the writeLock.
+     */
+    private long liveBytes;
+
+    Segment(int number, File file, FileChannel channel, MappedByteBuffer buffer) {
+      this.number = number;
+      this.file = file;
+      this.channel = channel;
+      this.buffer = buffer;
+      this.capacity = buffer.capacity();
+    }
+
+  } // class Segment
+
+  private static final class Slot {
+
+    private final Segment segment;
+
+    private final int offset;
+
+    private final int length;
+
+    private final long thisUpdate;
+
+    private final long nextUpdate;
+
+    Slot(Segment segment, int offset, int length, long thisUpdate, long nextUpdate) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+    }
+
+  } // class Slot
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileResponseCacheStore.class);
+
+  private static final byte TYPE_PUT = 1;
+
+  private static final byte TYPE_DELETE = 2;
+
+  // length(4) + type(1) + id(8) + issuerId(4) + thisUpdate(8) + nextUpdate(8) + identLen(2)
+  private static final int HEADER_SIZE = 35;
+
+  private static final int CHECKSUM_SIZE = 4;
+
+  private static final String SUFFIX = ".seg";
+
+  private final Object writeLock = new Object();
+
+  private final File dir;
+
+  private final int segmentSize;
+
+  private final ConcurrentSkipListMap<Long, Slot> index = new ConcurrentSkipListMap<>();
+
+  /**
+   * All segments ordered by the number, the last one is the active segment. Guarded by
+   * the writeLock.
+   */
+  private final List<Segment> segments = new ArrayList<>();
+
+  private Segment activeSegment;
+
+  /**
+   * Constructor.
+   * @param dir
+   *          Directory of the segment files. Will be created if not exist.
+   * @param segmentSize
+   *          Size of a segment file in bytes.
+   * @throws IOException
+   *           if the segment files could not be read.
+   */
+  public FileResponseCacheStore(String dir, int segmentSize) throws IOException {
+    this.dir = new File(IoUtil.expandFilepath(Args.notBlank(dir, "dir")));
+    this.segmentSize = Args.min(segmentSize, "segmentSize", 1024 * 1024);
+    Files.createDirectories(this.dir.toPath());
+
+    long start = System.currentTimeMillis();
+    TreeMap<Integer, File> files = new TreeMap<>();
+    File[] children = this.dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        String name = child.getName();
+        if (child.isFile() && name.endsWith(SUFFIX)) {
+          try {
+            files.put(Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())),
+                child);
+          } catch (NumberFormatException ex) {
+            LOG.warn("ignore file {}", child.getPath());
+          }
+        }
+      }
+    }
+
+    synchronized (writeLock) {
+      for (Map.Entry<Integer, File> entry : files.entrySet()) {
+        Segment segment = openSegment(entry.getKey(), entry.getValue());
+        segments.add(segment);
+        replaySegment(segment);
+      }
+
+      if (segments.isEmpty()) {
+        activeSegment = newSegment(1);
+      } else {
+        activeSegment = segments.get(segments.size() - 1);
+      }
+    }
+
+    LOG.info("loaded {} cached OCSP responses from {} segments in {}, took {} ms",
+        index.size(), segments.size(), this.dir.getPath(), System.currentTimeMillis() - start);
+  } // constructor
+
+  @Override
+  public CachedResponse get(long id) throws OcspStoreException {
+    Slot slot = index.get(id);
+    return (slot == null) ? null : readRecord(id, slot, true);
+  }
+
+  @Override
+  public void put(Collection<CachedResponse> responses) throws OcspStoreException {
+    synchronized (writeLock) {
+      try {
+        for (CachedResponse m : responses) {
+          byte[] record = encodeRecord(TYPE_PUT, m.getId(), m.getIssuerId(), m.getIdentBytes(),
+              m.getThisUpdate(), m.getNextUpdate(), m.getResponse());
+          Slot slot = append(record, m.getThisUpdate(), m.getNextUpdate());
+          slot.segment.liveBytes += slot.length;
+          release(index.put(m.getId(), slot));
+        }
+      } catch (IOException ex) {
+        throw new OcspStoreException("could not write to the segment file", ex);
+      }
+    }
+  }
+
+  @Override
+  public void invalidate(Collection<Long> ids) throws OcspStoreException {
+    for (Long id : ids) {
+      if (!index.containsKey(id)) {
+        continue;
+      }
+
+      synchronized (writeLock) {
+        try {
+          remove(id, index.get(id));
+        } catch (IOException ex) {
+          throw new OcspStoreException("could not write to the segment file", ex);
+        }
+      }
+    }
+  }
+
+  @Override
+  public int removeExpired(long maxThisUpdate, long minInvalidThisUpdate)
+      throws OcspStoreException {
+    int num = 0;
+    for (Map.Entry<Long, Slot> entry : index.entrySet()) {
+      Slot slot = entry.getValue();
+      if (slot.thisUpdate >= maxThisUpdate && slot.thisUpdate <= minInvalidThisUpdate) {
+        continue;
+      }
+
+      synchronized (writeLock) {
+        try {
+          if (remove(entry.getKey(), slot)) {
+            num++;
+          }
+        } catch (IOException ex) {
+          throw new OcspStoreException("could not write to the segment file", ex);
+        }
+      }
+    }
+
+    try {
+      compactIfRequired();
+    } catch (IOException ex) {
+      throw new OcspStoreException("could not compact the segment files", ex);
+    }
+    return num;
+  } // method removeExpired
+
+  @Override
+  public List<CachedResponse> getExpiring(long minId, long maxNextUpdate, int maxEntries)
+      throws OcspStoreException {
+    List<CachedResponse> ret = new LinkedList<>();
+    for (Map.Entry<Long, Slot> entry : index.tailMap(minId, false).entrySet()) {
+      Slot slot = entry.getValue();
+      if (slot.nextUpdate >= maxNextUpdate) {
+        continue;
+      }
+
+      ret.add(readRecord(entry.getKey(), slot, false));
+      if (ret.size() >= maxEntries) {
+        break;
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  public void close() {
+    synchronized (writeLock) {
+      for (Segment segment : segments) {
+        try {
+          segment.buffer.force();
+          segment.channel.close();
+        } catch (IOException ex) {
+          LOG.warn("could not close segment file {}: {}", segment.file.getPath(),
+              ex.getMessage());
+        }
+      }
+      segments.clear();
+      index.clear();
+    }
+  }
+
+  /**
+   * Removes the response if it is still stored in the given slot. Must be called with
+   * the writeLock.
+   */
+  private boolean remove(long id, Slot slot) throws IOException {
+    if (slot == null || !index.remove(id, slot)) {
+      return false;
+    }
+
+    release(slot);
+    append(encodeRecord(TYPE_DELETE, id, 0, null, 0, 0, null), 0, 0);
+    return true;
+  }
+
+  private static void release(Slot slot) {
+    if (slot != null) {
+      slot.segment.liveBytes -= slot.length;
+    }
+  }
+
+  /**
+   * Appends the record to the active segment. Must be called with the writeLock.
+   */
+  private Slot append(byte[] record, long thisUpdate, long nextUpdate) throws IOException {
+    if (record.length > segmentSize) {
+      throw new IOException("record too large: " + record.length + " bytes");
+    }
+
+    if (activeSegment.writePosition + record.length > activeSegment.capacity) {
+      activeSegment.buffer.force();
+      activeSegment = newSegment(activeSegment.number + 1);
+    }
+
+    int offset = activeSegment.writePosition;
+    ByteBuffer buf = activeSegment.buffer.duplicate();
+    buf.position(offset);
+    buf.put(record);
+    activeSegment.writePosition += record.length;
+    return new Slot(activeSegment, offset, record.length, thisUpdate, nextUpdate);
+  }
+
+  /**
+   * Copies the current records of the closed segments to the active segment and deletes the
+   * closed segments, if more than half of them is occupied by replaced or removed records.
+   * Since all closed segments are deleted, no removed response can be revived by the
+   * records of an older segment.
+   */
+  private void compactIfRequired() throws IOException {
+    List<Segment> closedSegments;
+    synchronized (writeLock) {
+      closedSegments = new ArrayList<>(segments.subList(0, segments.size() - 1));
+      long totalBytes = 0;
+      long liveBytes = 0;
+      for (Segment segment : closedSegments) {
+        totalBytes += segment.writePosition;
+        liveBytes += segment.liveBytes;
+      }
+
+      if (closedSegments.isEmpty() || liveBytes * 2 > totalBytes) {
+        return;
+      }
+      LOG.info("compacting {} segments, {} of {} bytes are in use", closedSegments.size(),
+          liveBytes, totalBytes);
+    }
+
+    long start = System.currentTimeMillis();
+    int lastNumber = closedSegments.get(closedSegments.size() - 1).number;
+    int num = 0;
+    for (Map.Entry<Long, Slot> entry : index.entrySet()) {
+      Slot slot = entry.getValue();
+      if (slot.segment.number > lastNumber) {
+        continue;
+      }
+
+      synchronized (writeLock) {
+        // the response may have been replaced or removed in the meantime
+        if (index.get(entry.getKey()) != slot) {
+          continue;
+        }
+
+        byte[] record = new byte[slot.length];
+        ByteBuffer buf = slot.segment.buffer.duplicate();
+        buf.position(slot.offset);
+        buf.get(record);
+
+        Slot newSlot = append(record, slot.thisUpdate, slot.nextUpdate);
+        newSlot.segment.liveBytes += newSlot.length;
+        release(slot);
+        index.put(entry.getKey(), newSlot);
+        num++;
+      }
+    }
+
+    // delete the oldest segment first, so that a crash leaves no removed response behind
+    synchronized (writeLock) {
+      for (Segment segment : closedSegments) {
+        segments.remove(segment);
+        try {
+          segment.channel.close();
+        } catch (IOException ex) {
+          LOG.warn("could not close segment file {}: {}", segment.file.getPath(),
+              ex.getMessage());
+        }
+
+        if (!segment.file.delete()) {
+          LOG.warn("could not delete segment file {}", segment.file.getPath());
+        }
+      }
+    }
+
+    LOG.info("compacted {} segments, copied {} responses, took {} ms", closedSegments.size(),
+        num, System.currentTimeMillis() - start);
+  } // method compactIfRequired
+
+  private CachedResponse readRecord(long id, Slot slot, boolean withResponse)
+      throws OcspStoreException {
+    ByteBuffer buf = slot.segment.buffer.duplicate();
+    buf.position(slot.offset + 5);
+    long recordId = buf.getLong();
+    if (recordId != id) {
+      throw new OcspStoreException("invalid record in " + slot.segment.file.getPath()
+          + " at offset " + slot.offset);
+    }
+
+    int issuerId = buf.getInt();
+    long thisUpdate = buf.getLong();
+    long nextUpdate = buf.getLong();
+    byte[] ident = new byte[buf.getShort() & 0xFFFF];
+    buf.get(ident);
+
+    byte[] response = null;
+    if (withResponse) {
+      response = new byte[slot.length - HEADER_SIZE - ident.length - CHECKSUM_SIZE];
+      buf.get(response);
+    }
+
+    return new CachedResponse(id, issuerId, ident, thisUpdate, nextUpdate, response);
+  }
+
+  /**
+   * Adds the valid records of the segment to the index. Must be called with the writeLock.
+   */
+  private void replaySegment(Segment segment) {
+    ByteBuffer buf = segment.buffer.duplicate();
+    CRC32 crc = new CRC32();
+
+    int pos = 0;
+    while (pos + HEADER_SIZE + CHECKSUM_SIZE <= segment.capacity) {
+      int len = buf.getInt(pos);
+      if (len < HEADER_SIZE + CHECKSUM_SIZE || len > segment.capacity - pos) {
+        // end of the records, or incomplete record
+        break;
+      }
+
+      buf.limit(pos + len - CHECKSUM_SIZE).position(pos + 4);
+      crc.reset();
+      crc.update(buf);
+      buf.limit(segment.capacity);
+      if ((int) crc.getValue() != buf.getInt(pos + len - CHECKSUM_SIZE)) {
+        LOG.warn("invalid checksum in {} at offset {}, ignore the remaining records",
+            segment.file.getPath(), pos);
+        break;
+      }
+
+      byte type = buf.get(pos + 4);
+      long id = buf.getLong(pos + 5);
+      if (type == TYPE_PUT) {
+        Slot slot = new Slot(segment, pos, len, buf.getLong(pos + 17), buf.getLong(pos + 25));
+        segment.liveBytes += len;
+        release(index.put(id, slot));
+      } else {
+        release(index.remove(id));
+      }
+
+      pos += len;
+    }
+
+    segment.writePosition = pos;
+  } // method replaySegment
+
+  private Segment newSegment(int number) throws IOException {
+    File file = new File(dir, String.format("%08d", number) + SUFFIX);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(segmentSize);
+    } catch (IOException ex) {
+      raf.close();
+      throw ex;
+    }
+
+    Segment segment = openSegment(number, file, raf);
+    segments.add(segment);
+    LOG.info("created segment file {}", file.getPath());
+    return segment;
+  }
+
+  private static Segment openSegment(int number, File file) throws IOException {
+    return openSegment(number, file, new RandomAccessFile(file, "rw"));
+  }
+
+  private static Segment openSegment(int number, File file, RandomAccessFile raf)
+      throws IOException {
+    try {
+      FileChannel channel = raf.getChannel();
+      // the mapping stays valid after the channel is closed.
+      MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, raf.length());
+      return new Segment(number, file, channel, buffer);
+    } catch (IOException ex) {
+      raf.close();
+      throw ex;
+    }
+  }
+
+  private static byte[] encodeRecord(byte type, long id, int issuerId, byte[] ident,
+      long thisUpdate, long nextUpdate, byte[] response) {
+    int identLen = (ident == null) ? 0 : ident.length;
+    int respLen = (response == null) ? 0 : response.length;
+    int len = HEADER_SIZE + identLen + respLen + CHECKSUM_SIZE;
+
+    ByteBuffer buf = ByteBuffer.allocate(len);
+    buf.putInt(len);
+    buf.put(type);
+    buf.putLong(id);
+    buf.putInt(issuerId);
+    buf.putLong(thisUpdate);
+    buf.putLong(nextUpdate);
+    buf.putShort((short) identLen);
+    if (identLen > 0) {
+      buf.put(ident);
+    }
+    if (respLen > 0) {
+      buf.put(response);
+    }
+
+    CRC32 crc = new CRC32();
+    crc.update(buf.array(), 4, len - 4 - CHECKSUM_SIZE);
+    buf.putInt((int) crc.getValue());
+    return buf.array();
+  }
+
+  @Override
+  public String toString() {
+    return "FileResponseCacheStore(" + dir.getPath() + ", " + index.size() + " responses)";
+  }
+
+}
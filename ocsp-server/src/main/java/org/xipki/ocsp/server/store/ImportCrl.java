@@ -23,12 +23,8 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 import java.security.SignatureException;
-import java.security.cert.CRLException;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -36,25 +32,24 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
-import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
-
-import javax.security.auth.x500.X500Principal;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
-import org.bouncycastle.asn1.ASN1GeneralizedTime;
 import org.bouncycastle.asn1.ASN1Integer;
-import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.ASN1Set;
 import org.bouncycastle.asn1.ASN1TaggedObject;
 import org.bouncycastle.asn1.DERGeneralizedTime;
 import org.bouncycastle.asn1.DERIA5String;
-import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.asn1.DERSet;
 import org.bouncycastle.asn1.DERTaggedObject;
@@ -63,11 +58,13 @@ import org.bouncycastle.asn1.ocsp.CrlID;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.Certificate;
 import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
 import org.bouncycastle.asn1.x509.TBSCertificate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.server.store.CrlStreamParser.RevokedCert;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.CrlReason;
 import org.xipki.security.HashAlgo;
@@ -87,8 +84,108 @@ import org.xipki.util.StringUtil;
 
 class ImportCrl {
 
+  private static final class ExistingEntry {
+
+    private final long id;
+
+    // null if the entry is inserted in the current batch
+    private final CertStatusRow status;
+
+    private ExistingEntry(long id, CertStatusRow status) {
+      this.id = id;
+      this.status = status;
+    }
+
+  } // class ExistingEntry
+
+  /**
+   * Certificate to be imported.
+   */
+  private static final class CertEntry {
+
+    private final String serial;
+
+    private final long notBefore;
+
+    private final long notAfter;
+
+    private final byte[] certHash;
+
+    private final String certLogId;
+
+    private CertEntry(String serial, long notBefore, long notAfter, byte[] certHash,
+        String certLogId) {
+      this.serial = serial;
+      this.notBefore = notBefore;
+      this.notAfter = notAfter;
+      this.certHash = certHash;
+      this.certLogId = certLogId;
+    }
+
+  } // class CertEntry
+
+  /**
+   * Set of IDs in the table CERT, kept as primitive array to import large CRLs.
+   */
+  private static final class IdSet {
+
+    private long[] ids = new long[1024];
+
+    private int size;
+
+    private boolean sorted = true;
+
+    void add(long id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, 2 * size);
+      }
+
+      if (size > 0 && ids[size - 1] > id) {
+        sorted = false;
+      }
+      ids[size++] = id;
+    }
+
+    boolean contains(long id) {
+      if (!sorted) {
+        Arrays.sort(ids, 0, size);
+        sorted = true;
+      }
+      return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+  } // class IdSet
+
+  /**
+   * Allocates the IDs of the new rows in the tables ISSUER and CERT of a datasource, so that
+   * the CRLs of different issuers can be imported concurrently. The IDs of the table CERT are
+   * reserved in blocks.
+   */
+  private static final class IdAllocator {
+
+    // next free ID in the table CERT, -1 if not initialized.
+    private long nextCertId = -1;
+
+    /**
+     * Reserves a block of IDs in the table CERT.
+     * @return the first ID of the block.
+     */
+    synchronized long reserveCertIds(DataSourceWrapper datasource, Connection conn, int num)
+        throws DataAccessException {
+      // the rows inserted by the other imports may not be committed yet.
+      long maxId = datasource.getMax(conn, "CERT", "ID");
+      nextCertId = Math.max(nextCertId, maxId + 1);
+      long firstId = nextCertId;
+      nextCertId += num;
+      return firstId;
+    }
+
+  } // class IdAllocator
+
   private static final Logger LOG = LoggerFactory.getLogger(ImportCrl.class);
 
+  private static final Map<DataSourceWrapper, IdAllocator> ID_ALLOCATORS = new WeakHashMap<>();
+
   private static final String SQL_UPDATE_CERT_REV
       = "UPDATE CERT SET REV=?,RR=?,RT=?,RIT=?,LUPDATE=? WHERE ID=?";
 
@@ -104,11 +201,19 @@ class ImportCrl {
       = "INSERT INTO CERT (ID,IID,SN,REV,RR,RT,RIT,LUPDATE,NBEFORE,NAFTER,HASH) "
         + "VALUES(?,?,?,?,?,?,?,?,?,?,?)";
 
-  private static final String CORE_SQL_SELECT_ID_CERT = "ID FROM CERT WHERE IID=? AND SN=?";
+  private static final String CORE_SQL_SELECT_IDS_CERT =
+      "SELECT ID,SN,NBEFORE,NAFTER,REV,RR,RT,RIT,HASH FROM CERT WHERE IID=? AND SN IN (";
 
-  private final String sqlSelectIdCert;
+  private static final String SQL_DELETE_CERT_BY_ID = "DELETE FROM CERT WHERE ID=?";
 
-  private final X509CRL crl;
+  private static final String SQL_UNREVOKE_CERT
+      = "UPDATE CERT SET REV=0,RR=NULL,RT=NULL,RIT=NULL,LUPDATE=? WHERE ID=?";
+
+  private static final int DFLT_BATCH_SIZE = 1000;
+
+  private static final int MAX_SERIALS_PER_QUERY = 100;
+
+  private final CrlStreamParser crl;
 
   private final X509Certificate caCert;
 
@@ -125,8 +230,6 @@ class ImportCrl {
 
   private final X500Name caSubject;
 
-  private final X500Principal x500PrincipalCaSubject;
-
   private final byte[] caSpki;
 
   private final String certsDirName;
@@ -135,22 +238,50 @@ class ImportCrl {
 
   private final HashAlgo certhashAlgo;
 
+  private final int batchSize;
+
+  private final String sqlSelectCertsOfIssuer;
+
+  private final IdAllocator idAllocator;
+
+  // next ID of the reserved block, and the end (exclusive) of the block
+  private long nextCertId;
+
+  private long endCertId;
+
+  // IDs of the entries contained in revokedCertificates
+  private final IdSet revokedIds = new IdSet();
+
+  // IDs of the entries of the imported certificates
+  private final IdSet certIds = new IdSet();
+
   private PreparedStatement psDeleteCert;
   private PreparedStatement psInsertCert;
   private PreparedStatement psInsertCertRev;
-  private PreparedStatement psSelectIdCert;
   private PreparedStatement psUpdateCert;
   private PreparedStatement psUpdateCertRev;
 
-  public ImportCrl(DataSourceWrapper datasource, X509CRL crl, String crlUrl,
+  public ImportCrl(DataSourceWrapper datasource, CrlStreamParser crl, String crlUrl,
       X509Certificate caCert, X509Certificate issuerCert, CertRevocationInfo caRevInfo,
       String certsDirName) throws ImportCrlException, DataAccessException {
+    this(datasource, crl, crlUrl, caCert, issuerCert, caRevInfo, certsDirName,
+        DFLT_BATCH_SIZE);
+  }
+
+  /**
+   * Constructor.
+   * @param batchSize
+   *          Number of CRL entries imported in one transaction.
+   */
+  public ImportCrl(DataSourceWrapper datasource, CrlStreamParser crl, String crlUrl,
+      X509Certificate caCert, X509Certificate issuerCert, CertRevocationInfo caRevInfo,
+      String certsDirName, int batchSize) throws ImportCrlException, DataAccessException {
     this.datasource = Args.notNull(datasource, "datasource");
+    this.batchSize = Args.positive(batchSize, "batchSize");
     this.certhashAlgo = DbCertStatusStore.getCertHashAlgo(datasource);
     this.crl = Args.notNull(crl, "crl");
     this.caCert = Args.notNull(caCert, "caCert");
-    this.x500PrincipalCaSubject = caCert.getSubjectX500Principal();
-    this.caSubject = X500Name.getInstance(x500PrincipalCaSubject.getEncoded());
+    this.caSubject = X500Name.getInstance(caCert.getSubjectX500Principal().getEncoded());
     try {
       this.caSpki = X509Util.extractSki(caCert);
     } catch (CertificateEncodingException ex) {
@@ -160,42 +291,45 @@ class ImportCrl {
     this.certsDirName = certsDirName;
     this.caRevInfo = caRevInfo;
 
-    X500Principal issuer = crl.getIssuerX500Principal();
+    X500Name issuer = crl.getIssuer();
 
     boolean caAsCrlIssuer = true;
-    if (!x500PrincipalCaSubject.equals(issuer)) {
+    if (!caSubject.equals(issuer)) {
       caAsCrlIssuer = false;
       if (issuerCert == null) {
         throw new IllegalArgumentException("issuerCert may not be null");
       }
 
-      if (!issuerCert.getSubjectX500Principal().equals(issuer)) {
+      if (!X500Name.getInstance(issuerCert.getSubjectX500Principal().getEncoded())
+          .equals(issuer)) {
         throw new IllegalArgumentException("issuerCert and CRL do not match");
       }
     }
 
     // Verify the signature
     X509Certificate crlSignerCert = caAsCrlIssuer ? caCert : issuerCert;
+    boolean signatureValid;
     try {
-      crl.verify(crlSignerCert.getPublicKey());
-    } catch (SignatureException | NoSuchProviderException | InvalidKeyException | CRLException
-        | NoSuchAlgorithmException ex) {
+      signatureValid = crl.verifySignature(crlSignerCert.getPublicKey());
+    } catch (SignatureException | InvalidKeyException | NoSuchAlgorithmException ex) {
       throw new ImportCrlException("could not verify signature of CRL", ex);
     }
 
-    byte[] octetString = crl.getExtensionValue(Extension.cRLNumber.getId());
-    if (octetString == null) {
+    if (!signatureValid) {
+      throw new ImportCrlException("signature of CRL is invalid");
+    }
+
+    byte[] extnValue = getCoreExtValue(crl.getCrlExtensions(), Extension.cRLNumber);
+    if (extnValue == null) {
       throw new IllegalArgumentException("CRL without CRLNumber is not supported");
     }
-    ASN1Integer asn1CrlNumber
-        = ASN1Integer.getInstance(DEROctetString.getInstance(octetString).getOctets());
+    ASN1Integer asn1CrlNumber = ASN1Integer.getInstance(extnValue);
     this.crlNumber = asn1CrlNumber.getPositiveValue();
 
-    octetString = crl.getExtensionValue(Extension.deltaCRLIndicator.getId());
-    this.isDeltaCrl = (octetString != null);
+    extnValue = getCoreExtValue(crl.getCrlExtensions(), Extension.deltaCRLIndicator);
+    this.isDeltaCrl = (extnValue != null);
     if (this.isDeltaCrl) {
       LOG.info("The CRL is a DeltaCRL");
-      byte[] extnValue = DEROctetString.getInstance(octetString).getOctets();
       this.baseCrlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
     } else {
       LOG.info("The CRL is a full CRL");
@@ -212,7 +346,17 @@ class ImportCrl {
     vec.add(new DERTaggedObject(true, 2, new DERGeneralizedTime(crl.getThisUpdate())));
     this.crlId = CrlID.getInstance(new DERSequence(vec));
 
-    this.sqlSelectIdCert = datasource.buildSelectFirstSql(1, CORE_SQL_SELECT_ID_CERT);
+    this.sqlSelectCertsOfIssuer = datasource.buildSelectFirstSql(batchSize, "ID",
+        "ID,REV FROM CERT WHERE IID=? AND ID>?");
+
+    synchronized (ID_ALLOCATORS) {
+      IdAllocator allocator = ID_ALLOCATORS.get(datasource);
+      if (allocator == null) {
+        allocator = new IdAllocator();
+        ID_ALLOCATORS.put(datasource, allocator);
+      }
+      this.idAllocator = allocator;
+    }
   }
 
   public boolean importCrlToOcspDb() {
@@ -220,28 +364,24 @@ class ImportCrl {
     try {
       conn = datasource.getConnection();
 
-      // CHECKSTYLE:SKIP
-      Date startTime = new Date();
       // CHECKSTYLE:SKIP
       int caId = importCa(conn);
 
       psDeleteCert = datasource.prepareStatement(conn, SQL_DELETE_CERT);
       psInsertCert = datasource.prepareStatement(conn, SQL_INSERT_CERT);
       psInsertCertRev = datasource.prepareStatement(conn, SQL_INSERT_CERT_REV);
-      psSelectIdCert = datasource.prepareStatement(conn, sqlSelectIdCert);
       psUpdateCert = datasource.prepareStatement(conn, SQL_UPDATE_CERT);
       psUpdateCertRev = datasource.prepareStatement(conn, SQL_UPDATE_CERT_REV);
 
       importEntries(conn, caId);
-      deleteEntriesNotUpdatedSince(conn, startTime);
 
       return true;
     } catch (Throwable th) {
       LogUtil.error(LOG, th, "could not import CRL to OCSP database");
+    } finally {
       releaseResources(psDeleteCert, null);
       releaseResources(psInsertCert, null);
       releaseResources(psInsertCertRev, null);
-      releaseResources(psSelectIdCert, null);
       releaseResources(psUpdateCert, null);
       releaseResources(psUpdateCertRev, null);
 
@@ -254,6 +394,13 @@ class ImportCrl {
   }
 
   private int importCa(Connection conn) throws DataAccessException, ImportCrlException {
+    // the ID of a new issuer is allocated from the maximal ID.
+    synchronized (idAllocator) {
+      return importCa0(conn);
+    }
+  }
+
+  private int importCa0(Connection conn) throws DataAccessException, ImportCrlException {
     byte[] encodedCaCert;
     try {
       encodedCaCert = caCert.getEncoded();
@@ -371,98 +518,81 @@ class ImportCrl {
 
   private void importEntries(Connection conn, int caId)
       throws DataAccessException, ImportCrlException {
-    AtomicLong maxId = new AtomicLong(datasource.getMax(conn, "CERT", "ID"));
-
-    // import the revoked information
-    Set<? extends X509CRLEntry> revokedCertList = crl.getRevokedCertificates();
-    if (revokedCertList != null) {
-      for (X509CRLEntry c : revokedCertList) {
-        X500Principal issuer = c.getCertificateIssuer();
-        BigInteger serial = c.getSerialNumber();
-
-        if (issuer != null) {
-          if (!x500PrincipalCaSubject.equals(issuer)) {
-            throw new ImportCrlException("invalid CRLEntry for certificate number " + serial);
-          }
-        }
-
-        Date rt = c.getRevocationDate();
-        Date rit = null;
-        byte[] extnValue = c.getExtensionValue(Extension.invalidityDate.getId());
-        if (extnValue != null) {
-          extnValue = extractCoreValue(extnValue);
-          ASN1GeneralizedTime genTime = DERGeneralizedTime.getInstance(extnValue);
-          try {
-            rit = genTime.getDate();
-          } catch (ParseException ex) {
-            throw new ImportCrlException(ex.getMessage(), ex);
-          }
-
-          if (rt.equals(rit)) {
-            rit = null;
-          }
-        }
-
-        CrlReason reason = CrlReason.fromReason(c.getRevocationReason());
-
-        String sql = null;
-        try {
-          if (reason == CrlReason.REMOVE_FROM_CRL) {
-            if (!isDeltaCrl) {
-              LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
-            }
+    boolean autoCommit = disableAutoCommit(conn);
+    try {
+      importRevokedCerts(conn, caId);
+    } finally {
+      recoverAutoCommit(conn, autoCommit);
+    }
 
-            // delete the entry
-            sql = SQL_DELETE_CERT;
-            psDeleteCert.setInt(1, caId);
-            psDeleteCert.setString(2, serial.toString(16));
-            psDeleteCert.executeUpdate();
-            continue;
-          }
+    autoCommit = disableAutoCommit(conn);
+    try {
+      importCertificates(conn, caId);
+    } finally {
+      recoverAutoCommit(conn, autoCommit);
+    }
 
-          Long id = getId(caId, serial);
-          PreparedStatement ps;
-          int offset = 1;
-
-          if (id == null) {
-            sql = SQL_INSERT_CERT_REV;
-            id = maxId.incrementAndGet();
-            ps = psInsertCertRev;
-            ps.setLong(offset++, id);
-            ps.setInt(offset++, caId);
-            ps.setString(offset++, serial.toString(16));
-          } else {
-            sql = SQL_UPDATE_CERT_REV;
-            ps = psUpdateCertRev;
-          }
+    if (isDeltaCrl) {
+      // entries not contained in the DeltaCRL are not changed.
+      return;
+    }
 
-          ps.setInt(offset++, 1);
-          ps.setInt(offset++, reason.getCode());
-          ps.setLong(offset++, rt.getTime() / 1000);
-          if (rit != null) {
-            ps.setLong(offset++, rit.getTime() / 1000);
-          } else {
-            ps.setNull(offset++, Types.BIGINT);
-          }
-          ps.setLong(offset++, System.currentTimeMillis() / 1000);
+    autoCommit = disableAutoCommit(conn);
+    try {
+      removeEntriesNotInCrl(conn, caId);
+    } finally {
+      recoverAutoCommit(conn, autoCommit);
+    }
+  }
 
-          if (ps == psUpdateCertRev) {
-            ps.setLong(offset++, id);
-          }
+  private void importRevokedCerts(Connection conn, int caId)
+        throws DataAccessException, ImportCrlException {
+    // import the revoked information, the entries are parsed one by one from the CRL file
+    // and imported in batches.
+    List<RevokedCert> batch = new ArrayList<>(batchSize);
+    long numEntries = 0;
+    Iterator<RevokedCert> revokedCerts = crl.revokedCertificates();
+    while (revokedCerts.hasNext()) {
+      RevokedCert c;
+      try {
+        c = revokedCerts.next();
+      } catch (IllegalStateException ex) {
+        throw new ImportCrlException(ex.getMessage(), ex);
+      }
 
-          ps.executeUpdate();
-        } catch (SQLException ex) {
-          throw datasource.translate(sql, ex);
+      X500Name issuer = c.getCertificateIssuer();
+      if (issuer != null) {
+        if (!caSubject.equals(issuer)) {
+          throw new ImportCrlException("invalid CRLEntry for certificate number "
+              + c.getSerialNumber());
         }
       }
+
+      batch.add(c);
+      if (batch.size() == batchSize) {
+        importRevokedCertBatch(conn, caId, batch);
+        numEntries += batch.size();
+        batch.clear();
+      }
+    }
+
+    if (!batch.isEmpty()) {
+      importRevokedCertBatch(conn, caId, batch);
+      numEntries += batch.size();
     }
+    LOG.info("imported {} CRL entries", numEntries);
+  }
 
-    // import the certificates
+  private void importCertificates(Connection conn, int caId)
+      throws DataAccessException, ImportCrlException {
+    // the certificates are imported in batches, like the revoked certificates.
+    List<CertEntry> batch = new ArrayList<>(batchSize);
+    long numCerts = 0;
 
     // extract the certificate
-    byte[] extnValue = crl.getExtensionValue(ObjectIdentifiers.id_xipki_ext_crlCertset.getId());
+    byte[] extnValue = getCoreExtValue(crl.getCrlExtensions(),
+        ObjectIdentifiers.id_xipki_ext_crlCertset);
     if (extnValue != null) {
-      extnValue = extractCoreValue(extnValue);
       ASN1Set asn1Set = DERSet.getInstance(extnValue);
       final int n = asn1Set.size();
 
@@ -508,7 +638,15 @@ class ImportCrl {
 
         String certLogId = "(issuer='" + cert.getIssuer()
             + "', serialNumber=" + cert.getSerialNumber() + ")";
-        addCertificate(maxId, caId, cert, profileName, certLogId);
+        CertEntry entry = toCertEntry(cert, certLogId);
+        if (entry != null) {
+          batch.add(entry);
+          if (batch.size() == batchSize) {
+            importCertBatch(conn, caId, batch);
+            numCerts += batch.size();
+            batch.clear();
+          }
+        }
       }
     } else {
       // cert dirs
@@ -552,39 +690,220 @@ class ImportCrl {
         }
 
         String certLogId = "(file " + certFile.getName() + ")";
-        addCertificate(maxId, caId, cert, null, certLogId);
+        CertEntry entry = toCertEntry(cert, certLogId);
+        if (entry != null) {
+          batch.add(entry);
+          if (batch.size() == batchSize) {
+            importCertBatch(conn, caId, batch);
+            numCerts += batch.size();
+            batch.clear();
+          }
+        }
       }
     }
 
+    if (!batch.isEmpty()) {
+      importCertBatch(conn, caId, batch);
+      numCerts += batch.size();
+    }
+    LOG.info("imported {} certificates", numCerts);
   }
 
-  private static byte[] extractCoreValue(byte[] encodedExtensionValue) {
-    return ASN1OctetString.getInstance(encodedExtensionValue).getOctets();
+  private static byte[] getCoreExtValue(Extensions extensions, ASN1ObjectIdentifier extnType) {
+    if (extensions == null) {
+      return null;
+    }
+
+    Extension extn = extensions.getExtension(extnType);
+    return (extn == null) ? null : extn.getExtnValue().getOctets();
   }
 
-  private Long getId(int caId, BigInteger serialNumber) throws DataAccessException {
-    ResultSet rs = null;
+  /**
+   * Imports the revoked certificates in one transaction. The existing entries are
+   * retrieved with one query, and only the new and changed entries are deleted,
+   * inserted and updated with JDBC batches.
+   */
+  private void importRevokedCertBatch(Connection conn, int caId, List<RevokedCert> revokedCerts)
+      throws DataAccessException {
+    List<String> serials = new ArrayList<>(revokedCerts.size());
+    for (RevokedCert c : revokedCerts) {
+      serials.add(c.getSerialNumber().toString(16));
+    }
+    Map<String, ExistingEntry> existingEntries = getExistingEntries(conn, caId, serials);
+
+    final long now = System.currentTimeMillis() / 1000;
+    boolean hasDelete = false;
+    boolean hasInsert = false;
+    boolean hasUpdate = false;
+    String sql = null;
     try {
-      psSelectIdCert.setInt(1, caId);
-      psSelectIdCert.setString(2, serialNumber.toString(16));
-      rs = psSelectIdCert.executeQuery();
-      if (!rs.next()) {
-        return null;
+      for (RevokedCert c : revokedCerts) {
+        String serial = c.getSerialNumber().toString(16);
+        CrlReason reason = c.getReason();
+
+        if (reason == CrlReason.REMOVE_FROM_CRL) {
+          if (!isDeltaCrl) {
+            LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
+          }
+
+          // delete the entry
+          sql = SQL_DELETE_CERT;
+          psDeleteCert.setInt(1, caId);
+          psDeleteCert.setString(2, serial);
+          psDeleteCert.addBatch();
+          hasDelete = true;
+          existingEntries.remove(serial);
+          continue;
+        }
+
+        Date rt = c.getRevocationDate();
+        Date rit = c.getInvalidityDate();
+        if (rt.equals(rit)) {
+          rit = null;
+        }
+
+        ExistingEntry existing = existingEntries.get(serial);
+        if (existing != null && existing.status != null) {
+          CertStatusRow status = existing.status;
+          if (status.revoked && status.reason == reason.getCode()
+              && status.revTime == rt.getTime() / 1000
+              && status.invalTime == (rit == null ? 0 : rit.getTime() / 1000)) {
+            // unchanged
+            revokedIds.add(existing.id);
+            continue;
+          }
+        }
+
+        Long id = (existing == null) ? null : existing.id;
+        PreparedStatement ps;
+        int offset = 1;
+
+        if (id == null) {
+          sql = SQL_INSERT_CERT_REV;
+          id = nextCertId(conn);
+          // the same serial number later in this batch will be updated
+          existingEntries.put(serial, new ExistingEntry(id, null));
+          ps = psInsertCertRev;
+          hasInsert = true;
+          ps.setLong(offset++, id);
+          ps.setInt(offset++, caId);
+          ps.setString(offset++, serial);
+        } else {
+          sql = SQL_UPDATE_CERT_REV;
+          ps = psUpdateCertRev;
+          hasUpdate = true;
+        }
+
+        ps.setInt(offset++, 1);
+        ps.setInt(offset++, reason.getCode());
+        ps.setLong(offset++, rt.getTime() / 1000);
+        if (rit != null) {
+          ps.setLong(offset++, rit.getTime() / 1000);
+        } else {
+          ps.setNull(offset++, Types.BIGINT);
+        }
+        ps.setLong(offset++, now);
+
+        if (ps == psUpdateCertRev) {
+          ps.setLong(offset++, id);
+        }
+
+        ps.addBatch();
+        revokedIds.add(id);
       }
-      return rs.getLong("ID");
+
+      if (hasDelete) {
+        sql = SQL_DELETE_CERT;
+        psDeleteCert.executeBatch();
+      }
+
+      if (hasInsert) {
+        sql = SQL_INSERT_CERT_REV;
+        psInsertCertRev.executeBatch();
+      }
+
+      if (hasUpdate) {
+        sql = SQL_UPDATE_CERT_REV;
+        psUpdateCertRev.executeBatch();
+      }
+
+      sql = "COMMIT";
+      conn.commit();
     } catch (SQLException ex) {
-      throw datasource.translate(sqlSelectIdCert, ex);
-    } finally {
-      releaseResources(null, rs);
+      rollback(conn);
+      throw datasource.translate(sql, ex);
+    }
+  } // method importRevokedCertBatch
+
+  /**
+   * Gets the entries of the given certificates in the table CERT.
+   * @param serials
+   *          Hex serial numbers of the certificates.
+   * @return map of the hex serial number to the existing entries.
+   */
+  private Map<String, ExistingEntry> getExistingEntries(Connection conn, int caId,
+      List<String> serials) throws DataAccessException {
+    final int size = serials.size();
+    Map<String, ExistingEntry> entries = new HashMap<>(size * 2);
+    for (int from = 0; from < size; from += MAX_SERIALS_PER_QUERY) {
+      List<String> subList = serials.subList(from, Math.min(size, from + MAX_SERIALS_PER_QUERY));
+      final int n = subList.size();
+      StringBuilder sb = new StringBuilder(CORE_SQL_SELECT_IDS_CERT.length() + 2 * n);
+      sb.append(CORE_SQL_SELECT_IDS_CERT).append("?");
+      for (int i = 1; i < n; i++) {
+        sb.append(",?");
+      }
+      sb.append(")");
+
+      final String sql = sb.toString();
+      PreparedStatement ps = datasource.prepareStatement(conn, sql);
+      ResultSet rs = null;
+      try {
+        int idx = 1;
+        ps.setInt(idx++, caId);
+        for (String serial : subList) {
+          ps.setString(idx++, serial);
+        }
+
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          entries.put(rs.getString("SN"),
+              new ExistingEntry(rs.getLong("ID"), CertStatusRow.read(rs, true, true)));
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseResources(ps, rs);
+      }
+    }
+    return entries;
+  }
+
+  private long nextCertId(Connection conn) throws DataAccessException {
+    if (nextCertId == endCertId) {
+      nextCertId = idAllocator.reserveCertIds(datasource, conn, batchSize);
+      endCertId = nextCertId + batchSize;
+    }
+    return nextCertId++;
+  }
+
+  private void rollback(Connection conn) {
+    try {
+      conn.rollback();
+    } catch (SQLException ex) {
+      LogUtil.error(LOG, datasource.translate(null, ex), "could not rollback");
     }
   }
 
-  private void addCertificate(AtomicLong maxId, int caId, Certificate cert, String profileName,
-      String certLogId) throws DataAccessException, ImportCrlException {
+  /**
+   * Checks the certificate.
+   * @return the entry to be imported, or {@code null} if the certificate is ignored.
+   */
+  private CertEntry toCertEntry(Certificate cert, String certLogId) throws ImportCrlException {
     // not issued by the given issuer
     if (!caSubject.equals(cert.getIssuer())) {
       LOG.warn("certificate {} is not issued by the given CA, ignore it", certLogId);
-      return;
+      return null;
     }
 
     // we don't use the binary read from file, since it may contains redundant ending bytes.
@@ -594,7 +913,6 @@ class ImportCrl {
     } catch (IOException ex) {
       throw new ImportCrlException("could not encode certificate {}" + certLogId, ex);
     }
-    String b64CertHash = certhashAlgo.base64Hash(encodedCert);
 
     if (caSpki != null) {
       byte[] aki = null;
@@ -603,81 +921,221 @@ class ImportCrl {
       } catch (CertificateEncodingException ex) {
         LogUtil.error(LOG, ex,
             "invalid AuthorityKeyIdentifier of certificate {}" + certLogId + ", ignore it");
-        return;
+        return null;
       }
 
       if (aki == null || !Arrays.equals(caSpki, aki)) {
         LOG.warn("certificate {} is not issued by the given CA, ignore it", certLogId);
-        return;
+        return null;
       }
     } // end if
 
-    LOG.info("Importing certificate {}", certLogId);
-    Long id = getId(caId, cert.getSerialNumber().getPositiveValue());
-    boolean tblCertIdExists = (id != null);
+    TBSCertificate tbsCert = cert.getTBSCertificate();
+    return new CertEntry(cert.getSerialNumber().getPositiveValue().toString(16),
+        tbsCert.getStartDate().getDate().getTime() / 1000,
+        tbsCert.getEndDate().getDate().getTime() / 1000,
+        certhashAlgo.hash(encodedCert), certLogId);
+  }
 
-    PreparedStatement ps;
-    String sql;
-    // first update the table CERT
-    if (tblCertIdExists) {
-      sql = SQL_UPDATE_CERT;
-      ps = psUpdateCert;
-    } else {
-      sql = SQL_INSERT_CERT;
-      ps = psInsertCert;
-      id = maxId.incrementAndGet();
+  /**
+   * Imports the certificates in one transaction. The existing entries are retrieved with
+   * one query, and only the new and changed entries are inserted and updated with JDBC
+   * batches.
+   */
+  private void importCertBatch(Connection conn, int caId, List<CertEntry> certs)
+      throws DataAccessException {
+    List<String> serials = new ArrayList<>(certs.size());
+    for (CertEntry cert : certs) {
+      serials.add(cert.serial);
     }
+    Map<String, ExistingEntry> existingEntries = getExistingEntries(conn, caId, serials);
 
+    final long now = System.currentTimeMillis() / 1000;
+    boolean hasInsert = false;
+    boolean hasUpdate = false;
+    String sql = null;
     try {
-      int offset = 1;
-      if (sql == SQL_INSERT_CERT) {
-        ps.setLong(offset++, id);
-        // ISSUER ID IID
-        ps.setInt(offset++, caId);
-        // serial number SN
-        ps.setString(offset++, cert.getSerialNumber().getPositiveValue().toString(16));
-        // whether revoked REV
-        ps.setInt(offset++, 0);
-        // revocation reason RR
-        ps.setNull(offset++, Types.SMALLINT);
-        // revocation time RT
-        ps.setNull(offset++, Types.BIGINT);
-        ps.setNull(offset++, Types.BIGINT);
-      }
-
-      // last update LUPDATE
-      ps.setLong(offset++, System.currentTimeMillis() / 1000);
-
-      TBSCertificate tbsCert = cert.getTBSCertificate();
-      // not before NBEFORE
-      ps.setLong(offset++, tbsCert.getStartDate().getDate().getTime() / 1000);
-      // not after NAFTER
-      ps.setLong(offset++, tbsCert.getEndDate().getDate().getTime() / 1000);
-      ps.setString(offset++, b64CertHash);
-
-      if (sql == SQL_UPDATE_CERT) {
-        ps.setLong(offset++, id);
+      for (CertEntry cert : certs) {
+        ExistingEntry existing = existingEntries.get(cert.serial);
+        if (existing != null && existing.status != null) {
+          CertStatusRow status = existing.status;
+          if (status.notBefore == cert.notBefore && status.notAfter == cert.notAfter
+              && Arrays.equals(status.certHash, cert.certHash)) {
+            // unchanged
+            certIds.add(existing.id);
+            continue;
+          }
+        }
+
+        Long id = (existing == null) ? null : existing.id;
+
+        PreparedStatement ps;
+        int offset = 1;
+        if (id == null) {
+          sql = SQL_INSERT_CERT;
+          id = nextCertId(conn);
+          // the same serial number later in this batch will be updated
+          existingEntries.put(cert.serial, new ExistingEntry(id, null));
+          ps = psInsertCert;
+          hasInsert = true;
+
+          ps.setLong(offset++, id);
+          // ISSUER ID IID
+          ps.setInt(offset++, caId);
+          // serial number SN
+          ps.setString(offset++, cert.serial);
+          // whether revoked REV
+          ps.setInt(offset++, 0);
+          // revocation reason RR
+          ps.setNull(offset++, Types.SMALLINT);
+          // revocation time RT
+          ps.setNull(offset++, Types.BIGINT);
+          ps.setNull(offset++, Types.BIGINT);
+        } else {
+          sql = SQL_UPDATE_CERT;
+          ps = psUpdateCert;
+          hasUpdate = true;
+        }
+
+        // last update LUPDATE
+        ps.setLong(offset++, now);
+        // not before NBEFORE
+        ps.setLong(offset++, cert.notBefore);
+        // not after NAFTER
+        ps.setLong(offset++, cert.notAfter);
+        ps.setString(offset++, Base64.encodeToString(cert.certHash));
+
+        if (ps == psUpdateCert) {
+          ps.setLong(offset++, id);
+        }
+
+        ps.addBatch();
+        certIds.add(id);
+        LOG.debug("importing certificate {}", cert.certLogId);
       }
 
-      ps.executeUpdate();
+      if (hasInsert) {
+        sql = SQL_INSERT_CERT;
+        psInsertCert.executeBatch();
+      }
+
+      if (hasUpdate) {
+        sql = SQL_UPDATE_CERT;
+        psUpdateCert.executeBatch();
+      }
+
+      sql = "COMMIT";
+      conn.commit();
     } catch (SQLException ex) {
+      rollback(conn);
       throw datasource.translate(sql, ex);
     }
+  } // method importCertBatch
+
+  /**
+   * Removes the entries of the given issuer which are neither contained in the
+   * revokedCertificates nor in the imported certificates, and marks the entries
+   * which are only contained in the imported certificates as not revoked.
+   */
+  private void removeEntriesNotInCrl(Connection conn, int caId) throws DataAccessException {
+    final String sql = sqlSelectCertsOfIssuer;
+    PreparedStatement psSelect = datasource.prepareStatement(conn, sql);
+    PreparedStatement psDelete = null;
+    PreparedStatement psUnrevoke = null;
+
+    final long now = System.currentTimeMillis() / 1000;
+    long numDeleted = 0;
+    long numUnrevoked = 0;
+    long minId = 0;
+    String currentSql = sql;
+    try {
+      while (true) {
+        currentSql = sql;
+        psSelect.setInt(1, caId);
+        psSelect.setLong(2, minId);
+        ResultSet rs = psSelect.executeQuery();
+
+        int numRows = 0;
+        boolean hasDelete = false;
+        boolean hasUnrevoke = false;
+        try {
+          while (rs.next()) {
+            numRows++;
+            long id = rs.getLong("ID");
+            minId = Math.max(minId, id);
+            if (revokedIds.contains(id)) {
+              continue;
+            }
+
+            if (!certIds.contains(id)) {
+              if (psDelete == null) {
+                psDelete = datasource.prepareStatement(conn, SQL_DELETE_CERT_BY_ID);
+              }
+              psDelete.setLong(1, id);
+              psDelete.addBatch();
+              hasDelete = true;
+              numDeleted++;
+            } else if (rs.getBoolean("REV")) {
+              // e.g. certificateHold has been released
+              if (psUnrevoke == null) {
+                psUnrevoke = datasource.prepareStatement(conn, SQL_UNREVOKE_CERT);
+              }
+              psUnrevoke.setLong(1, now);
+              psUnrevoke.setLong(2, id);
+              psUnrevoke.addBatch();
+              hasUnrevoke = true;
+              numUnrevoked++;
+            }
+          }
+        } finally {
+          releaseResources(null, rs);
+        }
+
+        if (hasDelete) {
+          currentSql = SQL_DELETE_CERT_BY_ID;
+          psDelete.executeBatch();
+        }
+
+        if (hasUnrevoke) {
+          currentSql = SQL_UNREVOKE_CERT;
+          psUnrevoke.executeBatch();
+        }
+
+        currentSql = "COMMIT";
+        conn.commit();
+
+        if (numRows < batchSize) {
+          break;
+        }
+      }
+    } catch (SQLException ex) {
+      rollback(conn);
+      throw datasource.translate(currentSql, ex);
+    } finally {
+      releaseResources(psSelect, null);
+      releaseResources(psDelete, null);
+      releaseResources(psUnrevoke, null);
+    }
+
+    LOG.info("removed {} entries not contained in the CRL, marked {} entries as not revoked",
+        numDeleted, numUnrevoked);
+  } // method removeEntriesNotInCrl
 
-    LOG.info("Imported  certificate {}", certLogId);
+  private boolean disableAutoCommit(Connection conn) throws DataAccessException {
+    try {
+      boolean autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      return autoCommit;
+    } catch (SQLException ex) {
+      throw datasource.translate(null, ex);
+    }
   }
 
-  private void deleteEntriesNotUpdatedSince(Connection conn, Date time)
-      throws DataAccessException {
-    // remove the unmodified entries
-    String sql = "DELETE FROM CERT WHERE LUPDATE<" + time.getTime() / 1000;
-    Statement stmt = datasource.createStatement(conn);
+  private void recoverAutoCommit(Connection conn, boolean autoCommit) {
     try {
-      stmt.executeUpdate(sql);
+      conn.setAutoCommit(autoCommit);
     } catch (SQLException ex) {
-      throw datasource.translate(sql, ex);
-    } finally {
-      releaseResources(stmt, null);
+      LogUtil.error(LOG, datasource.translate(null, ex), "could not recover AutoCommit");
     }
   }
 
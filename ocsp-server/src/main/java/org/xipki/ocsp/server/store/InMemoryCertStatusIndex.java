@@ -0,0 +1,415 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.util.Args;
+
+/**
+ * In-memory copy of the table CERT, so that the certificate status can be answered
+ * without accessing the database.
+ *
+ * <p>The index is refreshed incrementally: rows with ID greater than the highest loaded
+ * ID are new, and rows with LUPDATE not less than the highest loaded LUPDATE minus the
+ * overlap have been added or changed (e.g. revoked). The overlap covers the transactions
+ * committed after the last refresh with an older LUPDATE, and the clock skew between the
+ * writers; the IDs are not monotonic across several CAs or nodes. The rows within the overlap
+ * are read again in every refresh. Deleted rows are only detected by a full reload, which happens
+ * if the issuers change, if {@link #requireFullReload()} has been called, or after
+ * the fullReloadInterval.
+ *
+ * <p>The rows of a full reload are stored in an immutable open-addressing table of primitive
+ * columns keyed by issuer id and serial number bytes. The rows of the incremental reloads,
+ * which are few in comparison, are kept in a concurrent map consulted first, until the next
+ * full reload.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class InMemoryCertStatusIndex {
+
+  private static final class SerialKey {
+
+    private final int issuerId;
+
+    private final byte[] serial;
+
+    SerialKey(int issuerId, byte[] serial) {
+      this.issuerId = issuerId;
+      this.serial = serial;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(issuerId, serial);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof SerialKey)) {
+        return false;
+      }
+
+      SerialKey other = (SerialKey) obj;
+      return issuerId == other.issuerId && Arrays.equals(serial, other.serial);
+    }
+
+  } // class SerialKey
+
+  /**
+   * Immutable open-addressing table with linear probing. The slots reference the rows,
+   * which are stored column-wise.
+   */
+  private static final class RowTable {
+
+    private static final byte NOT_REVOKED = -1;
+
+    private int size;
+
+    private int[] slots;
+
+    private int[] issuerIds;
+
+    private byte[][] serials;
+
+    private long[] notBefores;
+
+    private long[] notAfters;
+
+    private byte[] reasons;
+
+    private long[] revTimes;
+
+    private long[] invalTimes;
+
+    private byte[][] certHashes;
+
+    RowTable(int initialCapacity) {
+      ensureCapacity(Math.max(16, initialCapacity));
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (issuerIds != null && issuerIds.length >= capacity) {
+        return;
+      }
+
+      int newLen = (issuerIds == null) ? capacity : Math.max(capacity, issuerIds.length * 2);
+      issuerIds = (issuerIds == null) ? new int[newLen] : Arrays.copyOf(issuerIds, newLen);
+      serials = (serials == null) ? new byte[newLen][] : Arrays.copyOf(serials, newLen);
+      notBefores = (notBefores == null) ? new long[newLen] : Arrays.copyOf(notBefores, newLen);
+      notAfters = (notAfters == null) ? new long[newLen] : Arrays.copyOf(notAfters, newLen);
+      reasons = (reasons == null) ? new byte[newLen] : Arrays.copyOf(reasons, newLen);
+      revTimes = (revTimes == null) ? new long[newLen] : Arrays.copyOf(revTimes, newLen);
+      invalTimes = (invalTimes == null) ? new long[newLen] : Arrays.copyOf(invalTimes, newLen);
+      certHashes = (certHashes == null) ? new byte[newLen][] : Arrays.copyOf(certHashes, newLen);
+    }
+
+    /**
+     * Appends the row. Must not be called after {@link #buildSlots()}.
+     */
+    void add(int issuerId, byte[] serial, CertStatusRow row) {
+      ensureCapacity(size + 1);
+      int idx = size++;
+      issuerIds[idx] = issuerId;
+      serials[idx] = serial;
+      notBefores[idx] = row.notBefore;
+      notAfters[idx] = row.notAfter;
+      reasons[idx] = row.revoked ? (byte) row.reason : NOT_REVOKED;
+      revTimes[idx] = row.revTime;
+      invalTimes[idx] = row.invalTime;
+      certHashes[idx] = row.certHash;
+    }
+
+    /**
+     * Builds the hash slots of the appended rows. A later row with the same key replaces the
+     * former one.
+     */
+    void buildSlots() {
+      int capacity = Integer.highestOneBit(Math.max(16, size * 2 - 1)) << 1;
+      slots = new int[capacity];
+      int mask = capacity - 1;
+      for (int idx = 0; idx < size; idx++) {
+        int pos = hash(issuerIds[idx], serials[idx]) & mask;
+        while (true) {
+          int ref = slots[pos];
+          if (ref == 0 || (issuerIds[ref - 1] == issuerIds[idx]
+              && Arrays.equals(serials[ref - 1], serials[idx]))) {
+            slots[pos] = idx + 1;
+            break;
+          }
+          pos = (pos + 1) & mask;
+        }
+      }
+    }
+
+    CertStatusRow get(int issuerId, byte[] serial) {
+      int mask = slots.length - 1;
+      int pos = hash(issuerId, serial) & mask;
+      while (true) {
+        int ref = slots[pos];
+        if (ref == 0) {
+          return null;
+        }
+
+        int idx = ref - 1;
+        if (issuerIds[idx] == issuerId && Arrays.equals(serials[idx], serial)) {
+          CertStatusRow row = new CertStatusRow();
+          row.notBefore = notBefores[idx];
+          row.notAfter = notAfters[idx];
+          row.revoked = reasons[idx] != NOT_REVOKED;
+          if (row.revoked) {
+            row.reason = reasons[idx];
+            row.revTime = revTimes[idx];
+            row.invalTime = invalTimes[idx];
+          }
+          row.certHash = certHashes[idx];
+          return row;
+        }
+        pos = (pos + 1) & mask;
+      }
+    }
+
+  } // class RowTable
+
+  private static final class Snapshot {
+
+    private final RowTable table;
+
+    private final ConcurrentHashMap<SerialKey, CertStatusRow> changedRows =
+        new ConcurrentHashMap<>();
+
+    Snapshot(RowTable table) {
+      this.table = table;
+    }
+
+  } // class Snapshot
+
+  private static final Logger LOG = LoggerFactory.getLogger(InMemoryCertStatusIndex.class);
+
+  private static final int ROWS_PER_QUERY = 1000;
+
+  private static final String CORE_SQL =
+      "ID,IID,SN,LUPDATE,NBEFORE,NAFTER,REV,RR,RT,RIT,HASH FROM CERT WHERE ID>?";
+
+  private final DataSourceWrapper datasource;
+
+  private final long fullReloadIntervalMs;
+
+  private final long overlapSeconds;
+
+  private final String sqlFullReload;
+
+  private final String sqlIncrementalReload;
+
+  private volatile Snapshot snapshot;
+
+  private Set<Integer> loadedIssuerIds = Collections.emptySet();
+
+  private int numRows;
+
+  private long maxId;
+
+  private long maxLastUpdate;
+
+  private long lastFullReload;
+
+  private volatile boolean fullReloadRequired;
+
+  InMemoryCertStatusIndex(DataSourceWrapper datasource, long fullReloadIntervalMs,
+      long overlapSeconds) {
+    this.datasource = Args.notNull(datasource, "datasource");
+    this.fullReloadIntervalMs = Args.positive(fullReloadIntervalMs, "fullReloadIntervalMs");
+    this.overlapSeconds = Args.notNegative(overlapSeconds, "overlapSeconds");
+    this.sqlFullReload = datasource.buildSelectFirstSql(ROWS_PER_QUERY, "ID", CORE_SQL);
+    this.sqlIncrementalReload = datasource.buildSelectFirstSql(ROWS_PER_QUERY, "ID",
+        CORE_SQL + " AND (ID>? OR LUPDATE>=?)");
+  }
+
+  boolean isLoaded() {
+    return snapshot != null;
+  }
+
+  /**
+   * Gets the status of the certificate.
+   * @param issuerId
+   *          Issuer id of the certificate.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   * @return the certificate status, or {@code null} if the certificate is unknown.
+   */
+  CertStatusRow get(int issuerId, BigInteger serialNumber) {
+    Snapshot snap = snapshot;
+    if (snap == null) {
+      return null;
+    }
+
+    byte[] serial = serialNumber.toByteArray();
+    if (!snap.changedRows.isEmpty()) {
+      CertStatusRow row = snap.changedRows.get(new SerialKey(issuerId, serial));
+      if (row != null) {
+        return row;
+      }
+    }
+
+    return snap.table.get(issuerId, serial);
+  }
+
+  void requireFullReload() {
+    fullReloadRequired = true;
+  }
+
+  /**
+   * Loads the new and changed certificates of the given issuers.
+   * @param issuerIds
+   *          Ids of the issuers whose certificates will be loaded.
+   */
+  synchronized void refresh(Set<Integer> issuerIds) throws DataAccessException {
+    boolean fullReload = fullReloadRequired || snapshot == null
+        || !loadedIssuerIds.equals(issuerIds)
+        || System.currentTimeMillis() - lastFullReload > fullReloadIntervalMs;
+
+    if (fullReload) {
+      fullReload(issuerIds);
+    } else {
+      incrementalReload();
+    }
+  }
+
+  private void fullReload(Set<Integer> issuerIds) throws DataAccessException {
+    long start = System.currentTimeMillis();
+    fullReloadRequired = false;
+
+    Set<Integer> newIssuerIds = new HashSet<>(issuerIds);
+    RowTable table = new RowTable(numRows + numRows / 8);
+    long[] watermarks = new long[2];
+    int num = readRows(sqlFullReload, false, newIssuerIds, table, null, watermarks);
+    table.buildSlots();
+
+    this.snapshot = new Snapshot(table);
+    this.loadedIssuerIds = newIssuerIds;
+    this.numRows = num;
+    this.maxId = watermarks[0];
+    this.maxLastUpdate = watermarks[1];
+    this.lastFullReload = start;
+
+    LOG.info("loaded {} certificates into memory, took {} ms",
+        num, System.currentTimeMillis() - start);
+  }
+
+  private void incrementalReload() throws DataAccessException {
+    long[] watermarks = new long[]{maxId, maxLastUpdate - overlapSeconds};
+    int num = readRows(sqlIncrementalReload, true, loadedIssuerIds, null,
+        snapshot.changedRows, watermarks);
+    this.maxId = watermarks[0];
+    this.maxLastUpdate = Math.max(maxLastUpdate, watermarks[1]);
+
+    if (num > 0) {
+      LOG.debug("loaded {} new or changed certificates into memory", num);
+    }
+  }
+
+  /**
+   * Reads the rows into the table (full reload) or the map (incremental reload).
+   * @return number of read rows.
+   */
+  private int readRows(String sql, boolean incremental, Set<Integer> issuerIds,
+      RowTable table, ConcurrentHashMap<SerialKey, CertStatusRow> changedRows,
+      long[] watermarks) throws DataAccessException {
+    final long minId = watermarks[0];
+    final long minLastUpdate = watermarks[1];
+
+    int num = 0;
+    long cursorId = incremental ? 0 : minId;
+    PreparedStatement ps = datasource.prepareReadStatement(sql);
+    try {
+      while (true) {
+        ResultSet rs = null;
+        int numInQuery = 0;
+        try {
+          int idx = 1;
+          ps.setLong(idx++, cursorId);
+          if (incremental) {
+            ps.setLong(idx++, minId);
+            ps.setLong(idx++, minLastUpdate);
+          }
+
+          rs = ps.executeQuery();
+          while (rs.next()) {
+            numInQuery++;
+            long id = rs.getLong("ID");
+            cursorId = Math.max(cursorId, id);
+            watermarks[0] = Math.max(watermarks[0], id);
+            watermarks[1] = Math.max(watermarks[1], rs.getLong("LUPDATE"));
+
+            int issuerId = rs.getInt("IID");
+            if (!issuerIds.contains(issuerId)) {
+              continue;
+            }
+
+            byte[] serial = new BigInteger(rs.getString("SN"), 16).toByteArray();
+            CertStatusRow row = CertStatusRow.read(rs, true, true);
+            if (table != null) {
+              table.add(issuerId, serial, row);
+            } else {
+              changedRows.put(new SerialKey(issuerId, serial), row);
+            }
+            num++;
+          }
+        } finally {
+          datasource.releaseResources(null, rs);
+        }
+
+        if (numInQuery < ROWS_PER_QUERY) {
+          break;
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+
+    return num;
+  }
+
+  private static int hash(int issuerId, byte[] serial) {
+    int h = 31 * Arrays.hashCode(serial) + issuerId;
+    // spread the bits, since the slot is selected by the lowest bits.
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    return h;
+  }
+
+}
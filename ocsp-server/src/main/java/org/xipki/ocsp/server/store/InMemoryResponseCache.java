@@ -0,0 +1,198 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo.ResponseCacheInfo;
+import org.xipki.security.AlgorithmCode;
+import org.xipki.util.Args;
+import org.xipki.util.LruCache;
+
+/**
+ * Bounded in-memory cache in front of the database based {@link ResponseCacher}.
+ * Entries are evicted in LRU order if the cache is full, and are discarded if the
+ * nextUpdate is too close, or if the thisUpdate is older than the validity of the cached
+ * responses, as in the database.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class InMemoryResponseCache {
+
+  private static final class CacheKey {
+
+    private final int issuerId;
+
+    private final BigInteger serialNumber;
+
+    private final AlgorithmCode sigAlg;
+
+    CacheKey(int issuerId, BigInteger serialNumber, AlgorithmCode sigAlg) {
+      this.issuerId = issuerId;
+      this.serialNumber = serialNumber;
+      this.sigAlg = sigAlg;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * issuerId + serialNumber.hashCode()) + sigAlg.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof CacheKey)) {
+        return false;
+      }
+
+      CacheKey other = (CacheKey) obj;
+      return issuerId == other.issuerId && sigAlg == other.sigAlg
+          && serialNumber.equals(other.serialNumber);
+    }
+
+  } // class CacheKey
+
+  private static final class CacheValue {
+
+    private final long thisUpdate;
+
+    private final long nextUpdate;
+
+    private final OcspRespWithCacheInfo response;
+
+    CacheValue(long thisUpdate, long nextUpdate, OcspRespWithCacheInfo response) {
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+      this.response = response;
+    }
+
+  } // class CacheValue
+
+  private final LruCache<CacheKey, CacheValue> cache;
+
+  private final long minNextUpdateMargin;
+
+  private final long validity;
+
+  /**
+   * Constructor.
+   * @param maxSize
+   *          Maximal number of cached responses.
+   * @param minNextUpdateMargin
+   *          Responses with nextUpdate in less than this number of seconds will not be served.
+   * @param validity
+   *          Validity in seconds of the cached responses. Responses with thisUpdate older
+   *          than this number of seconds will not be served.
+   */
+  InMemoryResponseCache(int maxSize, long minNextUpdateMargin, long validity) {
+    this.cache = new LruCache<>(Args.positive(maxSize, "maxSize"));
+    this.minNextUpdateMargin = minNextUpdateMargin;
+    this.validity = Args.positive(validity, "validity");
+  }
+
+  OcspRespWithCacheInfo get(int issuerId, BigInteger serialNumber, AlgorithmCode sigAlg) {
+    CacheKey key = new CacheKey(issuerId, serialNumber, sigAlg);
+    CacheValue value = cache.get(key);
+    if (value == null) {
+      return null;
+    }
+
+    if (isExpired(value, System.currentTimeMillis() / 1000)) {
+      cache.remove(key);
+      return null;
+    }
+
+    return value.response;
+  }
+
+  /**
+   * Caches the response.
+   * @param issuerId
+   *          Issuer id of the certificate.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   * @param sigAlg
+   *          Signature algorithm of the response.
+   * @param thisUpdate
+   *          thisUpdate, seconds since January 1, 1970, 00:00:00 GMT.
+   * @param nextUpdate
+   *          nextUpdate, seconds since January 1, 1970, 00:00:00 GMT.
+   * @param response
+   *          The DER-encoded response.
+   */
+  void put(int issuerId, BigInteger serialNumber, AlgorithmCode sigAlg,
+      long thisUpdate, long nextUpdate, byte[] response) {
+    ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate * 1000);
+    cacheInfo.setNextUpdate(nextUpdate * 1000);
+    cache.put(new CacheKey(issuerId, serialNumber, sigAlg),
+        new CacheValue(thisUpdate, nextUpdate, new OcspRespWithCacheInfo(response, cacheInfo)));
+  }
+
+  /**
+   * Removes the cached responses, signed with any algorithm, of the given certificate.
+   * @param issuerId
+   *          Issuer id of the certificate.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   */
+  void invalidate(int issuerId, BigInteger serialNumber) {
+    for (AlgorithmCode sigAlg : AlgorithmCode.values()) {
+      cache.remove(new CacheKey(issuerId, serialNumber, sigAlg));
+    }
+  }
+
+  void invalidateAll() {
+    cache.evictAll();
+  }
+
+  /**
+   * Removes all responses whose nextUpdate is too close, or whose thisUpdate is too old.
+   * @return number of removed responses.
+   */
+  int removeExpiredResponses() {
+    long nowInSec = System.currentTimeMillis() / 1000;
+    int num = 0;
+    for (Map.Entry<CacheKey, CacheValue> entry : cache.snapshot().entrySet()) {
+      if (isExpired(entry.getValue(), nowInSec)) {
+        cache.remove(entry.getKey());
+        num++;
+      }
+    }
+    return num;
+  }
+
+  private boolean isExpired(CacheValue value, long nowInSec) {
+    return value.nextUpdate < nowInSec + minNextUpdateMargin
+        || value.thisUpdate < nowInSec - validity;
+  }
+
+  int size() {
+    return cache.size();
+  }
+
+  @Override
+  public String toString() {
+    return cache.toString();
+  }
+
+}
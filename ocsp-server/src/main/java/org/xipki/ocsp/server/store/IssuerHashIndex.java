@@ -0,0 +1,134 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.Args;
+
+/**
+ * Index of the issuers by the hash of name and public key, as used in the CertID of
+ * OCSP requests. The lookup works on the encoded request directly without copying it.
+ *
+ * @param <T> type of the indexed issuer.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class IssuerHashIndex<T> {
+
+  private static final class HashKey {
+
+    private final HashAlgo hashAlgo;
+
+    private final byte[] data;
+
+    private final int from;
+
+    private final int length;
+
+    private final int hashCode;
+
+    HashKey(HashAlgo hashAlgo, byte[] data, int from, int length) {
+      this.hashAlgo = hashAlgo;
+      this.data = data;
+      this.from = from;
+      this.length = length;
+
+      int hash = hashAlgo.ordinal();
+      for (int i = from; i < from + length; i++) {
+        hash = 31 * hash + data[i];
+      }
+      this.hashCode = hash;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof HashKey)) {
+        return false;
+      }
+
+      HashKey other = (HashKey) obj;
+      if (hashCode != other.hashCode || hashAlgo != other.hashAlgo || length != other.length) {
+        return false;
+      }
+
+      for (int i = 0; i < length; i++) {
+        if (data[from + i] != other.data[other.from + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+  } // class HashKey
+
+  private final Map<HashKey, T> map = new HashMap<>();
+
+  /**
+   * Adds the issuer. If an issuer with the same hash has been added before, it is kept, so
+   * that the lookup returns the first added issuer, like a linear scan.
+   * @param hashAlgo
+   *          Hash algorithm.
+   * @param encodedHash
+   *          Encoded hashes of the issuer's name and public key, namely the DER-encoded
+   *          issuerNameHash followed by the DER-encoded issuerKeyHash. The array must not be
+   *          changed afterwards.
+   * @param issuer
+   *          The issuer.
+   * @return the previously added issuer with the same hash, or {@code null}.
+   */
+  public T put(HashAlgo hashAlgo, byte[] encodedHash, T issuer) {
+    Args.notNull(hashAlgo, "hashAlgo");
+    Args.notNull(encodedHash, "encodedHash");
+    Args.notNull(issuer, "issuer");
+    return map.putIfAbsent(new HashKey(hashAlgo, encodedHash, 0, encodedHash.length), issuer);
+  }
+
+  public T get(RequestIssuer reqIssuer) {
+    HashAlgo hashAlgo = reqIssuer.hashAlgorithm();
+    if (hashAlgo == null) {
+      return null;
+    }
+
+    byte[] data = reqIssuer.getData();
+    int from = reqIssuer.getNameHashFrom();
+    int length = (2 + hashAlgo.getLength()) << 1;
+    if (from < 0 || from + length > data.length) {
+      return null;
+    }
+
+    return map.get(new HashKey(hashAlgo, data, from, length));
+  }
+
+  public int size() {
+    return map.size();
+  }
+
+}
@@ -19,11 +19,14 @@ package org.xipki.ocsp.server.store;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
 
 /**
  * TODO.
@@ -33,34 +36,52 @@ import org.xipki.ocsp.api.RequestIssuer;
 
 class IssuerStore {
 
-  private final List<IssuerEntry> entries;
+  /**
+   * Immutable view of the issuers. It will be replaced as a whole if an issuer is added.
+   */
+  private static final class Snapshot {
 
-  private Set<Integer> ids;
+    private final List<IssuerEntry> entries;
 
-  public IssuerStore(List<IssuerEntry> entries) {
-    this.entries = new ArrayList<>(entries.size());
-    Set<Integer> idSet = new HashSet<>(entries.size());
+    private final Set<Integer> ids;
+
+    private final Map<Integer, IssuerEntry> idMap;
+
+    private final IssuerHashIndex<IssuerEntry> hashIndex;
+
+    Snapshot(List<IssuerEntry> entries) {
+      this.entries = Collections.unmodifiableList(entries);
+      this.idMap = new HashMap<>(entries.size() * 2);
+      this.hashIndex = new IssuerHashIndex<>();
 
-    for (IssuerEntry entry : entries) {
-      for (IssuerEntry existingEntry : this.entries) {
-        if (existingEntry.getId() == entry.getId()) {
+      for (IssuerEntry entry : entries) {
+        if (idMap.put(entry.getId(), entry) != null) {
           throw new IllegalArgumentException(
               "issuer with the same id " + entry.getId() + " already available");
         }
+
+        for (HashAlgo ha : HashAlgo.values()) {
+          hashIndex.put(ha, entry.getEncodedHash(ha), entry);
+        }
       }
-      this.entries.add(entry);
-      idSet.add(entry.getId());
+
+      this.ids = Collections.unmodifiableSet(new HashSet<>(idMap.keySet()));
     }
 
-    this.ids = Collections.unmodifiableSet(idSet);
+  } // class Snapshot
+
+  private volatile Snapshot snapshot;
+
+  public IssuerStore(List<IssuerEntry> entries) {
+    this.snapshot = new Snapshot(new ArrayList<>(entries));
   }
 
   public int size() {
-    return ids.size();
+    return snapshot.ids.size();
   }
 
   public Set<Integer> getIds() {
-    return ids;
+    return snapshot.ids;
   }
 
   public Integer getIssuerIdForFp(RequestIssuer reqIssuer) {
@@ -69,30 +90,17 @@ class IssuerStore {
   }
 
   public IssuerEntry getIssuerForId(int id) {
-    for (IssuerEntry entry : entries) {
-      if (entry.getId() == id) {
-        return entry;
-      }
-    }
-
-    return null;
+    return snapshot.idMap.get(id);
   }
 
   public IssuerEntry getIssuerForFp(RequestIssuer reqIssuer) {
-    for (IssuerEntry entry : entries) {
-      if (entry.matchHash(reqIssuer)) {
-        return entry;
-      }
-    }
-
-    return null;
+    return snapshot.hashIndex.get(reqIssuer);
   }
 
-  public void addIssuer(IssuerEntry issuer) {
-    this.entries.add(issuer);
-    Set<Integer> newIds = new HashSet<>(this.ids);
-    newIds.add(issuer.getId());
-    this.ids = Collections.unmodifiableSet(newIds);
+  public synchronized void addIssuer(IssuerEntry issuer) {
+    List<IssuerEntry> newEntries = new ArrayList<>(snapshot.entries);
+    newEntries.add(issuer);
+    this.snapshot = new Snapshot(newEntries);
   }
 
 }
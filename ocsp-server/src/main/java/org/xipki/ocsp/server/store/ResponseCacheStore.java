@@ -0,0 +1,166 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.List;
+
+import org.xipki.ocsp.api.OcspStoreException;
+
+/**
+ * Backend of the {@link ResponseCacher} which persists the cached OCSP responses. The
+ * issuers are managed by the {@link ResponseCacher} itself.
+ *
+ * <p>The implementations must be thread-safe.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public interface ResponseCacheStore extends Closeable {
+
+  /**
+   * Cached OCSP response.
+   */
+  final class CachedResponse {
+
+    private final long id;
+
+    private final int issuerId;
+
+    private final byte[] identBytes;
+
+    private final long thisUpdate;
+
+    private final long nextUpdate;
+
+    private final byte[] response;
+
+    /**
+     * Constructor.
+     * @param id
+     *          Identifier derived from the issuerId and identBytes.
+     * @param issuerId
+     *          Issuer id.
+     * @param identBytes
+     *          Identifier of the response within the issuer: signature algorithm code
+     *          followed by the serial number.
+     * @param thisUpdate
+     *          thisUpdate, seconds since January 1, 1970, 00:00:00 GMT.
+     * @param nextUpdate
+     *          nextUpdate, seconds since January 1, 1970, 00:00:00 GMT, or 0 if not present.
+     * @param response
+     *          The DER-encoded OCSP response. May be {@code null}, if only the identifier
+     *          is required.
+     */
+    public CachedResponse(long id, int issuerId, byte[] identBytes, long thisUpdate,
+        long nextUpdate, byte[] response) {
+      this.id = id;
+      this.issuerId = issuerId;
+      this.identBytes = identBytes;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+      this.response = response;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public int getIssuerId() {
+      return issuerId;
+    }
+
+    public byte[] getIdentBytes() {
+      return identBytes;
+    }
+
+    public long getThisUpdate() {
+      return thisUpdate;
+    }
+
+    public long getNextUpdate() {
+      return nextUpdate;
+    }
+
+    public byte[] getResponse() {
+      return response;
+    }
+
+  } // class CachedResponse
+
+  /**
+   * Gets the cached response.
+   * @param id
+   *          Identifier of the response.
+   * @return the cached response, or {@code null} if not cached.
+   * @throws OcspStoreException
+   *           if error occurs while reading the response.
+   */
+  CachedResponse get(long id) throws OcspStoreException;
+
+  /**
+   * Stores the responses. Existing responses with the same identifier are replaced.
+   * @param responses
+   *          Responses to be stored. Must not be {@code null}.
+   * @throws OcspStoreException
+   *           if error occurs while writing the responses.
+   */
+  void put(Collection<CachedResponse> responses) throws OcspStoreException;
+
+  /**
+   * Removes the cached responses.
+   * @param ids
+   *          Identifiers of the responses. Must not be {@code null}.
+   * @throws OcspStoreException
+   *           if error occurs while removing the responses.
+   */
+  void invalidate(Collection<Long> ids) throws OcspStoreException;
+
+  /**
+   * Removes the expired responses.
+   * @param maxThisUpdate
+   *          Responses with thisUpdate less than this value will be removed.
+   * @param minInvalidThisUpdate
+   *          Responses with thisUpdate greater than this value will be removed.
+   * @return number of removed responses.
+   * @throws OcspStoreException
+   *           if error occurs while removing the responses.
+   */
+  int removeExpired(long maxThisUpdate, long minInvalidThisUpdate) throws OcspStoreException;
+
+  /**
+   * Gets the responses which expire soon.
+   * @param minId
+   *          Only responses with ID greater than this value will be returned.
+   * @param maxNextUpdate
+   *          Only responses with nextUpdate less than this value will be returned.
+   * @param maxEntries
+   *          Maximal number of returned responses.
+   * @return the responses without the encoded response, ordered by the ID.
+   * @throws OcspStoreException
+   *           if error occurs while reading the responses.
+   */
+  List<CachedResponse> getExpiring(long minId, long maxNextUpdate, int maxEntries)
+      throws OcspStoreException;
+
+  @Override
+  void close();
+
+}
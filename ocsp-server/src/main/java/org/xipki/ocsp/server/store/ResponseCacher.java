@@ -21,18 +21,24 @@ import java.io.Closeable;
 import java.math.BigInteger;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bouncycastle.crypto.Digest;
 import org.slf4j.Logger;
@@ -42,7 +48,9 @@ import org.xipki.datasource.DataAccessException.Reason;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.ocsp.api.OcspRespWithCacheInfo;
 import org.xipki.ocsp.api.OcspRespWithCacheInfo.ResponseCacheInfo;
+import org.xipki.ocsp.api.OcspStoreException;
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.store.ResponseCacheStore.CachedResponse;
 import org.xipki.security.AlgorithmCode;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.util.X509Util;
@@ -62,9 +70,66 @@ import org.xipki.util.concurrent.ConcurrentBagEntry;
 
 public class ResponseCacher implements Closeable {
 
+  /**
+   * Identifier of a cached OCSP response.
+   */
+  public static final class CachedResponseIdent {
+
+    private final long id;
+
+    private final int issuerId;
+
+    private final RequestIssuer requestIssuer;
+
+    private final BigInteger serialNumber;
+
+    private final AlgorithmCode sigAlg;
+
+    private CachedResponseIdent(long id, int issuerId, RequestIssuer requestIssuer,
+        BigInteger serialNumber, AlgorithmCode sigAlg) {
+      this.id = id;
+      this.issuerId = issuerId;
+      this.requestIssuer = requestIssuer;
+      this.serialNumber = serialNumber;
+      this.sigAlg = sigAlg;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public int getIssuerId() {
+      return issuerId;
+    }
+
+    public RequestIssuer getRequestIssuer() {
+      return requestIssuer;
+    }
+
+    public BigInteger getSerialNumber() {
+      return serialNumber;
+    }
+
+    public AlgorithmCode getSigAlg() {
+      return sigAlg;
+    }
+
+  } // class CachedResponseIdent
+
   private static final Logger LOG = LoggerFactory.getLogger(ResponseCacher.class);
 
-  private static final long SEC_PER_WEEK = 7L * 24 * 60 * 60;
+  private static final long SEC_PER_DAY = 24L * 60 * 60;
+
+  private static final long SEC_PER_WEEK = 7 * SEC_PER_DAY;
+
+  // nextUpdate of a cached response must be at least in 600 seconds
+  private static final long MIN_NEXT_UPDATE_MARGIN = 600;
+
+  /**
+   * Invalidations are remembered this long (seconds), so that the responses built before and
+   * stored after an invalidation are discarded.
+   */
+  private static final long INVALIDATION_RETENTION = 600;
 
   private static final String SQL_ADD_ISSUER = "INSERT INTO ISSUER (ID,S1C,CERT) VALUES (?,?,?)";
 
@@ -74,14 +139,6 @@ public class ResponseCacher implements Closeable {
 
   private static final String SQL_SELECT_ISSUER = "SELECT ID,CERT FROM ISSUER";
 
-  private static final String SQL_DELETE_EXPIRED_RESP = "DELETE FROM OCSP WHERE THIS_UPDATE<?";
-
-  private static final String SQL_ADD_RESP = "INSERT INTO OCSP (ID,IID,IDENT,"
-      + "THIS_UPDATE,NEXT_UPDATE,RESP) VALUES (?,?,?,?,?,?)";
-
-  private static final String SQL_UPDATE_RESP = "UPDATE OCSP SET THIS_UPDATE=?,"
-      + "NEXT_UPDATE=?,RESP=? WHERE ID=?";
-
   private final ConcurrentBag<ConcurrentBagEntry<Digest>> idDigesters;
 
   private class IssuerUpdater implements Runnable {
@@ -108,10 +165,25 @@ public class ResponseCacher implements Closeable {
       }
 
       inProcess = true;
-      long maxThisUpdate = System.currentTimeMillis() / 1000 - validity;
+      long nowInSec = System.currentTimeMillis() / 1000;
+      long maxThisUpdate = nowInSec - validity;
       try {
-        int num = removeExpiredResponses(maxThisUpdate);
+        if (memoryCache != null) {
+          int num = memoryCache.removeExpiredResponses();
+          LOG.info("removed {} response from the memory cache, current state: {}",
+              num, memoryCache);
+        }
+
+        int num = store.removeExpired(maxThisUpdate, nowInSec + SEC_PER_DAY);
         LOG.info("removed {} response with thisUpdate < {}", num, maxThisUpdate);
+
+        long minInvalidationTime = nowInSec - INVALIDATION_RETENTION;
+        for (Long id : invalidations.keySet()) {
+          Long time = invalidations.get(id);
+          if (time != null && time < minInvalidationTime) {
+            invalidations.remove(id, time);
+          }
+        }
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "could not remove expired responses");
       } finally {
@@ -121,19 +193,127 @@ public class ResponseCacher implements Closeable {
 
   } // class ExpiredResponsesCleaner
 
-  private final String sqlSelectIssuerCert;
+  /**
+   * Writes the queued responses in batches to the store, so that the request threads
+   * do not wait for the store.
+   */
+  private class ResponseWriter implements Runnable {
+
+    private final BlockingQueue<CachedResponse> queue;
+
+    private final int maxBatchSize;
+
+    private final AtomicLong numDropped = new AtomicLong(0);
+
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    ResponseWriter(int queueSize, int maxBatchSize) {
+      this.queue = new ArrayBlockingQueue<>(queueSize);
+      this.maxBatchSize = maxBatchSize;
+      this.thread = new Thread(this, "ocsp-response-cache-writer");
+      this.thread.setDaemon(true);
+    }
+
+    void start() {
+      thread.start();
+    }
 
-  private final String sqlSelectOcsp;
+    /**
+     * Queues the response. The response is dropped if the queue is full.
+     * @return whether the response has been queued.
+     */
+    boolean add(CachedResponse response) {
+      if (queue.offer(response)) {
+        return true;
+      }
+
+      long num = numDropped.incrementAndGet();
+      if (num % 1000 == 1) {
+        LOG.warn("write-behind queue of the OCSP response cache is full, dropped {} responses",
+            num);
+      }
+      return false;
+    }
+
+    /**
+     * Writes the queued responses and stops the writer.
+     */
+    void close() {
+      running = false;
+      try {
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+      } catch (InterruptedException ex) {
+        LOG.error("interrupted: {}", ex.getMessage());
+      }
+
+      if (!queue.isEmpty()) {
+        LOG.warn("discarded {} unwritten responses of the OCSP response cache", queue.size());
+        queue.clear();
+      }
+    }
+
+    @Override
+    public void run() {
+      List<CachedResponse> batch = new ArrayList<>(maxBatchSize);
+      while (running || !queue.isEmpty()) {
+        try {
+          CachedResponse first = queue.poll(1, TimeUnit.SECONDS);
+          if (first == null) {
+            continue;
+          }
+
+          batch.add(first);
+          queue.drainTo(batch, maxBatchSize - 1);
+          for (int i = batch.size() - 1; i >= 0; i--) {
+            if (isInvalidated(batch.get(i))) {
+              batch.remove(i);
+            }
+          }
+
+          if (!batch.isEmpty()) {
+            store.put(batch);
+            for (CachedResponse entry : batch) {
+              removeIfInvalidated(entry);
+            }
+          }
+        } catch (InterruptedException ex) {
+          LOG.error("interrupted: {}", ex.getMessage());
+          running = false;
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "could not write " + batch.size() + " cached OCSP responses");
+        } finally {
+          batch.clear();
+        }
+      }
+    } // method run
+
+  } // class ResponseWriter
+
+  private final String sqlSelectIssuerCert;
 
   private final boolean master;
 
+  private final ResponseCacheStore store;
+
   private final int validity;
 
   private final AtomicBoolean onService;
 
+  private final InMemoryResponseCache memoryCache;
+
+  private final ResponseWriter responseWriter;
+
+  /**
+   * Time (seconds since January 1, 1970, 00:00:00 GMT) of the last invalidation of the cached
+   * responses, indexed by the response ID.
+   */
+  private final ConcurrentHashMap<Long, Long> invalidations = new ConcurrentHashMap<>();
+
   private DataSourceWrapper datasource;
 
-  private IssuerStore issuerStore;
+  private volatile IssuerStore issuerStore;
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
@@ -141,14 +321,96 @@ public class ResponseCacher implements Closeable {
 
   private ScheduledFuture<?> issuerUpdater;
 
-  public ResponseCacher(DataSourceWrapper datasource, boolean master, int validity) {
+  public ResponseCacher(DataSourceWrapper datasource, boolean master, int validity)
+      throws DataAccessException {
+    this(datasource, master, validity, 0);
+  }
+
+  /**
+   * Constructor.
+   * @param datasource
+   *          Datasource of the cache database.
+   * @param master
+   *          Whether this responder is the master.
+   * @param validity
+   *          Validity in seconds of the cached responses.
+   * @param memoryCacheSize
+   *          Maximal number of responses cached in memory in front of the database.
+   *          Non-positive value to deactivate the memory cache.
+   * @throws DataAccessException
+   *           if the layout of the cache database could not be detected.
+   */
+  public ResponseCacher(DataSourceWrapper datasource, boolean master, int validity,
+      int memoryCacheSize) throws DataAccessException {
+    this(datasource, master, validity, memoryCacheSize, 0, 0);
+  }
+
+  /**
+   * Constructor.
+   * @param datasource
+   *          Datasource of the cache database.
+   * @param master
+   *          Whether this responder is the master.
+   * @param validity
+   *          Validity in seconds of the cached responses.
+   * @param memoryCacheSize
+   *          Maximal number of responses cached in memory in front of the database.
+   *          Non-positive value to deactivate the memory cache.
+   * @param writeBehindQueueSize
+   *          Maximal number of responses waiting to be written to the database. Non-positive
+   *          value to write the responses synchronously in {@link #storeOcspResponse}.
+   * @param writeBehindBatchSize
+   *          Maximal number of responses written to the database in one batch.
+   * @throws DataAccessException
+   *           if the layout of the cache database could not be detected.
+   */
+  public ResponseCacher(DataSourceWrapper datasource, boolean master, int validity,
+      int memoryCacheSize, int writeBehindQueueSize, int writeBehindBatchSize)
+      throws DataAccessException {
+    this(datasource, master, validity, memoryCacheSize, writeBehindQueueSize,
+        writeBehindBatchSize, null);
+  }
+
+  /**
+   * Constructor.
+   * @param datasource
+   *          Datasource of the cache database.
+   * @param master
+   *          Whether this responder is the master.
+   * @param validity
+   *          Validity in seconds of the cached responses.
+   * @param memoryCacheSize
+   *          Maximal number of responses cached in memory in front of the store.
+   *          Non-positive value to deactivate the memory cache.
+   * @param writeBehindQueueSize
+   *          Maximal number of responses waiting to be written to the store. Non-positive
+   *          value to write the responses synchronously in {@link #storeOcspResponse}.
+   * @param writeBehindBatchSize
+   *          Maximal number of responses written to the store in one batch.
+   * @param store
+   *          Store of the responses. If {@code null}, the responses are stored in the
+   *          table OCSP of the cache database. The issuers are always stored in the cache
+   *          database.
+   * @throws DataAccessException
+   *           if the layout of the cache database could not be detected.
+   */
+  public ResponseCacher(DataSourceWrapper datasource, boolean master, int validity,
+      int memoryCacheSize, int writeBehindQueueSize, int writeBehindBatchSize,
+      ResponseCacheStore store) throws DataAccessException {
     this.datasource = Args.notNull(datasource, "datasource");
     this.master = master;
     this.validity = Args.positive(validity, "validity");
+    this.memoryCache = (memoryCacheSize > 0)
+        ? new InMemoryResponseCache(memoryCacheSize, MIN_NEXT_UPDATE_MARGIN, validity)
+        : null;
+    this.responseWriter = (writeBehindQueueSize > 0)
+        ? new ResponseWriter(writeBehindQueueSize,
+            Args.positive(writeBehindBatchSize, "writeBehindBatchSize"))
+        : null;
     this.sqlSelectIssuerCert = datasource.buildSelectFirstSql(1, "CERT FROM ISSUER WHERE ID=?");
-    this.sqlSelectOcsp = datasource.buildSelectFirstSql(1,
-        "IID,IDENT,THIS_UPDATE,NEXT_UPDATE,RESP FROM OCSP WHERE ID=?");
     this.onService = new AtomicBoolean(false);
+    this.store = (store == null) ? new DbResponseCacheStore(datasource) : store;
+    LOG.info("OCSP response cache uses the store {}", this.store);
 
     this.idDigesters = new ConcurrentBag<>();
     for (int i = 0; i < 20; i++) {
@@ -174,10 +436,24 @@ public class ResponseCacher implements Closeable {
     // check every 600 seconds (10 minutes)
     this.issuerUpdater = scheduledThreadPoolExecutor.scheduleAtFixedRate(
         new IssuerUpdater(), 448, 600, TimeUnit.SECONDS);
+
+    if (responseWriter != null) {
+      responseWriter.start();
+    }
   }
 
   @Override
   public void close() {
+    if (memoryCache != null) {
+      memoryCache.invalidateAll();
+    }
+
+    if (responseWriter != null) {
+      responseWriter.close();
+    }
+
+    store.close();
+
     if (datasource != null) {
       datasource.close();
       datasource = null;
@@ -257,141 +533,215 @@ public class ResponseCacher implements Closeable {
   }
 
   public OcspRespWithCacheInfo getOcspResponse(int issuerId, BigInteger serialNumber,
-      AlgorithmCode sigAlg) throws DataAccessException {
-    final String sql = sqlSelectOcsp;
-    byte[] identBytes = buildIdent(serialNumber, sigAlg);
-    long id = deriveId(issuerId, identBytes);
-    PreparedStatement ps = datasource.prepareStatement(sql);
-    ResultSet rs = null;
-
-    try {
-      ps.setLong(1, id);
-      rs = ps.executeQuery();
-      if (!rs.next()) {
-        return null;
+      AlgorithmCode sigAlg) throws OcspStoreException {
+    if (memoryCache != null) {
+      OcspRespWithCacheInfo resp = memoryCache.get(issuerId, serialNumber, sigAlg);
+      if (resp != null) {
+        return resp;
       }
+    }
 
-      int dbIid = rs.getInt("IID");
-      if (dbIid != issuerId) {
-        return null;
-      }
+    byte[] identBytes = buildIdent(serialNumber, sigAlg);
+    CachedResponse entry = store.get(deriveId(issuerId, identBytes));
+    if (entry == null || entry.getIssuerId() != issuerId
+        || !Arrays.equals(identBytes, entry.getIdentBytes())) {
+      return null;
+    }
+
+    long nextUpdate = entry.getNextUpdate();
+    if (nextUpdate != 0) {
+      long minNextUpdate = System.currentTimeMillis() / 1000 + MIN_NEXT_UPDATE_MARGIN;
 
-      String ident = Base64.encodeToString(identBytes);
-      String dbIdent = rs.getString("IDENT");
-      if (!ident.equals(dbIdent)) {
+      if (nextUpdate < minNextUpdate) {
         return null;
       }
+    }
 
-      long nextUpdate = rs.getLong("NEXT_UPDATE");
-      if (nextUpdate != 0) {
-        // nextUpdate must be at least in 600 seconds
-        long minNextUpdate = System.currentTimeMillis() / 1000 + 600;
+    long thisUpdate = entry.getThisUpdate();
+    if (thisUpdate > System.currentTimeMillis() / 1000 + SEC_PER_DAY) {
+      // cached in milliseconds by the previous versions, ignore it.
+      return null;
+    }
 
-        if (nextUpdate < minNextUpdate) {
-          return null;
-        }
-      }
+    byte[] encoded = entry.getResponse();
+    if (memoryCache != null && nextUpdate != 0) {
+      memoryCache.put(issuerId, serialNumber, sigAlg, thisUpdate, nextUpdate, encoded);
+    }
 
-      long thisUpdate = rs.getLong("THIS_UPDATE");
-      String b64Resp = rs.getString("RESP");
-      byte[] encoded = Base64.decodeFast(b64Resp);
-      ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate);
-      if (nextUpdate != 0) {
-        cacheInfo.setNextUpdate(nextUpdate);
-      }
-      return new OcspRespWithCacheInfo(encoded, cacheInfo);
-    } catch (SQLException ex) {
-      throw datasource.translate(sql, ex);
-    } finally {
-      datasource.releaseResources(ps, rs);
+    ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate * 1000);
+    if (nextUpdate != 0) {
+      cacheInfo.setNextUpdate(nextUpdate * 1000);
     }
+    return new OcspRespWithCacheInfo(encoded, cacheInfo);
   }
 
-  public void storeOcspResponse(int issuerId, BigInteger serialNumber, long thisUpdate,
+  /**
+   * Stores the OCSP response in the cache. If the write-behind is activated, the response
+   * is queued and written to the store later, or dropped if the queue is full.
+   * @param issuerId
+   *          Issuer id.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   * @param thisUpdate
+   *          thisUpdate, seconds since January 1, 1970, 00:00:00 GMT.
+   * @param nextUpdate
+   *          nextUpdate, seconds since January 1, 1970, 00:00:00 GMT. Could be {@code null}.
+   * @param sigAlgCode
+   *          Signature algorithm of the response.
+   * @param response
+   *          The DER-encoded OCSP response.
+   * @return whether the response has been stored (or queued). It is not stored if its
+   *     nextUpdate is too close, or if the certificate has been invalidated after thisUpdate.
+   */
+  public boolean storeOcspResponse(int issuerId, BigInteger serialNumber, long thisUpdate,
       Long nextUpdate, AlgorithmCode sigAlgCode, byte[] response) {
     long nowInSec = System.currentTimeMillis() / 1000;
     if (nextUpdate == null) {
       nextUpdate = nowInSec + SEC_PER_WEEK;
     }
 
-    if (nextUpdate - nowInSec < validity) {
-      return;
+    if (!isNextUpdateStorable(nextUpdate)) {
+      return false;
     }
 
     byte[] identBytes = buildIdent(serialNumber, sigAlgCode);
-    String ident = Base64.encodeToString(identBytes);
-    try {
-      long id = deriveId(issuerId, identBytes);
+    CachedResponse entry = new CachedResponse(deriveId(issuerId, identBytes), issuerId,
+        identBytes, thisUpdate, nextUpdate, response);
+    if (isInvalidated(entry)) {
+      // the status may have been read before the invalidation.
+      return false;
+    }
 
-      Connection conn = datasource.getConnection();
+    if (memoryCache != null) {
+      memoryCache.put(issuerId, serialNumber, sigAlgCode, thisUpdate, nextUpdate, response);
+    }
+
+    boolean stored;
+    if (responseWriter != null) {
+      stored = responseWriter.add(entry);
+    } else {
       try {
-        String sql = SQL_ADD_RESP;
-        PreparedStatement ps = datasource.prepareStatement(conn, sql);
+        store.put(Collections.singletonList(entry));
+        stored = true;
+      } catch (OcspStoreException ex) {
+        logWriteResponseError(entry, ex);
+        stored = false;
+      }
+    }
 
-        String b64Response = Base64.encodeToString(response);
-        Boolean dataIntegrityViolationException = null;
-        try {
-          int idx = 1;
-          ps.setLong(idx++, id);
-          ps.setInt(idx++, issuerId);
-          ps.setString(idx++, ident);
-          ps.setLong(idx++, thisUpdate);
-          ps.setLong(idx++, nextUpdate);
-          ps.setString(idx++, b64Response);
-          ps.execute();
-        } catch (SQLException ex) {
-          DataAccessException dex = datasource.translate(sql, ex);
-          if (dex.getReason().isDescendantOrSelfOf(Reason.DataIntegrityViolation)) {
-            dataIntegrityViolationException = Boolean.TRUE;
-          } else {
-            throw dex;
-          }
-        } finally {
-          datasource.releaseResources(ps, null, false);
-        }
+    return removeIfInvalidated(entry) ? false : stored;
+  }
 
-        if (dataIntegrityViolationException == null) {
-          LOG.debug("added cached OCSP response iid={}, ident={}", issuerId, ident);
-          return;
-        }
+  /**
+   * Whether a response with the given nextUpdate will be stored.
+   * @param nextUpdate
+   *          nextUpdate, seconds since January 1, 1970, 00:00:00 GMT. Could be {@code null}.
+   * @return whether the nextUpdate is not too close.
+   */
+  public boolean isNextUpdateStorable(Long nextUpdate) {
+    return nextUpdate == null || nextUpdate - System.currentTimeMillis() / 1000 >= validity;
+  }
 
-        sql = SQL_UPDATE_RESP;
-        ps = datasource.prepareStatement(conn, sql);
-        try {
-          int idx = 1;
-          ps.setLong(idx++, thisUpdate);
-          ps.setLong(idx++, nextUpdate);
-          ps.setString(idx++, b64Response);
-          ps.setLong(idx++, id);
-          ps.executeUpdate();
-        } catch (SQLException ex) {
-          throw datasource.translate(sql, ex);
-        } finally {
-          datasource.releaseResources(ps, null, false);
-        }
-      } finally {
-        datasource.returnConnection(conn);
-      }
-    } catch (DataAccessException ex) {
-      LOG.info("could not cache OCSP response iid={}, ident={}", issuerId, ident);
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("could not cache OCSP response iid=" + issuerId + ", ident=" + ident, ex);
-      }
-    }
+  private boolean isInvalidated(CachedResponse entry) {
+    Long time = invalidations.get(entry.getId());
+    return time != null && entry.getThisUpdate() <= time;
   }
 
-  private int removeExpiredResponses(long maxThisUpdate) throws DataAccessException {
-    final String sql = SQL_DELETE_EXPIRED_RESP;
-    PreparedStatement ps = null;
+  /**
+   * Removes the just written response again if it has been invalidated concurrently. The
+   * invalidation is recorded before the responses are removed, so either the invalidation
+   * removes the written response, or this method does.
+   * @return whether the response has been invalidated.
+   */
+  private boolean removeIfInvalidated(CachedResponse entry) {
+    if (!isInvalidated(entry)) {
+      return false;
+    }
+
+    byte[] identBytes = entry.getIdentBytes();
+    BigInteger serialNumber = new BigInteger(
+        Arrays.copyOfRange(identBytes, 1, identBytes.length));
+    if (memoryCache != null) {
+      memoryCache.invalidate(entry.getIssuerId(), serialNumber);
+    }
+
     try {
-      ps = datasource.prepareStatement(sql);
-      ps.setLong(1, maxThisUpdate);
-      return ps.executeUpdate();
-    } catch (SQLException ex) {
-      throw datasource.translate(sql, ex);
-    } finally {
-      datasource.releaseResources(ps, null);
+      store.invalidate(Collections.singletonList(entry.getId()));
+    } catch (OcspStoreException ex) {
+      LogUtil.error(LOG, ex, "could not remove the invalidated OCSP response of certificate "
+          + LogUtil.formatCsn(serialNumber));
+    }
+    return true;
+  }
+
+  static void logWriteResponseError(CachedResponse entry, Exception ex) {
+    String ident = Base64.encodeToString(entry.getIdentBytes());
+    LOG.info("could not cache OCSP response iid={}, ident={}", entry.getIssuerId(), ident);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("could not cache OCSP response iid=" + entry.getIssuerId() + ", ident=" + ident,
+          ex);
+    }
+  }
+
+  /**
+   * Removes the responses of the given certificate from the memory cache and from the
+   * store, e.g. if the certificate has been revoked. The responses with thisUpdate not after
+   * now which are stored later, e.g. by the write-behind, are discarded.
+   * @param issuerId
+   *          Issuer id of the certificate.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   * @throws OcspStoreException
+   *           if the responses could not be removed from the store.
+   */
+  public void invalidate(int issuerId, BigInteger serialNumber) throws OcspStoreException {
+    AlgorithmCode[] sigAlgs = AlgorithmCode.values();
+    List<Long> ids = new ArrayList<>(sigAlgs.length);
+    long nowInSec = System.currentTimeMillis() / 1000;
+    for (AlgorithmCode sigAlg : sigAlgs) {
+      long id = deriveId(issuerId, buildIdent(serialNumber, sigAlg));
+      ids.add(id);
+      invalidations.put(id, nowInSec);
     }
+
+    if (memoryCache != null) {
+      memoryCache.invalidate(issuerId, serialNumber);
+    }
+    store.invalidate(ids);
+  }
+
+  /**
+   * Gets the identifiers of cached responses which expire soon.
+   * @param minId
+   *          Only responses with ID greater than this value will be returned.
+   * @param maxNextUpdate
+   *          Only responses with nextUpdate (seconds since January 1, 1970, 00:00:00 GMT)
+   *          less than this value will be returned.
+   * @return the identifiers of cached responses, ordered by the ID. At most 1000 entries
+   *     will be returned.
+   * @throws OcspStoreException
+   *           if the responses could not be read from the store.
+   */
+  public List<CachedResponseIdent> getExpiringResponses(long minId, long maxNextUpdate)
+      throws OcspStoreException {
+    List<CachedResponseIdent> ret = new LinkedList<>();
+    for (CachedResponse m : store.getExpiring(minId, maxNextUpdate, 1000)) {
+      IssuerEntry issuer = issuerStore.getIssuerForId(m.getIssuerId());
+      byte[] identBytes = m.getIdentBytes();
+      AlgorithmCode sigAlg = getAlgorithmCode(identBytes[0]);
+      if (issuer == null || sigAlg == null) {
+        continue;
+      }
+
+      RequestIssuer reqIssuer = new RequestIssuer(HashAlgo.SHA1,
+          issuer.getEncodedHash(HashAlgo.SHA1));
+      BigInteger serialNumber = new BigInteger(
+          Arrays.copyOfRange(identBytes, 1, identBytes.length));
+      ret.add(new CachedResponseIdent(m.getId(), m.getIssuerId(), reqIssuer, serialNumber,
+          sigAlg));
+    }
+
+    return ret;
   }
 
   private void updateCacheStore() {
@@ -545,6 +895,15 @@ public class ResponseCacher implements Closeable {
     return true;
   }
 
+  private static AlgorithmCode getAlgorithmCode(byte code) {
+    for (AlgorithmCode m : AlgorithmCode.values()) {
+      if (m.getCode() == code) {
+        return m;
+      }
+    }
+    return null;
+  }
+
   private static byte[] buildIdent(BigInteger serialNumber, AlgorithmCode sigAlg) {
     byte[] snBytes = serialNumber.toByteArray();
     byte[] bytes = new byte[1 + snBytes.length];
@@ -93,7 +93,7 @@ public class EjbcaCertStatusStore extends OcspStore {
 
   private IssuerFilter issuerFilter;
 
-  private EjbcaIssuerStore issuerStore;
+  private volatile EjbcaIssuerStore issuerStore;
 
   private boolean initialized;
 
@@ -246,7 +246,11 @@ public class EjbcaCertStatusStore extends OcspStore {
       int reason = 0;
       long revTime = 0;
 
-      PreparedStatement ps = datasource.prepareStatement(sql);
+      // A lagging read replica returns the old status, and the response built from it is
+      // cached. Since no status change events are recorded in the EJBCA database, the cached
+      // responses of this store are not invalidated anyway, the replica only delays a new
+      // status by its lag.
+      PreparedStatement ps = datasource.prepareReadStatement(sql);
 
       try {
         ps.setString(1, issuer.getId());
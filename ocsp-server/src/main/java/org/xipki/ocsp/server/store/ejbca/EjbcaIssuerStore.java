@@ -20,11 +20,15 @@ package org.xipki.ocsp.server.store.ejbca;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.store.IssuerHashIndex;
+import org.xipki.security.HashAlgo;
 
 /**
  * TODO.
@@ -34,34 +38,52 @@ import org.xipki.ocsp.api.RequestIssuer;
 
 class EjbcaIssuerStore {
 
-  private final List<EjbcaIssuerEntry> entries;
+  /**
+   * Immutable view of the issuers. It will be replaced as a whole if an issuer is added.
+   */
+  private static final class Snapshot {
 
-  private Set<String> ids;
+    private final List<EjbcaIssuerEntry> entries;
 
-  public EjbcaIssuerStore(Collection<EjbcaIssuerEntry> entries) {
-    this.entries = new ArrayList<>(entries.size());
-    Set<String> idSet = new HashSet<>(entries.size());
+    private final Set<String> ids;
+
+    private final Map<String, EjbcaIssuerEntry> idMap;
+
+    private final IssuerHashIndex<EjbcaIssuerEntry> hashIndex;
+
+    Snapshot(List<EjbcaIssuerEntry> entries) {
+      this.entries = Collections.unmodifiableList(entries);
+      this.idMap = new HashMap<>(entries.size() * 2);
+      this.hashIndex = new IssuerHashIndex<>();
 
-    for (EjbcaIssuerEntry entry : entries) {
-      for (EjbcaIssuerEntry existingEntry : this.entries) {
-        if (existingEntry.getId().contentEquals(entry.getId())) {
+      for (EjbcaIssuerEntry entry : entries) {
+        if (idMap.put(entry.getId(), entry) != null) {
           throw new IllegalArgumentException(
               "issuer with the same id (fingerprint) " + entry.getId() + " already available");
         }
+
+        for (HashAlgo ha : HashAlgo.values()) {
+          hashIndex.put(ha, entry.getEncodedHash(ha), entry);
+        }
       }
-      this.entries.add(entry);
-      idSet.add(entry.getId());
+
+      this.ids = Collections.unmodifiableSet(new HashSet<>(idMap.keySet()));
     }
 
-    this.ids = Collections.unmodifiableSet(idSet);
+  } // class Snapshot
+
+  private volatile Snapshot snapshot;
+
+  public EjbcaIssuerStore(Collection<EjbcaIssuerEntry> entries) {
+    this.snapshot = new Snapshot(new ArrayList<>(entries));
   }
 
   public int size() {
-    return ids.size();
+    return snapshot.ids.size();
   }
 
   public Set<String> getIds() {
-    return ids;
+    return snapshot.ids;
   }
 
   public String getIssuerIdForFp(RequestIssuer reqIssuer) {
@@ -70,30 +92,17 @@ class EjbcaIssuerStore {
   }
 
   public EjbcaIssuerEntry getIssuerForId(String id) {
-    for (EjbcaIssuerEntry entry : entries) {
-      if (entry.getId().contentEquals(id)) {
-        return entry;
-      }
-    }
-
-    return null;
+    return snapshot.idMap.get(id);
   }
 
   public EjbcaIssuerEntry getIssuerForFp(RequestIssuer reqIssuer) {
-    for (EjbcaIssuerEntry entry : entries) {
-      if (entry.matchHash(reqIssuer)) {
-        return entry;
-      }
-    }
-
-    return null;
+    return snapshot.hashIndex.get(reqIssuer);
   }
 
-  public void addIssuer(EjbcaIssuerEntry issuer) {
-    this.entries.add(issuer);
-    Set<String> newIds = new HashSet<>(this.ids);
-    newIds.add(issuer.getId());
-    this.ids = Collections.unmodifiableSet(newIds);
+  public synchronized void addIssuer(EjbcaIssuerEntry issuer) {
+    List<EjbcaIssuerEntry> newEntries = new ArrayList<>(snapshot.entries);
+    newEntries.add(issuer);
+    this.snapshot = new Snapshot(newEntries);
   }
 
 }
@@ -22,7 +22,6 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
@@ -102,7 +101,7 @@ public class OcspRequest {
       }
     }
 
-    List<CertID> requestList = new LinkedList<>();
+    List<CertID> requestList = new ArrayList<>(1);
     Header hdrRequestList = hdr;
 
     Header hdrSingleReq = readHeader(request, hdr.readerIndex);
@@ -129,7 +128,7 @@ public class OcspRequest {
     }
 
     // extensions
-    List<ExtendedExtension> extensions = new LinkedList<>();
+    List<ExtendedExtension> extensions = new ArrayList<>(2);
     int extensionsOffset = hdrRequestList.readerIndex + hdrRequestList.len;
 
     if (extensionsOffset < hdrTbs.readerIndex + hdrTbs.len) {
@@ -195,7 +194,7 @@ public class OcspRequest {
       requestList.add(certId);
     }
 
-    List<ExtendedExtension> extensions = new LinkedList<>();
+    List<ExtendedExtension> extensions = new ArrayList<>(2);
     if (extensions0 != null) {
       ASN1ObjectIdentifier[] extOids = extensions0.getExtensionOIDs();
       for (ASN1ObjectIdentifier oid : extOids) {
@@ -0,0 +1,225 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ocsp.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.NoIdleSignerException;
+
+/**
+ * Test of {@link BatchSigner}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class BatchSignerTest {
+
+  /**
+   * Fake signer, the signature is "sig-" followed by the data. Data starting with "fail"
+   * cause a SignatureException, data starting with "busy" a NoIdleSignerException.
+   */
+  private static class FakeSigner implements InvocationHandler {
+
+    private final long millisPerBatch;
+
+    private final AtomicInteger numBatches = new AtomicInteger(0);
+
+    private final AtomicInteger numSignatures = new AtomicInteger(0);
+
+    FakeSigner(long millisPerBatch) {
+      this.millisPerBatch = millisPerBatch;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if ("getName".equals(name)) {
+        return "fake";
+      } else if (!"sign".equals(name) || !(args[0] instanceof byte[][])) {
+        throw new UnsupportedOperationException(name);
+      }
+
+      numBatches.incrementAndGet();
+      if (millisPerBatch > 0) {
+        Thread.sleep(millisPerBatch);
+      }
+
+      byte[][] data = (byte[][]) args[0];
+      byte[][] signatures = new byte[data.length][];
+      for (int i = 0; i < data.length; i++) {
+        String text = new String(data[i], StandardCharsets.UTF_8);
+        if (text.startsWith("fail")) {
+          throw new SignatureException("could not sign " + text);
+        } else if (text.startsWith("busy")) {
+          throw new NoIdleSignerException("no idle signer");
+        }
+        signatures[i] = ("sig-" + text).getBytes(StandardCharsets.UTF_8);
+      }
+      numSignatures.addAndGet(data.length);
+      return signatures;
+    }
+
+    ConcurrentContentSigner newSigner() {
+      return (ConcurrentContentSigner) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[]{ConcurrentContentSigner.class}, this);
+    }
+
+  } // class FakeSigner
+
+  @Test
+  public void signaturesMatchData() throws Exception {
+    FakeSigner fakeSigner = new FakeSigner(5);
+    final BatchSigner batchSigner = new BatchSigner(fakeSigner.newSigner(), conf(8, 2, 1));
+
+    final int numRequests = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(32);
+    try {
+      List<Future<byte[]>> futures = new ArrayList<>(numRequests);
+      for (int i = 0; i < numRequests; i++) {
+        final byte[] data = ("data-" + i).getBytes(StandardCharsets.UTF_8);
+        futures.add(executor.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws Exception {
+            return batchSigner.sign(data);
+          }
+        }));
+      }
+
+      for (int i = 0; i < numRequests; i++) {
+        byte[] signature = futures.get(i).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals("signature of request " + i, "sig-data-" + i,
+            new String(signature, StandardCharsets.UTF_8));
+      }
+    } finally {
+      executor.shutdownNow();
+      batchSigner.close();
+    }
+
+    Assert.assertEquals(numRequests, fakeSigner.numSignatures.get());
+    Assert.assertTrue("requests are not signed in batches: " + fakeSigner.numBatches.get(),
+        fakeSigner.numBatches.get() < numRequests);
+  }
+
+  @Test
+  public void exceptionsArePropagated() throws Exception {
+    BatchSigner batchSigner = new BatchSigner(new FakeSigner(0).newSigner(), conf(8, 0, 1));
+    try {
+      try {
+        batchSigner.sign("fail-1".getBytes(StandardCharsets.UTF_8));
+        Assert.fail("SignatureException expected");
+      } catch (SignatureException ex) {
+        Assert.assertEquals("could not sign fail-1", ex.getMessage());
+      }
+
+      try {
+        batchSigner.sign("busy-1".getBytes(StandardCharsets.UTF_8));
+        Assert.fail("NoIdleSignerException expected");
+      } catch (NoIdleSignerException ex) {
+        // expected
+      }
+
+      // the signer is still usable
+      Assert.assertArrayEquals("sig-ok".getBytes(StandardCharsets.UTF_8),
+          batchSigner.sign("ok".getBytes(StandardCharsets.UTF_8)));
+    } finally {
+      batchSigner.close();
+    }
+  }
+
+  @Test
+  public void callerReturnsUnderSustainedLoad() throws Exception {
+    final BatchSigner batchSigner =
+        new BatchSigner(new FakeSigner(2).newSigner(), conf(4, 1, 2));
+    final AtomicBoolean stop = new AtomicBoolean(false);
+    final int numProducers = 16;
+    final CountDownLatch producersStarted = new CountDownLatch(numProducers);
+
+    ExecutorService executor = Executors.newFixedThreadPool(numProducers + 1);
+    try {
+      for (int i = 0; i < numProducers; i++) {
+        final byte[] data = ("load-" + i).getBytes(StandardCharsets.UTF_8);
+        executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            producersStarted.countDown();
+            while (!stop.get()) {
+              batchSigner.sign(data);
+            }
+            return null;
+          }
+        });
+      }
+
+      producersStarted.await();
+      Future<byte[]> future = executor.submit(new Callable<byte[]>() {
+        @Override
+        public byte[] call() throws Exception {
+          return batchSigner.sign("mine".getBytes(StandardCharsets.UTF_8));
+        }
+      });
+
+      // the queue is never empty, the caller must return anyway
+      Assert.assertArrayEquals("sig-mine".getBytes(StandardCharsets.UTF_8),
+          future.get(5, TimeUnit.SECONDS));
+    } finally {
+      stop.set(true);
+      executor.shutdownNow();
+      batchSigner.close();
+    }
+  }
+
+  @Test
+  public void closeReleasesCallers() throws Exception {
+    BatchSigner batchSigner = new BatchSigner(new FakeSigner(0).newSigner(), conf(8, 0, 1));
+    batchSigner.close();
+
+    try {
+      batchSigner.sign("data".getBytes(StandardCharsets.UTF_8));
+      Assert.fail("SignatureException expected");
+    } catch (SignatureException ex) {
+      Assert.assertEquals("batch signer is closed", ex.getMessage());
+    }
+  }
+
+  private static OcspServerConf.BatchSigning conf(int maxBatchSize, int maxWaitMillis,
+      int maxConcurrentBatches) {
+    OcspServerConf.BatchSigning conf = new OcspServerConf.BatchSigning();
+    conf.setMaxBatchSize(maxBatchSize);
+    conf.setMaxWaitMillis(maxWaitMillis);
+    conf.setMaxConcurrentBatches(maxConcurrentBatches);
+    return conf;
+  }
+
+}
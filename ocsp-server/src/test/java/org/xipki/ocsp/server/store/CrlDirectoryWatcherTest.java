@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ocsp.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of {@link CrlDirectoryWatcher}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class CrlDirectoryWatcherTest {
+
+  private static class CountingTask implements Runnable {
+
+    private final Semaphore executions = new Semaphore(0);
+
+    @Override
+    public void run() {
+      executions.release();
+    }
+
+    boolean awaitExecution(long millis) throws InterruptedException {
+      return executions.tryAcquire(millis, TimeUnit.MILLISECONDS);
+    }
+
+  } // class CountingTask
+
+  private Path dir;
+
+  @Before
+  public void createDir() throws IOException {
+    dir = Files.createTempDirectory("crl-watcher-test");
+  }
+
+  @After
+  public void deleteDir() throws IOException {
+    File[] files = dir.toFile().listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Files.delete(file.toPath());
+      }
+    }
+    Files.delete(dir);
+  }
+
+  @Test
+  public void renameTriggersCreateOnlyTask() throws Exception {
+    Path crlFile = dir.resolve("ca.crl");
+    write(crlFile, "crl-1");
+
+    CountingTask task = new CountingTask();
+    CrlDirectoryWatcher watcher = CrlDirectoryWatcher.getInstance();
+    watcher.register(crlFile, true, task);
+    try {
+      // in-place modification is ignored, the file may be only partly written
+      write(crlFile, "crl-2");
+      Assert.assertFalse("task triggered by modification", task.awaitExecution(1000));
+
+      // write-then-rename
+      Path tmpFile = dir.resolve("ca.crl.tmp");
+      write(tmpFile, "crl-3");
+      Files.move(tmpFile, crlFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      Assert.assertTrue("task not triggered by rename", task.awaitExecution(10000));
+    } finally {
+      watcher.unregister(crlFile);
+    }
+  }
+
+  @Test
+  public void markerTriggersTask() throws Exception {
+    Path marker = dir.resolve("ca.crl.UPDATEME");
+    Path otherFile = dir.resolve("other.txt");
+
+    CountingTask task = new CountingTask();
+    CrlDirectoryWatcher watcher = CrlDirectoryWatcher.getInstance();
+    watcher.register(marker, false, task);
+    try {
+      write(otherFile, "other");
+      Assert.assertFalse("task triggered by other file", task.awaitExecution(1000));
+
+      write(marker, "");
+      Assert.assertTrue("task not triggered by creation", task.awaitExecution(10000));
+
+      // drain the events of the creation
+      while (task.awaitExecution(500)) {
+        // do nothing
+      }
+
+      write(marker, "again");
+      Assert.assertTrue("task not triggered by modification", task.awaitExecution(10000));
+    } finally {
+      watcher.unregister(marker);
+    }
+  }
+
+  @Test
+  public void watcherIsClosedAfterLastUnregister() throws Exception {
+    Path file = dir.resolve("ca.crl.UPDATEME");
+    CrlDirectoryWatcher watcher = CrlDirectoryWatcher.getInstance();
+    watcher.register(file, false, new CountingTask());
+    Assert.assertSame(watcher, CrlDirectoryWatcher.getInstance());
+
+    watcher.unregister(file);
+    Assert.assertTrue("watcher not closed", watcher != CrlDirectoryWatcher.getInstance());
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
@@ -0,0 +1,248 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.asn1.x509.V2TBSCertListGenerator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.ocsp.server.store.CrlStreamParser.RevokedCert;
+import org.xipki.security.CrlReason;
+import org.xipki.util.Base64;
+
+/**
+ * Test of {@link CrlStreamParser}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class CrlStreamParserTest {
+
+  private static final X500Name ISSUER = new X500Name("CN=CRL Test CA,O=xipki");
+
+  private static final X500Name OTHER_ISSUER = new X500Name("CN=Other CA,O=xipki");
+
+  private static final AlgorithmIdentifier SIG_ALG_ID = new AlgorithmIdentifier(
+      PKCSObjectIdentifiers.sha256WithRSAEncryption, DERNull.INSTANCE);
+
+  // UTCTime has the precision of seconds
+  private static final Date THIS_UPDATE = new Date(System.currentTimeMillis() / 1000 * 1000);
+
+  private static final Date NEXT_UPDATE = new Date(THIS_UPDATE.getTime() + 24 * 3600 * 1000L);
+
+  private static KeyPair keypair;
+
+  private File dir;
+
+  @Before
+  public void createDir() throws Exception {
+    dir = Files.createTempDirectory("crl-parser-test").toFile();
+    if (keypair == null) {
+      KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+      kpGen.initialize(2048);
+      keypair = kpGen.generateKeyPair();
+    }
+  }
+
+  @After
+  public void deleteDir() throws IOException {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Files.delete(file.toPath());
+      }
+    }
+    Files.delete(dir.toPath());
+  }
+
+  @Test
+  public void parseCrlWithEntries() throws Exception {
+    V2TBSCertListGenerator tbsGen = newTbsGenerator(true);
+    Date revTime = new Date(THIS_UPDATE.getTime() - 3600 * 1000L);
+    Date invalidityDate = new Date(revTime.getTime() - 3600 * 1000L);
+    tbsGen.addCRLEntry(new ASN1Integer(1), new Time(revTime), CrlReason.KEY_COMPROMISE.getCode());
+    tbsGen.addCRLEntry(new ASN1Integer(0x1234567890L), new Time(revTime),
+        CrlReason.CESSATION_OF_OPERATION.getCode(), new ASN1GeneralizedTime(invalidityDate));
+    // entry without extensions
+    tbsGen.addCRLEntry(new ASN1Integer(new BigInteger("FF00FF00FF00FF00FF00FF00", 16)),
+        new Time(revTime), 0);
+
+    File file = writeCrl(tbsGen, false);
+    CrlStreamParser parser = new CrlStreamParser(file);
+
+    Assert.assertEquals("version", 1, parser.getVersion());
+    Assert.assertEquals("issuer", ISSUER, parser.getIssuer());
+    Assert.assertEquals("thisUpdate", THIS_UPDATE, parser.getThisUpdate());
+    Assert.assertEquals("nextUpdate", NEXT_UPDATE, parser.getNextUpdate());
+    Assert.assertEquals("signature algorithm", SIG_ALG_ID, parser.getAlgorithmIdentifier());
+    Assert.assertNotNull("crlNumber",
+        parser.getCrlExtensions().getExtension(Extension.cRLNumber));
+    Assert.assertTrue("signature", parser.verifySignature(keypair.getPublic()));
+
+    List<RevokedCert> entries = toList(parser.revokedCertificates());
+    Assert.assertEquals("number of entries", 3, entries.size());
+
+    RevokedCert entry = entries.get(0);
+    Assert.assertEquals(BigInteger.ONE, entry.getSerialNumber());
+    Assert.assertEquals(revTime, entry.getRevocationDate());
+    Assert.assertEquals(CrlReason.KEY_COMPROMISE, entry.getReason());
+    Assert.assertNull(entry.getInvalidityDate());
+    Assert.assertNull(entry.getCertificateIssuer());
+
+    entry = entries.get(1);
+    Assert.assertEquals(BigInteger.valueOf(0x1234567890L), entry.getSerialNumber());
+    Assert.assertEquals(CrlReason.CESSATION_OF_OPERATION, entry.getReason());
+    Assert.assertEquals(invalidityDate, entry.getInvalidityDate());
+
+    entry = entries.get(2);
+    Assert.assertEquals(new BigInteger("FF00FF00FF00FF00FF00FF00", 16), entry.getSerialNumber());
+    Assert.assertEquals(CrlReason.UNSPECIFIED, entry.getReason());
+  }
+
+  @Test
+  public void parsePemCrlWithoutEntries() throws Exception {
+    File file = writeCrl(newTbsGenerator(false), true);
+    CrlStreamParser parser = new CrlStreamParser(file);
+
+    Assert.assertEquals("issuer", ISSUER, parser.getIssuer());
+    Assert.assertEquals("thisUpdate", THIS_UPDATE, parser.getThisUpdate());
+    Assert.assertNull("nextUpdate", parser.getNextUpdate());
+    Assert.assertFalse("revokedCertificates", parser.revokedCertificates().hasNext());
+    Assert.assertTrue("signature", parser.verifySignature(keypair.getPublic()));
+  }
+
+  @Test
+  public void certificateIssuerIsInherited() throws Exception {
+    V2TBSCertListGenerator tbsGen = newTbsGenerator(true);
+    tbsGen.addCRLEntry(new ASN1Integer(1), new Time(THIS_UPDATE), 0);
+
+    GeneralNames otherIssuer = new GeneralNames(new GeneralName(OTHER_ISSUER));
+    Extension[] extns = {new Extension(Extension.certificateIssuer, true,
+        new DEROctetString(otherIssuer))};
+    tbsGen.addCRLEntry(new ASN1Integer(2), new Time(THIS_UPDATE), new Extensions(extns));
+    tbsGen.addCRLEntry(new ASN1Integer(3), new Time(THIS_UPDATE), 0);
+
+    List<RevokedCert> entries =
+        toList(new CrlStreamParser(writeCrl(tbsGen, false)).revokedCertificates());
+    Assert.assertEquals("number of entries", 3, entries.size());
+    Assert.assertNull(entries.get(0).getCertificateIssuer());
+    Assert.assertEquals(OTHER_ISSUER, entries.get(1).getCertificateIssuer());
+    // the entry without certificateIssuer inherits the issuer of the previous entry
+    Assert.assertEquals(OTHER_ISSUER, entries.get(2).getCertificateIssuer());
+  }
+
+  @Test
+  public void detectInvalidSignature() throws Exception {
+    File file = writeCrl(newTbsGenerator(true), false);
+    byte[] encoded = Files.readAllBytes(file.toPath());
+    // modify the last byte of the signature
+    encoded[encoded.length - 1] ^= 0x01;
+    Files.write(file.toPath(), encoded);
+
+    Assert.assertFalse("signature", new CrlStreamParser(file).verifySignature(
+        keypair.getPublic()));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectTruncatedCrl() throws Exception {
+    File file = writeCrl(newTbsGenerator(true), false);
+    byte[] encoded = Files.readAllBytes(file.toPath());
+    byte[] truncated = new byte[encoded.length - 10];
+    System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+    Files.write(file.toPath(), truncated);
+
+    new CrlStreamParser(file);
+  }
+
+  private static V2TBSCertListGenerator newTbsGenerator(boolean withNextUpdate)
+      throws IOException {
+    V2TBSCertListGenerator tbsGen = new V2TBSCertListGenerator();
+    tbsGen.setSignature(SIG_ALG_ID);
+    tbsGen.setIssuer(ISSUER);
+    tbsGen.setThisUpdate(new Time(THIS_UPDATE));
+    if (withNextUpdate) {
+      tbsGen.setNextUpdate(new Time(NEXT_UPDATE));
+    }
+
+    Extension[] extns = {new Extension(Extension.cRLNumber, false,
+        new DEROctetString(new ASN1Integer(1)))};
+    tbsGen.setExtensions(new Extensions(extns));
+    return tbsGen;
+  }
+
+  private File writeCrl(V2TBSCertListGenerator tbsGen, boolean pem) throws Exception {
+    TBSCertList tbs = tbsGen.generateTBSCertList();
+    Signature signer = Signature.getInstance("SHA256withRSA");
+    signer.initSign(keypair.getPrivate());
+    signer.update(tbs.getEncoded());
+
+    byte[] encoded = new DERSequence(new ASN1Encodable[]{tbs, SIG_ALG_ID,
+        new DERBitString(signer.sign())}).getEncoded();
+
+    File file = new File(dir, pem ? "ca.pem" : "ca.crl");
+    if (pem) {
+      String text = "-----BEGIN X509 CRL-----\n"
+          + new String(Base64.encodeToByte(encoded, true), StandardCharsets.US_ASCII)
+          + "\n-----END X509 CRL-----\n";
+      Files.write(file.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+    } else {
+      Files.write(file.toPath(), encoded);
+    }
+    return file;
+  }
+
+  private static List<RevokedCert> toList(Iterator<RevokedCert> it) {
+    List<RevokedCert> list = new ArrayList<>();
+    while (it.hasNext()) {
+      list.add(it.next());
+    }
+    return list;
+  }
+
+}
@@ -0,0 +1,233 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.ocsp.server.store.ResponseCacheStore.CachedResponse;
+
+/**
+ * Test of {@link FileResponseCacheStore}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class FileResponseCacheStoreTest {
+
+  private static final int SEGMENT_SIZE = 1024 * 1024;
+
+  // about 10 responses per segment
+  private static final int LARGE_RESPONSE_SIZE = 100 * 1024;
+
+  private File dir;
+
+  private FileResponseCacheStore store;
+
+  @Before
+  public void createDir() throws IOException {
+    dir = Files.createTempDirectory("file-response-cache-test").toFile();
+  }
+
+  @After
+  public void deleteDir() throws IOException {
+    if (store != null) {
+      store.close();
+    }
+
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Files.delete(file.toPath());
+      }
+    }
+    Files.delete(dir.toPath());
+  }
+
+  @Test
+  public void readAfterRestart() throws Exception {
+    store = new FileResponseCacheStore(dir.getPath(), SEGMENT_SIZE);
+    put(1, 1000, 100);
+    put(2, 1000, 100);
+    // replaces the first response
+    put(1, 2000, 200);
+
+    assertResponse(1, 2000, 200);
+    assertResponse(2, 1000, 100);
+    Assert.assertNull(store.get(3));
+
+    reopen();
+    assertResponse(1, 2000, 200);
+    assertResponse(2, 1000, 100);
+  }
+
+  @Test
+  public void invalidateAfterRestart() throws Exception {
+    store = new FileResponseCacheStore(dir.getPath(), SEGMENT_SIZE);
+    put(1, 1000, 100);
+    put(2, 1000, 100);
+    store.invalidate(Collections.singletonList(1L));
+    Assert.assertNull(store.get(1));
+
+    reopen();
+    Assert.assertNull("invalidated response revived", store.get(1));
+    assertResponse(2, 1000, 100);
+  }
+
+  @Test
+  public void readAfterRollover() throws Exception {
+    store = new FileResponseCacheStore(dir.getPath(), SEGMENT_SIZE);
+    for (int i = 1; i <= 30; i++) {
+      put(i, 1000 + i, LARGE_RESPONSE_SIZE);
+    }
+    // the replacement is in a later segment than the replaced one
+    put(1, 5000, LARGE_RESPONSE_SIZE + 1);
+
+    Assert.assertTrue("no rollover", numSegmentFiles() > 1);
+    for (int i = 2; i <= 30; i++) {
+      assertResponse(i, 1000 + i, LARGE_RESPONSE_SIZE);
+    }
+    assertResponse(1, 5000, LARGE_RESPONSE_SIZE + 1);
+
+    reopen();
+    for (int i = 2; i <= 30; i++) {
+      assertResponse(i, 1000 + i, LARGE_RESPONSE_SIZE);
+    }
+    assertResponse(1, 5000, LARGE_RESPONSE_SIZE + 1);
+
+    // the responses are appended to the last segment after the restart
+    put(31, 1031, LARGE_RESPONSE_SIZE);
+    reopen();
+    assertResponse(31, 1031, LARGE_RESPONSE_SIZE);
+    assertResponse(30, 1030, LARGE_RESPONSE_SIZE);
+  }
+
+  @Test
+  public void ignoreRecordsFromInvalidChecksum() throws Exception {
+    store = new FileResponseCacheStore(dir.getPath(), SEGMENT_SIZE);
+    put(1, 1000, 100);
+    put(2, 1000, 100);
+    put(3, 1000, 100);
+    store.close();
+    store = null;
+
+    // modify the last byte of the second response
+    File file = singleSegmentFile();
+    int recordLength = 35 + 1 + 100 + 4;
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      long pos = 2 * recordLength - 4 - 1;
+      raf.seek(pos);
+      int b = raf.read();
+      raf.seek(pos);
+      raf.write(b ^ 0x01);
+    } finally {
+      raf.close();
+    }
+
+    store = new FileResponseCacheStore(dir.getPath(), SEGMENT_SIZE);
+    assertResponse(1, 1000, 100);
+    Assert.assertNull("response with invalid checksum", store.get(2));
+    Assert.assertNull("response after invalid checksum", store.get(3));
+
+    // the invalid records are overwritten
+    put(4, 1000, 100);
+    reopen();
+    assertResponse(1, 1000, 100);
+    assertResponse(4, 1000, 100);
+    Assert.assertNull(store.get(2));
+  }
+
+  @Test
+  public void compactSegments() throws Exception {
+    store = new FileResponseCacheStore(dir.getPath(), SEGMENT_SIZE);
+    for (int i = 1; i <= 30; i++) {
+      // the first 3 responses remain valid
+      put(i, (i <= 3) ? 3000 : 1000, LARGE_RESPONSE_SIZE);
+    }
+    int numSegmentFiles = numSegmentFiles();
+    Assert.assertTrue("no rollover", numSegmentFiles > 2);
+
+    Assert.assertEquals("removed responses", 27, store.removeExpired(2000, Long.MAX_VALUE));
+    Assert.assertTrue("segments not compacted", numSegmentFiles() < numSegmentFiles);
+
+    for (int i = 1; i <= 30; i++) {
+      if (i <= 3) {
+        assertResponse(i, 3000, LARGE_RESPONSE_SIZE);
+      } else {
+        Assert.assertNull("removed response " + i, store.get(i));
+      }
+    }
+
+    reopen();
+    for (int i = 1; i <= 30; i++) {
+      if (i <= 3) {
+        assertResponse(i, 3000, LARGE_RESPONSE_SIZE);
+      } else {
+        Assert.assertNull("removed response " + i + " revived", store.get(i));
+      }
+    }
+  }
+
+  private void reopen() throws IOException {
+    store.close();
+    store = new FileResponseCacheStore(dir.getPath(), SEGMENT_SIZE);
+  }
+
+  private void put(long id, long thisUpdate, int responseSize) throws Exception {
+    store.put(Collections.singletonList(new CachedResponse(id, (int) id, new byte[]{(byte) id},
+        thisUpdate, thisUpdate + 3600, response(id, responseSize))));
+  }
+
+  private void assertResponse(long id, long thisUpdate, int responseSize) throws Exception {
+    CachedResponse resp = store.get(id);
+    Assert.assertNotNull("response " + id, resp);
+    Assert.assertEquals("issuerId", (int) id, resp.getIssuerId());
+    Assert.assertArrayEquals("ident", new byte[]{(byte) id}, resp.getIdentBytes());
+    Assert.assertEquals("thisUpdate", thisUpdate, resp.getThisUpdate());
+    Assert.assertEquals("nextUpdate", thisUpdate + 3600, resp.getNextUpdate());
+    Assert.assertArrayEquals("response", response(id, responseSize), resp.getResponse());
+  }
+
+  private int numSegmentFiles() {
+    return dir.list().length;
+  }
+
+  private File singleSegmentFile() {
+    File[] files = dir.listFiles();
+    Assert.assertEquals("number of segment files", 1, files.length);
+    return files[0];
+  }
+
+  private static byte[] response(long id, int size) {
+    byte[] response = new byte[size];
+    Arrays.fill(response, (byte) (id * 31));
+    response[0] = (byte) id;
+    return response;
+  }
+
+}
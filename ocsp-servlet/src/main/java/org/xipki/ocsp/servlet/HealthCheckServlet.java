@@ -19,6 +19,7 @@ package org.xipki.ocsp.servlet;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -28,6 +29,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.ocsp.api.OcspServer;
+import org.xipki.ocsp.api.OcspServerMetrics;
 import org.xipki.ocsp.api.ResponderAndPath;
 import org.xipki.util.Args;
 import org.xipki.util.HealthCheckResult;
@@ -50,6 +52,10 @@ public class HealthCheckServlet extends HttpServlet {
 
   private static final String CT_RESPONSE = "application/json";
 
+  private static final String CT_METRICS = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final String PATH_METRICS = "/metrics";
+
   private OcspServer server;
 
   public void setServer(OcspServer server) {
@@ -64,6 +70,18 @@ public class HealthCheckServlet extends HttpServlet {
     try {
       String path = (String) req.getAttribute(HttpConstants.ATTR_XIPKI_PATH);
 
+      if (PATH_METRICS.equals(path)) {
+        OcspServerMetrics metrics = server.getMetrics();
+        if (metrics != null && metrics.isEnabled()) {
+          byte[] respBytes = metrics.toText().getBytes(StandardCharsets.UTF_8);
+          resp.setStatus(HttpServletResponse.SC_OK);
+          resp.setContentType(CT_METRICS);
+          resp.setContentLength(respBytes.length);
+          resp.getOutputStream().write(respBytes);
+          return;
+        }
+      }
+
       ResponderAndPath responderAndPath = server.getResponderForPath(path);
       if (responderAndPath == null) {
         resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
@@ -19,7 +19,9 @@ package org.xipki.ocsp.servlet;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -38,7 +40,6 @@ import org.xipki.util.Base64;
 import org.xipki.util.Base64Url;
 import org.xipki.util.Hex;
 import org.xipki.util.HttpConstants;
-import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
 
@@ -85,9 +86,9 @@ public class OcspServlet extends HttpServlet {
       }
 
       Responder responder = responderAndPath.getResponder();
-      byte[] reqContent = IoUtil.read(req.getInputStream());
+      byte[] reqContent = readRequest(req, responder.getMaxRequestSize());
       // request too long
-      if (reqContent.length > responder.getMaxRequestSize()) {
+      if (reqContent == null) {
         sendError(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
         return;
       }
@@ -135,15 +136,12 @@ public class OcspServlet extends HttpServlet {
       return;
     }
 
-    String b64OcspReq;
-
     int offset = servletPath.length();
     // GET URI contains the request and must be much longer than 10.
     if (path.length() - offset > 10) {
       if (path.charAt(offset) == '/') {
         offset++;
       }
-      b64OcspReq = path.substring(offset);
     } else {
       sendError(resp, HttpServletResponse.SC_BAD_REQUEST);
       return;
@@ -156,17 +154,45 @@ public class OcspServlet extends HttpServlet {
       //    this limitation by accepting also OCSP requests:
       //      - Which are Base64Url encoded, and/or
       //      - Which do not containing the Base64 padding char '='.
-      if (b64OcspReq.length() > responder.getMaxRequestSize()) {
+      final int b64Len = path.length() - offset;
+      if (b64Len > responder.getMaxRequestSize()) {
         sendError(resp, HttpServletResponse.SC_REQUEST_URI_TOO_LONG);
         return;
       }
 
-      byte[] ocsReqBytes = base64Decode(StringUtil.toUtf8Bytes(b64OcspReq));
+      // copy the ASCII chars directly instead of substring() and getBytes()
+      byte[] b64OcspReqBytes = new byte[b64Len];
+      for (int i = 0; i < b64Len; i++) {
+        char c = path.charAt(offset + i);
+        if (c > 0x7F) {
+          sendError(resp, HttpServletResponse.SC_BAD_REQUEST);
+          return;
+        }
+        b64OcspReqBytes[i] = (byte) c;
+      }
+
+      byte[] ocsReqBytes = base64Decode(b64OcspReqBytes);
       if (ocsReqBytes == null) {
         sendError(resp, HttpServletResponse.SC_BAD_REQUEST);
         return;
       }
 
+      boolean conditional = req.getHeader("If-None-Match") != null
+          || req.getHeader("If-Modified-Since") != null;
+      if (conditional) {
+        // check the conditional headers against the cached response before answer(), which
+        // may build and sign a new response.
+        OcspRespWithCacheInfo cachedResp = server.getCachedResponse(responder, ocsReqBytes);
+        if (cachedResp != null && cachedResp.getCacheInfo() != null) {
+          String etag = getEtag(cachedResp);
+          if (isNotModified(req, cachedResp.getCacheInfo(), etag)) {
+            addCacheHeaders(resp, responder, cachedResp.getCacheInfo(), etag);
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+          }
+        }
+      }
+
       OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, ocsReqBytes, true);
       if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
         sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -177,43 +203,13 @@ public class OcspServlet extends HttpServlet {
 
       OcspRespWithCacheInfo.ResponseCacheInfo cacheInfo = ocspRespWithCacheInfo.getCacheInfo();
       if (cacheInfo != null) {
-        encodedOcspResp = ocspRespWithCacheInfo.getResponse();
-        long now = System.currentTimeMillis();
-
-        // RFC 5019 6.2: Date: The date and time at which the OCSP server generated
-        // the HTTP response.
-        resp.addDateHeader("Date", now);
-        // RFC 5019 6.2: Last-Modified: date and time at which the OCSP responder
-        // last modified the response.
-        resp.addDateHeader("Last-Modified", cacheInfo.getThisUpdate());
-        // RFC 5019 6.2: Expires: This date and time will be the same as the
-        // nextUpdate time-stamp in the OCSP
-        // response itself.
-        // This is overridden by max-age on HTTP/1.1 compatible components
-        if (cacheInfo.getNextUpdate() != null) {
-          resp.addDateHeader("Expires", cacheInfo.getNextUpdate());
-        }
-        // RFC 5019 6.2: This profile RECOMMENDS that the ETag value be the ASCII
-        // HEX representation of the SHA1 hash of the OCSPResponse structure.
-        resp.addHeader("ETag",
-            StringUtil.concat("\"", HashAlgo.SHA1.hexHash(encodedOcspResp), "\""));
-
-        // Max age must be in seconds in the cache-control header
-        long maxAge;
-        if (responder.getCacheMaxAge() != null) {
-          maxAge = responder.getCacheMaxAge().longValue();
-        } else {
-          maxAge = DFLT_CACHE_MAX_AGE;
-        }
+        String etag = getEtag(ocspRespWithCacheInfo);
+        addCacheHeaders(resp, responder, cacheInfo, etag);
 
-        if (cacheInfo.getNextUpdate() != null) {
-          maxAge = Math.min(maxAge,
-              (cacheInfo.getNextUpdate() - cacheInfo.getThisUpdate()) / 1000);
+        if (isNotModified(req, cacheInfo, etag)) {
+          resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+          return;
         }
-
-        resp.addHeader("Cache-Control",
-            StringUtil.concat("max-age=", Long.toString(maxAge),
-              ",public,no-transform,must-revalidate"));
       } // end if (ocspRespWithCacheInfo)
 
       resp.setContentLength(encodedOcspResp.length);
@@ -232,6 +228,139 @@ public class OcspServlet extends HttpServlet {
     }
   } // method serviceGet
 
+  private static String getEtag(OcspRespWithCacheInfo ocspRespWithCacheInfo) {
+    // RFC 5019 6.2: This profile RECOMMENDS that the ETag value be the ASCII
+    // HEX representation of the SHA1 hash of the OCSPResponse structure.
+    String etag = ocspRespWithCacheInfo.getEtag();
+    if (etag == null) {
+      etag = StringUtil.concat("\"",
+          HashAlgo.SHA1.hexHash(ocspRespWithCacheInfo.getResponse()), "\"");
+      ocspRespWithCacheInfo.setEtag(etag);
+    }
+    return etag;
+  }
+
+  private static void addCacheHeaders(HttpServletResponse resp, Responder responder,
+      OcspRespWithCacheInfo.ResponseCacheInfo cacheInfo, String etag) {
+    long now = System.currentTimeMillis();
+
+    // RFC 5019 6.2: Date: The date and time at which the OCSP server generated
+    // the HTTP response.
+    resp.addDateHeader("Date", now);
+    // RFC 5019 6.2: Last-Modified: date and time at which the OCSP responder
+    // last modified the response.
+    resp.addDateHeader("Last-Modified", cacheInfo.getThisUpdate());
+    // RFC 5019 6.2: Expires: This date and time will be the same as the
+    // nextUpdate time-stamp in the OCSP
+    // response itself.
+    // This is overridden by max-age on HTTP/1.1 compatible components
+    if (cacheInfo.getNextUpdate() != null) {
+      resp.addDateHeader("Expires", cacheInfo.getNextUpdate());
+    }
+    resp.addHeader("ETag", etag);
+
+    // Max age must be in seconds in the cache-control header
+    long maxAge;
+    if (responder.getCacheMaxAge() != null) {
+      maxAge = responder.getCacheMaxAge().longValue();
+    } else {
+      maxAge = DFLT_CACHE_MAX_AGE;
+    }
+
+    if (cacheInfo.getNextUpdate() != null) {
+      maxAge = Math.min(maxAge,
+          (cacheInfo.getNextUpdate() - cacheInfo.getThisUpdate()) / 1000);
+    }
+
+    resp.addHeader("Cache-Control",
+        StringUtil.concat("max-age=", Long.toString(maxAge),
+          ",public,no-transform,must-revalidate"));
+  } // method addCacheHeaders
+
+  /**
+   * Checks the conditional request headers as specified in RFC 7232. If-None-Match takes
+   * precedence over If-Modified-Since.
+   * @return whether the client has already the current response.
+   */
+  private static boolean isNotModified(HttpServletRequest req,
+      OcspRespWithCacheInfo.ResponseCacheInfo cacheInfo, String etag) {
+    String ifNoneMatch = req.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      for (String token : ifNoneMatch.split(",")) {
+        token = token.trim();
+        // weak comparison
+        if (token.startsWith("W/")) {
+          token = token.substring(2);
+        }
+
+        if ("*".equals(token) || etag.equals(token)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    long ifModifiedSince;
+    try {
+      ifModifiedSince = req.getDateHeader("If-Modified-Since");
+    } catch (IllegalArgumentException ex) {
+      return false;
+    }
+
+    // HTTP dates have the precision of seconds
+    return ifModifiedSince != -1 && ifModifiedSince >= cacheInfo.getThisUpdate() / 1000 * 1000;
+  } // method isNotModified
+
+  /**
+   * Reads the request body. If the Content-Length is known, the body is read into an array
+   * of exactly this size, otherwise not more than maxSize + 1 bytes are read.
+   * @return the request body, or {@code null} if it is longer than maxSize.
+   */
+  private static byte[] readRequest(HttpServletRequest req, int maxSize) throws IOException {
+    final int contentLen = req.getContentLength();
+    if (contentLen > maxSize) {
+      return null;
+    }
+
+    InputStream in = req.getInputStream();
+    try {
+      if (contentLen >= 0) {
+        byte[] buf = new byte[contentLen];
+        int off = 0;
+        while (off < contentLen) {
+          int read = in.read(buf, off, contentLen - off);
+          if (read == -1) {
+            throw new EOFException("unexpected end of request body");
+          }
+          off += read;
+        }
+        return buf;
+      }
+
+      // unknown length, e.g. chunked transfer encoding
+      byte[] buf = new byte[Math.min(maxSize + 1, 2048)];
+      int off = 0;
+      while (true) {
+        if (off == buf.length) {
+          if (off > maxSize) {
+            return null;
+          }
+          buf = Arrays.copyOf(buf, Math.min(maxSize + 1, 2 * buf.length));
+        }
+
+        int read = in.read(buf, off, buf.length - off);
+        if (read == -1) {
+          break;
+        }
+        off += read;
+      }
+
+      return (off > maxSize) ? null : (off == buf.length) ? buf : Arrays.copyOf(buf, off);
+    } finally {
+      in.close();
+    }
+  }
+
   private static void sendError(HttpServletResponse resp, int status) {
     resp.setStatus(status);
     resp.setContentLength(0);